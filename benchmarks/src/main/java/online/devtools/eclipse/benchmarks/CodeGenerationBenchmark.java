@@ -0,0 +1,212 @@
+package online.devtools.eclipse.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.formatter.DefaultCodeFormatterConstants;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.text.edits.TextEdit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import online.devtools.eclipse.generation.CommentProvider;
+import online.devtools.eclipse.generation.ConvertedField;
+import online.devtools.eclipse.generation.ImmutableClassGenerator;
+import online.devtools.eclipse.generation.MemberIndex;
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.HashCodeStrategy;
+import online.devtools.eclipse.handlers.tools.ToStringStrategy;
+
+/**
+ * Measures the phases of the conversion of a synthetic class: parsing,
+ * recording the changes in the rewrite, computing the text edit and applying
+ * it.
+ * 
+ * Each phase is a separate benchmark, the input of a phase is prepared outside
+ * of the measurement. Run with <code>-prof gc</code> to get the allocation per
+ * operation of each phase.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodeGenerationBenchmark {
+
+	public enum Settings {
+		GETTERS, FINAL_FIELDS, BUILDER, COMMENTS, HASH_CODE, EQUALS, TO_STRING;
+
+		CodeSettings create() {
+			return CodeSettings.builder().withIsForBooleanGetters(false).withReplaceExistingDeclarations(true)
+					.withGenerateFinalFields(this == FINAL_FIELDS).withGenerateBuilder(this == BUILDER)
+					.withAddComments(this == COMMENTS).withGenerateEquals(this == EQUALS)
+					.withHashCodeStrategy(this == HASH_CODE ? HashCodeStrategy.LAZY : HashCodeStrategy.NONE)
+					.withToStringStrategy(this == TO_STRING ? ToStringStrategy.FORMATTED : ToStringStrategy.NONE)
+					.build();
+		}
+	}
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int fieldCount;
+
+	@Param
+	public Settings settings;
+
+	private String source;
+
+	private Map<String, String> options;
+
+	private CodeSettings codeSettings;
+
+	private CommentProvider commentProvider;
+
+	private CompilationUnit compilationUnit;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		source = SyntheticSource.create(fieldCount);
+		options = new HashMap<>(DefaultCodeFormatterConstants.getEclipseDefaultSettings());
+		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+		codeSettings = settings.create();
+		commentProvider = settings == Settings.COMMENTS ? new JavadocCommentProvider() : CommentProvider.NONE;
+		compilationUnit = parseSource();
+	}
+
+	@Benchmark
+	public CompilationUnit parse() {
+		return parseSource();
+	}
+
+	@Benchmark
+	public ASTRewrite rewrite() throws CoreException {
+		return createGenerator().rewrite(null);
+	}
+
+	@Benchmark
+	public TextEdit rewriteAST(final Rewritten rewritten) {
+		return rewritten.astRewrite.rewriteAST(rewritten.document, options);
+	}
+
+	@Benchmark
+	public IDocument applyEdit(final Edited edited) throws BadLocationException {
+		edited.edit.apply(edited.document);
+		return edited.document;
+	}
+
+	private CompilationUnit parseSource() {
+		final ASTParser parser = ASTParser.newParser(ImmutableClassGenerator.AST_LEVEL);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setCompilerOptions(options);
+		parser.setSource(source.toCharArray());
+
+		return (CompilationUnit) parser.createAST(null);
+	}
+
+	private ImmutableClassGenerator createGenerator() {
+		final MemberIndex members = new MemberIndex((AbstractTypeDeclaration) compilationUnit.types().get(0));
+		final List<ConvertedField> fields = new ArrayList<>(fieldCount);
+
+		for (FieldDeclaration declaration : ((TypeDeclaration) members.getType()).getFields()) {
+			if (!Modifier.isStatic(declaration.getModifiers())) {
+				for (VariableDeclarationFragment fragment : (List<VariableDeclarationFragment>) declaration
+						.fragments()) {
+					final String name = fragment.getName().getIdentifier();
+					fields.add(new ConvertedField(fragment,
+							"get" + Character.toUpperCase(name.charAt(0)) + name.substring(1)));
+				}
+			}
+		}
+
+		return new ImmutableClassGenerator(compilationUnit, members, fields, codeSettings, commentProvider);
+	}
+
+	/**
+	 * The recorded changes for the text edit computation.
+	 */
+	@State(Scope.Thread)
+	public static class Rewritten {
+
+		private ASTRewrite astRewrite;
+
+		private IDocument document;
+
+		@Setup(Level.Invocation)
+		public void setUp(final CodeGenerationBenchmark benchmark) throws CoreException {
+			astRewrite = benchmark.createGenerator().rewrite(null);
+			document = new Document(benchmark.source);
+		}
+	}
+
+	/**
+	 * A fresh copy of the text edit and the document for each application.
+	 */
+	@State(Scope.Thread)
+	public static class Edited {
+
+		private TextEdit prototype;
+
+		private TextEdit edit;
+
+		private IDocument document;
+
+		private String source;
+
+		@Setup(Level.Trial)
+		public void setUpEdit(final CodeGenerationBenchmark benchmark) throws CoreException {
+			source = benchmark.source;
+			prototype = benchmark.createGenerator().generate(new Document(source), benchmark.options, null);
+		}
+
+		@Setup(Level.Invocation)
+		public void setUp() {
+			edit = prototype.copy();
+			document = new Document(source);
+		}
+	}
+
+	private static final class JavadocCommentProvider implements CommentProvider {
+
+		@Override
+		public String getMethodComment(String typeName, MethodDeclaration method) {
+			final StringBuilder comment = new StringBuilder("/**\n * Creates a new ").append(typeName).append(".\n");
+			for (SingleVariableDeclaration parameter : (List<SingleVariableDeclaration>) method.parameters()) {
+				comment.append(" * @param ").append(parameter.getName().getIdentifier()).append('\n');
+			}
+
+			return comment.append(" */").toString();
+		}
+
+		@Override
+		public String getGetterComment(String typeName, String getterName, String fieldName, String fieldType) {
+			return "/**\n * @return the " + fieldName + "\n */";
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package online.devtools.eclipse.benchmarks;
+
+/**
+ * Creates the source of a class with the given number of fields.
+ * 
+ * The fields cycle through primitive, boxed, array and generic types. Every
+ * eighth field has an initializer and every tenth field already has a getter,
+ * so default values and replaced declarations are part of the workload.
+ */
+final class SyntheticSource {
+
+	static final String TYPE_NAME = "Synthetic";
+
+	private static final String[] TYPES = { "int", "String", "long", "java.util.List<String>", "boolean", "double",
+			"byte[]", "Integer" };
+
+	private SyntheticSource() {
+	}
+
+	static String create(final int fieldCount) {
+		final StringBuilder source = new StringBuilder(fieldCount * 80);
+		source.append("package synthetic;\n\npublic class ").append(TYPE_NAME).append(" {\n\n");
+
+		for (int i = 0; i < fieldCount; i++) {
+			source.append("\tprivate ").append(getType(i)).append(' ').append(getName(i));
+			if (i % TYPES.length == 1) {
+				source.append(" = \"default\"");
+			}
+			source.append(";\n");
+		}
+
+		for (int i = 0; i < fieldCount; i += 10) {
+			final String name = getName(i);
+			source.append("\n\tpublic ").append(getType(i)).append(" get").append(Character.toUpperCase(name.charAt(0)))
+					.append(name.substring(1)).append("() {\n\t\treturn ").append(name).append(";\n\t}\n");
+		}
+
+		return source.append("}\n").toString();
+	}
+
+	private static String getType(final int index) {
+		return TYPES[index % TYPES.length];
+	}
+
+	private static String getName(final int index) {
+		return "field" + index;
+	}
+}
@@ -0,0 +1,504 @@
+package online.devtools.eclipse.generation;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.lang.model.SourceVersion;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.ThrowStatement;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+
+/**
+ * Generates the static <code>Builder</code> type and the method creating it.
+ * 
+ * With {@link CodeSettings#freezeBuilder} the builder accumulates the
+ * collections in containers it owns, with <code>add</code> and
+ * <code>put</code> methods for the elements and methods presizing the
+ * containers. <code>build()</code> hands the containers over to the instance,
+ * which wraps them without copying, and the builder rejects any further use.
+ * 
+ * With {@link CodeSettings#reusableBuilder} the builder gets
+ * <code>reset()</code>, clearing all values, and <code>from(instance)</code>,
+ * loading the values of an instance, so that a single builder can build any
+ * number of instances. A frozen builder can be used again after either of
+ * them, creating new containers for the next instance.
+ */
+class BuilderGenerator extends MemberGenerator {
+
+	static final String BUILDER_METHOD_NAME = "builder";
+
+	static final String BUILD_METHOD_NAME = "build";
+
+	static final String VALUE_METHOD_PREFIX = "with";
+
+	private static final String BUILDER_TYPE_NAME = "Builder";
+
+	private static final String CHECK_NOT_BUILT = "checkNotBuilt";
+
+	private static final String INSTANCE_PARAMETER_NAME = "instance";
+
+	private final DefensiveCopyGenerator defensiveCopies;
+
+	private final boolean freeze;
+
+	private final boolean reusable;
+
+	private final String builtFieldName;
+
+	BuilderGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final DefensiveCopyGenerator defensiveCopies) {
+		super(members, fields, codeGenerationSettings);
+		this.defensiveCopies = defensiveCopies;
+		this.freeze = codeGenerationSettings.freezeBuilder;
+		this.reusable = codeGenerationSettings.reusableBuilder;
+		this.builtFieldName = getUniqueBuilderFieldName("built");
+	}
+
+	/**
+	 * Adds the method creating the builder and the builder type at the end of
+	 * the type.
+	 * 
+	 * @param constructorToInvoke
+	 *            the constructor invoked by the builder
+	 * @param useFactory
+	 *            whether the builder creates the instance through the static
+	 *            factory with the parameters of the constructor instead
+	 */
+	void addBuilder(final ListRewrite listRewrite, final MethodDeclaration constructorToInvoke,
+			final boolean useFactory) {
+		for (BodyDeclaration declaration : createBuilderDeclarations(listRewrite.getASTRewrite().getAST(),
+				constructorToInvoke, useFactory)) {
+			listRewrite.insertLast(declaration, null);
+		}
+	}
+
+	/**
+	 * Creates the method creating the builder and the builder type.
+	 * 
+	 * @see #addBuilder(ListRewrite, MethodDeclaration, boolean)
+	 */
+	List<BodyDeclaration> createBuilderDeclarations(final AST ast, final MethodDeclaration constructorToInvoke,
+			final boolean useFactory) {
+		return Arrays.asList(createBuilderAccessor(ast), createBuilder(ast, constructorToInvoke, useFactory));
+	}
+
+	private TypeDeclaration createBuilder(final AST ast, final MethodDeclaration constructorToInvoke,
+			final boolean useFactory) {
+		final TypeDeclaration builderType = ast.newTypeDeclaration();
+
+		builderType.modifiers().add(createPublicModifier(ast));
+		builderType.modifiers().add(createStaticModifier(ast));
+		builderType.setName(ast.newSimpleName(BUILDER_TYPE_NAME));
+
+		final LinkedList<FieldDeclaration> fieldsDeclaration = new LinkedList<>();
+		final LinkedList<MethodDeclaration> fieldAssignments = new LinkedList<>();
+
+		for (ConvertedField field : fields) {
+			fieldsDeclaration.add(createField(ast, field, ast.newModifiers(Modifier.PRIVATE)));
+			fieldAssignments.add(createBuilderFieldAssignment(ast, field));
+			if (freeze) {
+				addElementMethods(ast, field, fieldAssignments);
+			}
+		}
+
+		if (freeze) {
+			fieldsDeclaration.add(createBuiltField(ast));
+		}
+
+		builderType.bodyDeclarations().addAll(fieldsDeclaration);
+		builderType.bodyDeclarations().addAll(fieldAssignments);
+		if (reusable) {
+			builderType.bodyDeclarations().add(createResetMethod(ast));
+			builderType.bodyDeclarations().add(createFromMethod(ast));
+		}
+		builderType.bodyDeclarations().add(createBuildMethod(ast, constructorToInvoke, useFactory));
+		if (freeze) {
+			builderType.bodyDeclarations().add(createCheckNotBuiltMethod(ast));
+		}
+
+		return builderType;
+	}
+
+	private MethodDeclaration createBuilderFieldAssignment(final AST ast, final ConvertedField field) {
+		final Block body = ast.newBlock();
+		addCheckNotBuilt(ast, body);
+		body.statements().add(ast.newExpressionStatement(
+				createAssignment(ast, field, defensiveCopies.createBuilderValue(ast, field))));
+		body.statements().add(createThisReturnStatement(ast));
+		final String fieldName = field.getName();
+		final String name = VALUE_METHOD_PREFIX + capitalize(fieldName);
+
+		final MethodDeclaration methodDeclaration = ast.newMethodDeclaration();
+		methodDeclaration.setName(ast.newSimpleName(name));
+		methodDeclaration.setReturnType2(createBuilderType(ast));
+		methodDeclaration.setBody(body);
+		methodDeclaration.modifiers().add(createPublicModifier(ast));
+		methodDeclaration.parameters().add(createParameter(ast, field));
+
+		return methodDeclaration;
+	}
+
+	/**
+	 * Adds the methods adding a single element to a collection field and, if
+	 * its container can be presized, the method presizing it. Fields with raw
+	 * or wildcard element types get no element methods, as their elements
+	 * have no type which could be added.
+	 */
+	private void addElementMethods(final AST ast, final ConvertedField field,
+			final List<MethodDeclaration> methods) {
+		final CollectionType collectionType = CollectionType.of(field);
+		if (collectionType == null || !field.getDeclaration().getType().isParameterizedType()) {
+			return;
+		}
+
+		final List<Type> typeArguments = ((ParameterizedType) field.getDeclaration().getType()).typeArguments();
+		for (Type typeArgument : typeArguments) {
+			if (typeArgument.isWildcardType()) {
+				return;
+			}
+		}
+
+		final String elementName = getElementName(field.getName());
+		final Block body = ast.newBlock();
+		addCheckNotBuilt(ast, body);
+		body.statements().add(createContainerInitialization(ast, field, collectionType));
+
+		final MethodDeclaration method;
+		if (collectionType.isMap()) {
+			method = createMethod(ast, "put" + capitalize(elementName), createBuilderType(ast), body,
+					createPublicModifier(ast));
+			method.parameters().add(createElementParameter(ast, typeArguments.get(0), "key"));
+			method.parameters().add(createElementParameter(ast, typeArguments.get(1), "value"));
+			body.statements().add(ast.newExpressionStatement(createMethodInvocation(ast,
+					createThisPrefixedFieldAccess(ast, field), "put", ast.newSimpleName("key"),
+					ast.newSimpleName("value"))));
+		} else {
+			method = createMethod(ast, "add" + capitalize(elementName), createBuilderType(ast), body,
+					createPublicModifier(ast));
+			method.parameters().add(createElementParameter(ast, typeArguments.get(0), elementName));
+			body.statements().add(ast.newExpressionStatement(createMethodInvocation(ast,
+					createThisPrefixedFieldAccess(ast, field), "add", ast.newSimpleName(elementName))));
+		}
+		body.statements().add(createThisReturnStatement(ast));
+		methods.add(method);
+
+		if (collectionType.isPresizable()) {
+			methods.add(createCapacityMethod(ast, field, collectionType));
+		}
+	}
+
+	/**
+	 * Creates the method presizing the container of a field for the given
+	 * number of elements. Once the container exists the hint is ignored.
+	 */
+	private MethodDeclaration createCapacityMethod(final AST ast, final ConvertedField field,
+			final CollectionType collectionType) {
+		Expression initialCapacity = ast.newSimpleName("capacity");
+		if (collectionType.isHashed()) {
+			final InfixExpression scaled = createInfixExpression(ast, ast.newSimpleName("capacity"),
+					InfixExpression.Operator.TIMES, ast.newNumberLiteral("4"));
+			final InfixExpression divided = createInfixExpression(ast, scaled, InfixExpression.Operator.DIVIDE,
+					ast.newNumberLiteral("3"));
+			initialCapacity = createInfixExpression(ast, divided, InfixExpression.Operator.PLUS,
+					ast.newNumberLiteral("1"));
+		}
+
+		final Block body = ast.newBlock();
+		addCheckNotBuilt(ast, body);
+		body.statements().add(createIfNull(ast, field, ast.newExpressionStatement(createAssignment(ast, field,
+				defensiveCopies.createInstance(ast, collectionType, initialCapacity)))));
+		body.statements().add(createThisReturnStatement(ast));
+
+		final SingleVariableDeclaration capacity = ast.newSingleVariableDeclaration();
+		capacity.setName(ast.newSimpleName("capacity"));
+		capacity.setType(ast.newPrimitiveType(PrimitiveType.INT));
+		if (codeGenerationSettings.makeParametersFinal) {
+			capacity.modifiers().add(createFinalModifier(ast));
+		}
+
+		final MethodDeclaration method = createMethod(ast,
+				VALUE_METHOD_PREFIX + capitalize(field.getName()) + "Capacity", createBuilderType(ast), body,
+				createPublicModifier(ast));
+		method.parameters().add(capacity);
+
+		return method;
+	}
+
+	private IfStatement createContainerInitialization(final AST ast, final ConvertedField field,
+			final CollectionType collectionType) {
+		return createIfNull(ast, field, ast.newExpressionStatement(
+				createAssignment(ast, field, defensiveCopies.createInstance(ast, collectionType))));
+	}
+
+	private IfStatement createIfNull(final AST ast, final ConvertedField field, final Statement statement) {
+		final IfStatement ifStatement = ast.newIfStatement();
+		ifStatement.setExpression(createInfixExpression(ast, createThisPrefixedFieldAccess(ast, field),
+				InfixExpression.Operator.EQUALS, ast.newNullLiteral()));
+		ifStatement.setThenStatement(statement);
+
+		return ifStatement;
+	}
+
+	private SingleVariableDeclaration createElementParameter(final AST ast, final Type type, final String name) {
+		final SingleVariableDeclaration parameter = ast.newSingleVariableDeclaration();
+		parameter.setName(ast.newSimpleName(name));
+		parameter.setType((Type) ASTNode.copySubtree(ast, type));
+		if (codeGenerationSettings.makeParametersFinal) {
+			parameter.modifiers().add(createFinalModifier(ast));
+		}
+
+		return parameter;
+	}
+
+	/**
+	 * Creates the method setting all values back to the ones of a new
+	 * builder.
+	 */
+	private MethodDeclaration createResetMethod(final AST ast) {
+		final Block body = ast.newBlock();
+		for (ConvertedField field : fields) {
+			body.statements()
+					.add(ast.newExpressionStatement(createAssignment(ast, field, createDefaultValue(ast, field))));
+		}
+		addClearBuilt(ast, body);
+		body.statements().add(createThisReturnStatement(ast));
+
+		return createMethod(ast, "reset", createBuilderType(ast), body, createPublicModifier(ast));
+	}
+
+	/**
+	 * Creates the method loading all values of an instance through the
+	 * <code>withX</code> methods, so that the values are copied as when they
+	 * are set one by one.
+	 */
+	private MethodDeclaration createFromMethod(final AST ast) {
+		final Block body = ast.newBlock();
+		addClearBuilt(ast, body);
+		for (ConvertedField field : fields) {
+			body.statements().add(ast.newExpressionStatement(createMethodInvocation(ast, null,
+					VALUE_METHOD_PREFIX + capitalize(field.getName()), createInstanceValue(ast, field))));
+		}
+		body.statements().add(createThisReturnStatement(ast));
+
+		final SingleVariableDeclaration instance = ast.newSingleVariableDeclaration();
+		instance.setName(ast.newSimpleName(INSTANCE_PARAMETER_NAME));
+		instance.setType(createSimpleType(ast, getTypeName()));
+		if (codeGenerationSettings.makeParametersFinal) {
+			instance.modifiers().add(createFinalModifier(ast));
+		}
+
+		final MethodDeclaration method = createMethod(ast, "from", createBuilderType(ast), body,
+				createPublicModifier(ast));
+		method.parameters().add(instance);
+
+		return method;
+	}
+
+	/**
+	 * Reads the value of a field from the instance passed to
+	 * <code>from</code>. The fields are read directly, except the ones stored
+	 * as primitive arrays, which are read through the views returned by their
+	 * getters.
+	 */
+	private Expression createInstanceValue(final AST ast, final ConvertedField field) {
+		if (isUnboxed(field)) {
+			return createBoxedValue(ast, field, INSTANCE_PARAMETER_NAME);
+		} else if (hasPrimitiveStorage(field)) {
+			return createMethodInvocation(ast, ast.newSimpleName(INSTANCE_PARAMETER_NAME), field.getGetterName());
+		}
+
+		return createQualifiedFieldAccess(ast, INSTANCE_PARAMETER_NAME, field.getName());
+	}
+
+	private Expression createDefaultValue(final AST ast, final ConvertedField field) {
+		final PrimitiveType.Code primitiveType = field.getPrimitiveTypeCode();
+		if (primitiveType == null) {
+			return ast.newNullLiteral();
+		} else if (primitiveType == PrimitiveType.BOOLEAN) {
+			return ast.newBooleanLiteral(false);
+		}
+
+		return ast.newNumberLiteral("0");
+	}
+
+	private void addClearBuilt(final AST ast, final Block body) {
+		if (freeze) {
+			body.statements().add(ast.newExpressionStatement(createAssignment(ast,
+					createThisPrefixedFieldAccess(ast, builtFieldName), ast.newBooleanLiteral(false))));
+		}
+	}
+
+	private MethodDeclaration createBuildMethod(final AST ast, final MethodDeclaration constructorToInvoke,
+			final boolean useFactory) {
+		final Expression instance;
+		final List<Expression> arguments;
+		if (useFactory) {
+			final MethodInvocation factoryInvocation = createMethodInvocation(ast, ast.newSimpleName(getTypeName()),
+					FactoryGenerator.FACTORY_METHOD_NAME);
+			arguments = factoryInvocation.arguments();
+			instance = factoryInvocation;
+		} else {
+			final ClassInstanceCreation constructorInvocation = ast.newClassInstanceCreation();
+			constructorInvocation.setType(createSimpleType(ast, getTypeName()));
+			arguments = constructorInvocation.arguments();
+			instance = constructorInvocation;
+		}
+
+		final List<SingleVariableDeclaration> constructorParameters = constructorToInvoke.parameters();
+
+		if (constructorParameters != null) {
+			for (SingleVariableDeclaration param : constructorParameters) {
+				arguments.add(ast.newSimpleName(param.getName().toString()));
+			}
+		}
+
+		final Block body = ast.newBlock();
+		addCheckNotBuilt(ast, body);
+		if (freeze) {
+			body.statements().add(ast.newExpressionStatement(createAssignment(ast,
+					createThisPrefixedFieldAccess(ast, builtFieldName), ast.newBooleanLiteral(true))));
+		}
+		body.statements().add(createReturnStatement(ast, instance));
+
+		final MethodDeclaration buildMethod = ast.newMethodDeclaration();
+		buildMethod.modifiers().add(createPublicModifier(ast));
+		buildMethod.setName(ast.newSimpleName(BUILD_METHOD_NAME));
+		buildMethod.setReturnType2(createSimpleType(ast, getTypeName()));
+		buildMethod.setBody(body);
+
+		return buildMethod;
+	}
+
+	private FieldDeclaration createBuiltField(final AST ast) {
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(builtFieldName));
+
+		final FieldDeclaration builtField = ast.newFieldDeclaration(fragment);
+		builtField.setType(ast.newPrimitiveType(PrimitiveType.BOOLEAN));
+		builtField.modifiers().add(createPrivateModifier(ast));
+
+		return builtField;
+	}
+
+	/**
+	 * Creates the guard rejecting the use of the builder after
+	 * <code>build()</code>, as the built instance owns the containers.
+	 */
+	private MethodDeclaration createCheckNotBuiltMethod(final AST ast) {
+		final StringLiteral message = ast.newStringLiteral();
+		message.setLiteralValue(reusable ? "The builder can not be used after build() before reset() or from()"
+				: "The builder can not be used after build()");
+
+		final ClassInstanceCreation exception = ast.newClassInstanceCreation();
+		exception.setType(createSimpleType(ast, "IllegalStateException"));
+		exception.arguments().add(message);
+
+		final ThrowStatement throwStatement = ast.newThrowStatement();
+		throwStatement.setExpression(exception);
+
+		final IfStatement ifBuilt = ast.newIfStatement();
+		ifBuilt.setExpression(createThisPrefixedFieldAccess(ast, builtFieldName));
+		ifBuilt.setThenStatement(throwStatement);
+
+		final Block body = ast.newBlock();
+		body.statements().add(ifBuilt);
+
+		return createMethod(ast, CHECK_NOT_BUILT, ast.newPrimitiveType(PrimitiveType.VOID), body,
+				createPrivateModifier(ast));
+	}
+
+	private void addCheckNotBuilt(final AST ast, final Block body) {
+		if (freeze) {
+			body.statements()
+					.add(ast.newExpressionStatement(createMethodInvocation(ast, null, CHECK_NOT_BUILT)));
+		}
+	}
+
+	private MethodDeclaration createBuilderAccessor(final AST ast) {
+		final ClassInstanceCreation builderInstance = ast.newClassInstanceCreation();
+		builderInstance.setType(createBuilderType(ast));
+
+		final Block body = ast.newBlock();
+		body.statements().add(createReturnStatement(ast, builderInstance));
+
+		final MethodDeclaration methodDeclaration = ast.newMethodDeclaration();
+		methodDeclaration.setName(ast.newSimpleName(BUILDER_METHOD_NAME));
+		methodDeclaration.setReturnType2(createBuilderType(ast));
+		methodDeclaration.setBody(body);
+		methodDeclaration.modifiers().add(createPublicModifier(ast));
+		methodDeclaration.modifiers().add(createStaticModifier(ast));
+
+		return methodDeclaration;
+	}
+
+	private SimpleType createBuilderType(final AST ast) {
+		return ast.newSimpleType(ast.newSimpleName(BUILDER_TYPE_NAME));
+	}
+
+	/**
+	 * The builder declares a field for each converted field, so the name of
+	 * its own field must not clash with any of them.
+	 */
+	private String getUniqueBuilderFieldName(final String name) {
+		String uniqueName = name;
+		for (int i = 1; isConvertedField(uniqueName); i++) {
+			uniqueName = name + i;
+		}
+
+		return uniqueName;
+	}
+
+	private boolean isConvertedField(final String name) {
+		for (ConvertedField field : fields) {
+			if (field.getName().equals(name)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Derives the name of a single element from the name of a collection, for
+	 * example <code>entry</code> from <code>entries</code> or
+	 * <code>item</code> from <code>items</code>. The name of the collection
+	 * is kept if the singular is a keyword, such as <code>byte</code> from
+	 * <code>bytes</code>.
+	 */
+	static String getElementName(final String collectionName) {
+		final String elementName;
+		if (collectionName.endsWith("ies") && collectionName.length() > 3) {
+			elementName = collectionName.substring(0, collectionName.length() - 3) + "y";
+		} else if (collectionName.endsWith("s") && !collectionName.endsWith("ss") && collectionName.length() > 1) {
+			elementName = collectionName.substring(0, collectionName.length() - 1);
+		} else {
+			elementName = collectionName;
+		}
+
+		return SourceVersion.isKeyword(elementName) ? collectionName : elementName;
+	}
+}
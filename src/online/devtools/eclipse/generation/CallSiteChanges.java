@@ -0,0 +1,93 @@
+package online.devtools.eclipse.generation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The changes of a converted type which break the code using it: the
+ * constructor assigning all fields which became private and the setters
+ * which were removed.
+ * 
+ * @see CallSiteRewriter
+ */
+public final class CallSiteChanges {
+
+	/**
+	 * How the callers of the constructor assigning all fields create the
+	 * instances after the conversion.
+	 */
+	public enum Creation {
+		/**
+		 * The constructor is kept as it was.
+		 */
+		UNCHANGED,
+		/**
+		 * The constructor is private, the instances are created by
+		 * <code>of(...)</code> with the same parameters.
+		 */
+		FACTORY,
+		/**
+		 * The constructor is private, the instances are created by the
+		 * builder.
+		 */
+		BUILDER
+	}
+
+	private final String typeName;
+
+	private final List<String> fieldNames;
+
+	private final Creation creation;
+
+	private final Map<String, String> removedSetters;
+
+	private final boolean withers;
+
+	/**
+	 * @param fieldNames
+	 *            the names of the converted fields in the order of the
+	 *            parameters of the constructor
+	 * @param removedSetters
+	 *            the names of the removed setters mapped to the names of
+	 *            their fields
+	 * @param withers
+	 *            whether the type has a <code>withX</code> method for each
+	 *            field
+	 */
+	CallSiteChanges(final String typeName, final List<String> fieldNames, final Creation creation,
+			final Map<String, String> removedSetters, final boolean withers) {
+		this.typeName = typeName;
+		this.fieldNames = Collections.unmodifiableList(fieldNames);
+		this.creation = creation;
+		this.removedSetters = Collections.unmodifiableMap(removedSetters);
+		this.withers = withers;
+	}
+
+	public String getTypeName() {
+		return typeName;
+	}
+
+	public List<String> getFieldNames() {
+		return fieldNames;
+	}
+
+	public Creation getCreation() {
+		return creation;
+	}
+
+	public Map<String, String> getRemovedSetters() {
+		return removedSetters;
+	}
+
+	public boolean hasWithers() {
+		return withers;
+	}
+
+	/**
+	 * @return whether no call sites are broken by the conversion
+	 */
+	public boolean isEmpty() {
+		return creation == Creation.UNCHANGED && removedSetters.isEmpty();
+	}
+}
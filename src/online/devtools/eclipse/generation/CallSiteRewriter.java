@@ -0,0 +1,325 @@
+package online.devtools.eclipse.generation;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.DoStatement;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+import org.eclipse.jdt.core.dom.WhileStatement;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+
+/**
+ * Rewrites the call sites broken by the conversion of one or more types:
+ * 
+ * <ul>
+ * <li>instances created by the constructor which became private are created
+ * by the factory, <code>Point.of(x, y)</code>, or by the builder,
+ * <code>Point.builder().withX(x).withY(y).build()</code></li>
+ * <li>removed setters invoked as a statement on a local variable are
+ * replaced by assigning the copy returned by the wither,
+ * <code>point = point.withX(x)</code></li>
+ * </ul>
+ * 
+ * The call sites are located by the search, so the rewriter works on ASTs
+ * without bindings and tells the types apart by their simple names. Call
+ * sites which are ambiguous or can not be migrated, such as setters whose
+ * result is used or invocations of the constructor by subclasses, are left
+ * unchanged.
+ * 
+ * A setter is only migrated on a local variable holding an instance which
+ * nothing else can refer to: a variable declared without <code>final</code>
+ * in the same body, initialized with a new instance, not used by lambdas or
+ * nested classes and, up to the setter, only used to invoke setters. Any
+ * other use, such as <code>list.add(p)</code>, <code>q = p</code> or
+ * <code>register(p)</code>, may share the instance with code which would
+ * keep seeing the old values once the variable is assigned a copy, as would
+ * a parameter or a field, so the setter is left to be migrated by hand
+ * instead of silently changing what the program does.
+ */
+public class CallSiteRewriter {
+
+	private final Map<String, CallSiteChanges> typesByName = new HashMap<>();
+
+	private final Set<String> ambiguousTypeNames = new HashSet<>();
+
+	private final Map<String, String> withersBySetter = new HashMap<>();
+
+	public CallSiteRewriter(final Collection<CallSiteChanges> changes) {
+		for (CallSiteChanges typeChanges : changes) {
+			if (typesByName.put(typeChanges.getTypeName(), typeChanges) != null) {
+				ambiguousTypeNames.add(typeChanges.getTypeName());
+			}
+
+			for (Map.Entry<String, String> setter : typeChanges.getRemovedSetters().entrySet()) {
+				final String wither = typeChanges.hasWithers()
+						? WitherGenerator.WITHER_PREFIX + MemberGenerator.capitalize(setter.getValue())
+						: null;
+				if (withersBySetter.containsKey(setter.getKey())
+						&& !Objects.equals(wither, withersBySetter.get(setter.getKey()))) {
+					withersBySetter.put(setter.getKey(), null);
+				} else {
+					withersBySetter.put(setter.getKey(), wither);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the call site at the given node, the node found at a match of
+	 * the constructor or of a setter.
+	 * 
+	 * @return whether the call site was rewritten
+	 */
+	public boolean rewrite(final ASTRewrite astRewrite, final ASTNode node) {
+		for (ASTNode current = node; current != null; current = current.getParent()) {
+			if (current instanceof ClassInstanceCreation) {
+				return rewriteCreation(astRewrite, (ClassInstanceCreation) current);
+			} else if (current instanceof MethodInvocation) {
+				return rewriteSetterInvocation(astRewrite, (MethodInvocation) current);
+			} else if (current instanceof ConstructorInvocation || current instanceof SuperConstructorInvocation) {
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+	private boolean rewriteCreation(final ASTRewrite astRewrite, final ClassInstanceCreation creation) {
+		if (creation.getAnonymousClassDeclaration() != null || creation.getExpression() != null
+				|| !creation.typeArguments().isEmpty()) {
+			return false;
+		}
+
+		final Type type = creation.getType();
+		final Type rawType = type.isParameterizedType() ? ((ParameterizedType) type).getType() : type;
+		if (!rawType.isSimpleType()) {
+			return false;
+		}
+
+		final Name typeName = ((SimpleType) rawType).getName();
+		final CallSiteChanges changes = getChanges(getIdentifier(typeName));
+		if (changes == null || changes.getCreation() == CallSiteChanges.Creation.UNCHANGED
+				|| creation.arguments().size() != changes.getFieldNames().size()
+				|| (changes.getCreation() == CallSiteChanges.Creation.BUILDER && type.isParameterizedType())) {
+			return false;
+		}
+
+		final AST ast = astRewrite.getAST();
+		final List<Expression> arguments = creation.arguments();
+		final MethodInvocation replacement;
+		if (changes.getCreation() == CallSiteChanges.Creation.FACTORY) {
+			replacement = createInvocation(ast, (Name) ASTNode.copySubtree(ast, typeName),
+					FactoryGenerator.FACTORY_METHOD_NAME);
+			for (Expression argument : arguments) {
+				replacement.arguments().add(astRewrite.createMoveTarget(argument));
+			}
+		} else {
+			MethodInvocation chain = createInvocation(ast, (Name) ASTNode.copySubtree(ast, typeName),
+					BuilderGenerator.BUILDER_METHOD_NAME);
+			for (int i = 0; i < arguments.size(); i++) {
+				chain = createInvocation(ast, chain, BuilderGenerator.VALUE_METHOD_PREFIX
+						+ MemberGenerator.capitalize(changes.getFieldNames().get(i)));
+				chain.arguments().add(astRewrite.createMoveTarget(arguments.get(i)));
+			}
+			replacement = createInvocation(ast, chain, BuilderGenerator.BUILD_METHOD_NAME);
+		}
+
+		astRewrite.replace(creation, replacement, null);
+		return true;
+	}
+
+	private boolean rewriteSetterInvocation(final ASTRewrite astRewrite, final MethodInvocation invocation) {
+		final String wither = withersBySetter.get(invocation.getName().getIdentifier());
+		final Expression receiver = invocation.getExpression();
+		if (wither == null || invocation.arguments().size() != 1
+				|| !(invocation.getParent() instanceof ExpressionStatement) || !(receiver instanceof SimpleName)
+				|| !isUncapturedLocal(invocation, ((SimpleName) receiver).getIdentifier())) {
+			return false;
+		}
+
+		final AST ast = astRewrite.getAST();
+		final MethodInvocation witherInvocation = createInvocation(ast,
+				(Expression) ASTNode.copySubtree(ast, receiver), wither);
+		witherInvocation.arguments().add(astRewrite.createMoveTarget((ASTNode) invocation.arguments().get(0)));
+
+		final Assignment assignment = ast.newAssignment();
+		assignment.setLeftHandSide((Expression) ASTNode.copySubtree(ast, receiver));
+		assignment.setRightHandSide(witherInvocation);
+
+		astRewrite.replace(invocation, assignment, null);
+		return true;
+	}
+
+	/**
+	 * @return whether the name refers to a local variable declared without
+	 *         <code>final</code> by a statement before the node, in a block of
+	 *         the same method, initializer or lambda, which holds a new
+	 *         instance, is not used by a lambda or a nested class and is only
+	 *         used to invoke setters before the node
+	 */
+	private boolean isUncapturedLocal(final ASTNode node, final String name) {
+		ASTNode child = node;
+		for (ASTNode parent = node.getParent(); parent != null; child = parent, parent = parent.getParent()) {
+			if (parent instanceof BodyDeclaration || parent instanceof LambdaExpression
+					|| parent instanceof AnonymousClassDeclaration) {
+				return false;
+			} else if (parent instanceof Block) {
+				final VariableDeclarationFragment declaration = findDeclaration((Block) parent, child, name);
+				if (declaration != null) {
+					return !Modifier.isFinal(((VariableDeclarationStatement) declaration.getParent()).getModifiers())
+							&& declaration.getInitializer() instanceof ClassInstanceCreation
+							&& ((ClassInstanceCreation) declaration.getInitializer())
+									.getAnonymousClassDeclaration() == null
+							&& !isCaptured((Block) parent, name)
+							&& isOnlySetterReceiver((Block) parent, declaration, node, name);
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the fragment of a statement of the block before the given one
+	 *         declaring the variable, or <code>null</code>
+	 */
+	private static VariableDeclarationFragment findDeclaration(final Block block, final ASTNode before,
+			final String name) {
+		for (Object statement : block.statements()) {
+			if (statement == before) {
+				break;
+			} else if (statement instanceof VariableDeclarationStatement) {
+				for (Object fragment : ((VariableDeclarationStatement) statement).fragments()) {
+					if (((VariableDeclarationFragment) fragment).getName().getIdentifier().equals(name)) {
+						return (VariableDeclarationFragment) fragment;
+					}
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks the uses of the variable after its declaration up to the setter
+	 * or, if the setter is in a loop within the block, up to the end of the
+	 * loop, as the uses after the setter run before its next iteration.
+	 * 
+	 * @return whether every use of the variable in that range is the receiver
+	 *         of a removed setter invoked as a statement
+	 */
+	private boolean isOnlySetterReceiver(final Block block, final VariableDeclarationFragment declaration,
+			final ASTNode setter, final String name) {
+		final int start = declaration.getStartPosition() + declaration.getLength();
+		int end = setter.getStartPosition();
+		for (ASTNode parent = setter.getParent(); parent != block; parent = parent.getParent()) {
+			if (parent instanceof WhileStatement || parent instanceof DoStatement || parent instanceof ForStatement
+					|| parent instanceof EnhancedForStatement) {
+				end = Math.max(end, parent.getStartPosition() + parent.getLength());
+			}
+		}
+
+		final int rangeEnd = end;
+		final boolean[] otherUse = new boolean[1];
+		block.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(final SimpleName node) {
+				if (node.getIdentifier().equals(name) && node.getStartPosition() >= start
+						&& node.getStartPosition() < rangeEnd && !isSetterReceiver(node)) {
+					otherUse[0] = true;
+				}
+				return false;
+			}
+		});
+
+		return !otherUse[0];
+	}
+
+	private boolean isSetterReceiver(final SimpleName name) {
+		if (!(name.getParent() instanceof MethodInvocation)) {
+			return false;
+		}
+
+		final MethodInvocation invocation = (MethodInvocation) name.getParent();
+		return invocation.getExpression() == name && invocation.arguments().size() == 1
+				&& invocation.getParent() instanceof ExpressionStatement
+				&& withersBySetter.containsKey(invocation.getName().getIdentifier());
+	}
+
+	/**
+	 * @return whether the name is used within a lambda or a nested class in
+	 *         the block, which may keep the variable beyond the statement
+	 */
+	private static boolean isCaptured(final Block block, final String name) {
+		final boolean[] captured = new boolean[1];
+		block.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(final SimpleName node) {
+				if (node.getIdentifier().equals(name) && isNested(node, block)) {
+					captured[0] = true;
+				}
+				return false;
+			}
+		});
+
+		return captured[0];
+	}
+
+	private static boolean isNested(final ASTNode node, final Block block) {
+		for (ASTNode parent = node.getParent(); parent != block; parent = parent.getParent()) {
+			if (parent instanceof LambdaExpression || parent instanceof AnonymousClassDeclaration
+					|| parent instanceof TypeDeclarationStatement) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private CallSiteChanges getChanges(final String typeName) {
+		return ambiguousTypeNames.contains(typeName) ? null : typesByName.get(typeName);
+	}
+
+	private static String getIdentifier(final Name name) {
+		return name.isSimpleName() ? ((SimpleName) name).getIdentifier()
+				: ((QualifiedName) name).getName().getIdentifier();
+	}
+
+	private static MethodInvocation createInvocation(final AST ast, final Expression target, final String name) {
+		final MethodInvocation invocation = ast.newMethodInvocation();
+		invocation.setExpression(target);
+		invocation.setName(ast.newSimpleName(name));
+
+		return invocation;
+	}
+}
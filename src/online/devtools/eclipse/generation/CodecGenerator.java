@@ -0,0 +1,686 @@
+package online.devtools.eclipse.generation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CastExpression;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.EnumDeclaration;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+
+/**
+ * Generates a compact binary codec: <code>writeTo(ByteBuffer)</code>, the
+ * static <code>readFrom(ByteBuffer)</code> and <code>serializedSize()</code>.
+ * 
+ * The fields are written in their declaration order, primitives with their
+ * fixed width in the byte order of the buffer and <code>boolean</code> as a
+ * byte. Wrappers, enums and nested types are preceded by a byte which is 0
+ * for <code>null</code>. Strings are written as their length in UTF-8 bytes,
+ * -1 for <code>null</code>, followed by the bytes, which private helpers
+ * encode straight into the buffer. Enums are written as their ordinal, in a
+ * byte if they have at most 128 constants, and read back from a constant
+ * holding the array of their constants, as <code>values()</code> clones the
+ * array on each call. Nested types are written by their own codec.
+ * <code>readFrom</code> passes the values to the constructor in the order
+ * they are read.
+ * 
+ * Without bindings, the enums and the types with a codec are only known if
+ * they are declared in the same compilation unit, including the converted
+ * type itself. The codec is not generated for generic types and for types
+ * with fields of arrays, parameterized types, types which are not known to be
+ * enums or to have a codec, such as interfaces or types of other compilation
+ * units, or with a primitive storage.
+ */
+class CodecGenerator extends MemberGenerator {
+
+	private static final String BYTE_BUFFER = "java.nio.ByteBuffer";
+
+	private static final String STANDARD_CHARSETS = "java.nio.charset.StandardCharsets";
+
+	private static final String BUFFER = "buffer";
+
+	private static final String WRITE_TO = "writeTo";
+
+	private static final String READ_FROM = "readFrom";
+
+	private static final String SERIALIZED_SIZE = "serializedSize";
+
+	private static final String WRITE_STRING = "writeString";
+
+	private static final String READ_STRING = "readString";
+
+	private static final String SIZE_OF_STRING = "sizeOfString";
+
+	/**
+	 * The helpers for strings, formatted with the names of
+	 * <code>ByteBuffer</code> and <code>StandardCharsets</code> and the
+	 * modifier of the parameters. Surrogate pairs take 4 bytes and all other
+	 * characters 1 to 3 bytes, so that <code>sizeOfString</code> matches
+	 * <code>writeString</code> without encoding the string.
+	 */
+	private static final String STRING_HELPERS = String.join("\n",
+			"private static void writeString(%3$s%1$s buffer, %3$sString value) {",
+			"	if (value == null) {",
+			"		buffer.putInt(-1);",
+			"		return;",
+			"	}",
+			"	final int start = buffer.position();",
+			"	buffer.position(start + 4);",
+			"	final int length = value.length();",
+			"	for (int i = 0; i < length; i++) {",
+			"		final char c = value.charAt(i);",
+			"		if (c < 0x80) {",
+			"			buffer.put((byte) c);",
+			"		} else if (c < 0x800) {",
+			"			buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));",
+			"		} else if (Character.isHighSurrogate(c) && i + 1 < length",
+			"				&& Character.isLowSurrogate(value.charAt(i + 1))) {",
+			"			final int codePoint = Character.toCodePoint(c, value.charAt(++i));",
+			"			buffer.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))",
+			"					.put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));",
+			"		} else {",
+			"			buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F))",
+			"					.put((byte) (0x80 | c & 0x3F));",
+			"		}",
+			"	}",
+			"	buffer.putInt(start, buffer.position() - start - 4);",
+			"}",
+			"private static String readString(%3$s%1$s buffer) {",
+			"	final int length = buffer.getInt();",
+			"	if (length < 0) {",
+			"		return null;",
+			"	}",
+			"	if (buffer.hasArray()) {",
+			"		final int position = buffer.position();",
+			"		buffer.position(position + length);",
+			"		return new String(buffer.array(), buffer.arrayOffset() + position, length, %2$s.UTF_8);",
+			"	}",
+			"	final byte[] bytes = new byte[length];",
+			"	buffer.get(bytes);",
+			"	return new String(bytes, %2$s.UTF_8);",
+			"}",
+			"private static int sizeOfString(%3$sString value) {",
+			"	if (value == null) {",
+			"		return 4;",
+			"	}",
+			"	final int length = value.length();",
+			"	int size = 4 + length;",
+			"	for (int i = 0; i < length; i++) {",
+			"		final char c = value.charAt(i);",
+			"		if (c >= 0x800) {",
+			"			size += 2;",
+			"			if (Character.isHighSurrogate(c) && i + 1 < length",
+			"					&& Character.isLowSurrogate(value.charAt(i + 1))) {",
+			"				i++;",
+			"			}",
+			"		} else if (c >= 0x80) {",
+			"			size++;",
+			"		}",
+			"	}",
+			"	return size;",
+			"}");
+
+	private enum Encoding {
+		PRIMITIVE, WRAPPER, STRING, ENUM, NESTED
+	}
+
+	private final Imports imports;
+
+	private final Map<String, AbstractTypeDeclaration> encodedTypes = new HashMap<>();
+
+	/**
+	 * The names of the constants holding the constants of the enums of the
+	 * fields, by the names of the enums.
+	 */
+	private final Map<String, String> valuesFieldNames = new LinkedHashMap<>();
+
+	CodecGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+
+		if (codeGenerationSettings.generateCodec) {
+			findEncodedTypes();
+			for (ConvertedField field : fields) {
+				if (getEncoding(field) == Encoding.ENUM && !valuesFieldNames.containsKey(field.getTypeName())) {
+					valuesFieldNames.put(field.getTypeName(), getUniqueValuesFieldName(field.getTypeName()));
+				}
+			}
+		}
+	}
+
+	boolean isEnabled() {
+		if (!codeGenerationSettings.generateCodec || !(type instanceof TypeDeclaration)
+				|| ((TypeDeclaration) type).isInterface() || !((TypeDeclaration) type).typeParameters().isEmpty()) {
+			return false;
+		}
+
+		for (ConvertedField field : fields) {
+			if (getEncoding(field) == null) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the constants holding the constants of the enums read by
+	 * <code>readFrom</code> before the given field:
+	 * 
+	 * <pre>
+	 * private static final Color[] COLOR_VALUES = Color.values();
+	 * </pre>
+	 */
+	void addConstants(final ListRewrite listRewrite, final FieldDeclaration insertionPoint) {
+		if (!isEnabled()) {
+			return;
+		}
+
+		final AST ast = listRewrite.getASTRewrite().getAST();
+		for (Map.Entry<String, String> valuesFieldName : valuesFieldNames.entrySet()) {
+			final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+			fragment.setName(ast.newSimpleName(valuesFieldName.getValue()));
+			fragment.setInitializer(createMethodInvocation(ast, ast.newName(valuesFieldName.getKey()), "values"));
+
+			final FieldDeclaration constant = ast.newFieldDeclaration(fragment);
+			constant.setType(ast.newArrayType(createSimpleType(ast, valuesFieldName.getKey())));
+			constant.modifiers().add(createPrivateModifier(ast));
+			constant.modifiers().add(createStaticModifier(ast));
+			constant.modifiers().add(createFinalModifier(ast));
+
+			listRewrite.insertBefore(constant, insertionPoint, null);
+		}
+	}
+
+	/**
+	 * @return the name of the enum in upper case with underscores between its
+	 *         words followed by <code>_VALUES</code>, numbered if it is used by
+	 *         a field of the type or another enum
+	 */
+	private String getUniqueValuesFieldName(final String enumName) {
+		final StringBuilder name = new StringBuilder();
+		for (int i = 0; i < enumName.length(); i++) {
+			final char c = enumName.charAt(i);
+			if (i > 0 && Character.isUpperCase(c) && !Character.isUpperCase(enumName.charAt(i - 1))) {
+				name.append('_');
+			}
+			name.append(Character.toUpperCase(c));
+		}
+		name.append("_VALUES");
+
+		String uniqueName = getUniqueFieldName(name.toString());
+		for (int i = 1; valuesFieldNames.containsValue(uniqueName); i++) {
+			uniqueName = getUniqueFieldName(name.toString() + i);
+		}
+
+		return uniqueName;
+	}
+
+	/**
+	 * Adds the codec methods after the given member.
+	 * 
+	 * @return the last added method or the given member if none was added
+	 */
+	ASTNode addMethods(final ListRewrite listRewrite, final ASTNode insertionPoint) {
+		if (!isEnabled()) {
+			return insertionPoint;
+		}
+
+		final AST ast = listRewrite.getASTRewrite().getAST();
+		final String bufferType = imports.addImport(BYTE_BUFFER);
+		final List<BodyDeclaration> methods = new ArrayList<>();
+
+		if (replaceExisting(members.getMethod(WRITE_TO, bufferType), listRewrite)) {
+			methods.add(createWriteToMethod(ast, bufferType));
+		}
+		if (replaceExisting(members.getMethod(READ_FROM, bufferType), listRewrite)) {
+			methods.add(createReadFromMethod(ast, bufferType));
+		}
+		if (replaceExisting(members.getMethod(SERIALIZED_SIZE), listRewrite)) {
+			methods.add(createSerializedSizeMethod(ast));
+		}
+		if (hasStrings()) {
+			removeMethod(members.getMethod(WRITE_STRING, bufferType, "String"), listRewrite);
+			removeMethod(members.getMethod(READ_STRING, bufferType), listRewrite);
+			removeMethod(members.getMethod(SIZE_OF_STRING, "String"), listRewrite);
+			methods.addAll(createStringHelpers(ast, bufferType));
+		}
+
+		ASTNode lastMember = insertionPoint;
+		for (BodyDeclaration method : methods) {
+			listRewrite.insertAfter(method, lastMember, null);
+			lastMember = method;
+		}
+
+		return lastMember;
+	}
+
+	/**
+	 * @return the encoding of the field or <code>null</code> if it can not be
+	 *         encoded
+	 */
+	private Encoding getEncoding(final ConvertedField field) {
+		final Type fieldType = field.getDeclaration().getType();
+		if (field.isPrimitive()) {
+			return Encoding.PRIMITIVE;
+		} else if (field.getDimensions() > 0 || !fieldType.isSimpleType() || hasPrimitiveStorage(field)) {
+			return null;
+		} else if (field.getWrappedTypeCode() != null) {
+			return Encoding.WRAPPER;
+		}
+
+		final String typeName = ((SimpleType) fieldType).getName().getFullyQualifiedName();
+		if ("String".equals(typeName) || "java.lang.String".equals(typeName)) {
+			return Encoding.STRING;
+		}
+
+		final AbstractTypeDeclaration encodedType = encodedTypes.get(typeName);
+		if (encodedType == null) {
+			return null;
+		}
+
+		return encodedType instanceof EnumDeclaration ? Encoding.ENUM : Encoding.NESTED;
+	}
+
+	/**
+	 * Finds the enums and the classes with a codec declared in the
+	 * compilation unit by their simple names, which must not be declared
+	 * twice or refer to a library type. The converted type is taken for a
+	 * class with a codec, as the codec is generated for it.
+	 */
+	private void findEncodedTypes() {
+		final Set<String> ambiguousNames = new HashSet<>();
+		type.getRoot().accept(new ASTVisitor() {
+			@Override
+			public boolean visit(final TypeDeclaration node) {
+				addEncodedType(node, node == type || (!node.isInterface() && hasCodec(node)));
+				return true;
+			}
+
+			@Override
+			public boolean visit(final EnumDeclaration node) {
+				addEncodedType(node, true);
+				return true;
+			}
+
+			private void addEncodedType(final AbstractTypeDeclaration node, final boolean encoded) {
+				final String name = node.getName().getIdentifier();
+				final boolean member = node.getParent() instanceof CompilationUnit
+						|| node.getParent() instanceof AbstractTypeDeclaration;
+				if (!member || encodedTypes.containsKey(name) || ambiguousNames.contains(name)) {
+					ambiguousNames.add(name);
+				} else if (encoded && !imports.isLibraryType(name)) {
+					encodedTypes.put(name, node);
+				} else {
+					ambiguousNames.add(name);
+				}
+			}
+		});
+
+		encodedTypes.keySet().removeAll(ambiguousNames);
+	}
+
+	/**
+	 * @return whether the class declares the methods of the codec
+	 */
+	private static boolean hasCodec(final TypeDeclaration declaration) {
+		boolean writeTo = false;
+		boolean readFrom = false;
+		boolean serializedSize = false;
+		for (MethodDeclaration method : declaration.getMethods()) {
+			final boolean isStatic = Modifier.isStatic(method.getModifiers());
+			final String name = method.getName().getIdentifier();
+			final int parameters = method.parameters().size();
+			writeTo |= WRITE_TO.equals(name) && !isStatic && parameters == 1;
+			readFrom |= READ_FROM.equals(name) && isStatic && parameters == 1;
+			serializedSize |= SERIALIZED_SIZE.equals(name) && !isStatic && parameters == 0;
+		}
+
+		return writeTo && readFrom && serializedSize;
+	}
+
+	/**
+	 * @return whether the ordinal of the enum field fits into a byte
+	 */
+	private boolean hasByteOrdinal(final ConvertedField field) {
+		final String typeName = ((SimpleType) field.getDeclaration().getType()).getName().getFullyQualifiedName();
+		return ((EnumDeclaration) encodedTypes.get(typeName)).enumConstants().size() <= Byte.MAX_VALUE + 1;
+	}
+
+	private boolean hasStrings() {
+		for (ConvertedField field : fields) {
+			if (getEncoding(field) == Encoding.STRING) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private MethodDeclaration createWriteToMethod(final AST ast, final String bufferType) {
+		final Block body = ast.newBlock();
+		for (ConvertedField field : fields) {
+			body.statements().add(createWriteStatement(ast, field));
+		}
+
+		final MethodDeclaration writeTo = createMethod(ast, WRITE_TO, ast.newPrimitiveType(PrimitiveType.VOID), body,
+				createPublicModifier(ast));
+		writeTo.parameters().add(createBufferParameter(ast, bufferType));
+
+		return writeTo;
+	}
+
+	private Statement createWriteStatement(final AST ast, final ConvertedField field) {
+		switch (getEncoding(field)) {
+		case PRIMITIVE:
+			return ast.newExpressionStatement(createPut(ast, ast.newSimpleName(BUFFER), field.getPrimitiveTypeCode(),
+					createFieldAccess(ast, field)));
+		case WRAPPER:
+			return createPresenceStatement(ast, field, ast.newExpressionStatement(createPut(ast,
+					createPresenceByte(ast, true), field.getWrappedTypeCode(), createFieldAccess(ast, field))));
+		case STRING:
+			return ast.newExpressionStatement(createMethodInvocation(ast, null, WRITE_STRING,
+					ast.newSimpleName(BUFFER), createFieldAccess(ast, field)));
+		case ENUM:
+			final Expression ordinal = createMethodInvocation(ast, createFieldAccess(ast, field), "ordinal");
+			return createPresenceStatement(ast, field, ast.newExpressionStatement(hasByteOrdinal(field)
+					? createMethodInvocation(ast, createPresenceByte(ast, true), "put", createByteCast(ast, ordinal))
+					: createPut(ast, createPresenceByte(ast, true), PrimitiveType.INT, ordinal)));
+		default:
+			final Block present = ast.newBlock();
+			present.statements().add(ast.newExpressionStatement(createPresenceByte(ast, true)));
+			present.statements().add(ast.newExpressionStatement(createMethodInvocation(ast,
+					createFieldAccess(ast, field), WRITE_TO, ast.newSimpleName(BUFFER))));
+			return createPresenceStatement(ast, field, present);
+		}
+	}
+
+	/**
+	 * Creates the statement writing a value which can be <code>null</code>:
+	 * 
+	 * <pre>
+	 * if (value != null) {
+	 * 	buffer.put((byte) 1).putInt(value);
+	 * } else {
+	 * 	buffer.put((byte) 0);
+	 * }
+	 * </pre>
+	 */
+	private IfStatement createPresenceStatement(final AST ast, final ConvertedField field, final Statement write) {
+		final IfStatement ifStatement = ast.newIfStatement();
+		ifStatement.setExpression(createNullableCheck(ast, field));
+		ifStatement.setThenStatement(write);
+		ifStatement.setElseStatement(ast.newExpressionStatement(createPresenceByte(ast, false)));
+
+		return ifStatement;
+	}
+
+	/**
+	 * Creates the check whether the value of a wrapper or nested field is
+	 * present, using the presence mask for unboxed fields.
+	 */
+	private Expression createNullableCheck(final AST ast, final ConvertedField field) {
+		if (isUnboxed(field)) {
+			return createPresenceCheck(ast, field, true);
+		}
+
+		return createInfixExpression(ast, createFieldAccess(ast, field), InfixExpression.Operator.NOT_EQUALS,
+				ast.newNullLiteral());
+	}
+
+	private MethodInvocation createPresenceByte(final AST ast, final boolean present) {
+		return createMethodInvocation(ast, ast.newSimpleName(BUFFER), "put",
+				createByteCast(ast, ast.newNumberLiteral(present ? "1" : "0")));
+	}
+
+	/**
+	 * Creates the invocation writing a primitive value with the method of
+	 * <code>ByteBuffer</code> for its type, <code>boolean</code> as a byte.
+	 */
+	private MethodInvocation createPut(final AST ast, final Expression buffer, final PrimitiveType.Code primitiveType,
+			final Expression value) {
+		if (primitiveType == PrimitiveType.BOOLEAN) {
+			final ConditionalExpression flag = ast.newConditionalExpression();
+			flag.setExpression(value);
+			flag.setThenExpression(ast.newNumberLiteral("1"));
+			flag.setElseExpression(ast.newNumberLiteral("0"));
+
+			return createMethodInvocation(ast, buffer, "put", createByteCast(ast, parenthesize(ast, flag)));
+		}
+
+		return createMethodInvocation(ast, buffer, "put" + getBufferTypeSuffix(primitiveType), value);
+	}
+
+	private CastExpression createByteCast(final AST ast, final Expression expression) {
+		final CastExpression cast = ast.newCastExpression();
+		cast.setType(ast.newPrimitiveType(PrimitiveType.BYTE));
+		cast.setExpression(expression);
+
+		return cast;
+	}
+
+	private MethodDeclaration createReadFromMethod(final AST ast, final String bufferType) {
+		final ClassInstanceCreation instance = ast.newClassInstanceCreation();
+		instance.setType(createInstanceType(ast, false));
+		for (ConvertedField field : fields) {
+			instance.arguments().add(createReadValue(ast, field));
+		}
+
+		final Block body = ast.newBlock();
+		body.statements().add(createReturnStatement(ast, instance));
+
+		final MethodDeclaration readFrom = createMethod(ast, READ_FROM, createInstanceType(ast, false), body,
+				createPublicModifier(ast), createStaticModifier(ast));
+		readFrom.parameters().add(createBufferParameter(ast, bufferType));
+
+		return readFrom;
+	}
+
+	/**
+	 * Creates the value of a field read from the buffer. Absent wrappers,
+	 * enums and nested types are read as <code>null</code>:
+	 * 
+	 * <pre>
+	 * buffer.get() != 0 ? buffer.getInt() : null
+	 * buffer.get() != 0 ? COLOR_VALUES[buffer.get()] : null
+	 * </pre>
+	 */
+	private Expression createReadValue(final AST ast, final ConvertedField field) {
+		switch (getEncoding(field)) {
+		case PRIMITIVE:
+			return createGet(ast, field.getPrimitiveTypeCode());
+		case WRAPPER:
+			return createNullableRead(ast, createGet(ast, field.getWrappedTypeCode()));
+		case STRING:
+			return createMethodInvocation(ast, null, READ_STRING, ast.newSimpleName(BUFFER));
+		case ENUM:
+			final ArrayAccess constant = ast.newArrayAccess();
+			constant.setArray(ast.newSimpleName(valuesFieldNames.get(field.getTypeName())));
+			constant.setIndex(createGet(ast, hasByteOrdinal(field) ? PrimitiveType.BYTE : PrimitiveType.INT));
+			return createNullableRead(ast, constant);
+		default:
+			return createNullableRead(ast, createMethodInvocation(ast, ast.newName(field.getTypeName()), READ_FROM,
+					ast.newSimpleName(BUFFER)));
+		}
+	}
+
+	private ConditionalExpression createNullableRead(final AST ast, final Expression value) {
+		final ConditionalExpression read = ast.newConditionalExpression();
+		read.setExpression(createGet(ast, PrimitiveType.BOOLEAN));
+		read.setThenExpression(value);
+		read.setElseExpression(ast.newNullLiteral());
+
+		return read;
+	}
+
+	/**
+	 * Creates the invocation reading a primitive value with the method of
+	 * <code>ByteBuffer</code> for its type, <code>boolean</code> from a byte.
+	 */
+	private Expression createGet(final AST ast, final PrimitiveType.Code primitiveType) {
+		final MethodInvocation get = createMethodInvocation(ast, ast.newSimpleName(BUFFER),
+				"get" + getBufferTypeSuffix(primitiveType));
+		if (primitiveType != PrimitiveType.BOOLEAN) {
+			return get;
+		}
+
+		return createInfixExpression(ast, get, InfixExpression.Operator.NOT_EQUALS, ast.newNumberLiteral("0"));
+	}
+
+	/**
+	 * Creates the method summing the fixed sizes into a single literal
+	 * followed by the sizes of the strings, wrappers, enums and nested types.
+	 */
+	private MethodDeclaration createSerializedSizeMethod(final AST ast) {
+		int fixedSize = 0;
+		final List<Expression> variableSizes = new ArrayList<>();
+		for (ConvertedField field : fields) {
+			switch (getEncoding(field)) {
+			case PRIMITIVE:
+				fixedSize += getSize(field.getPrimitiveTypeCode());
+				break;
+			case WRAPPER:
+				fixedSize++;
+				variableSizes.add(createNullableSize(ast, field,
+						ast.newNumberLiteral(Integer.toString(getSize(field.getWrappedTypeCode())))));
+				break;
+			case STRING:
+				variableSizes
+						.add(createMethodInvocation(ast, null, SIZE_OF_STRING, createFieldAccess(ast, field)));
+				break;
+			case ENUM:
+				fixedSize++;
+				variableSizes.add(createNullableSize(ast, field,
+						ast.newNumberLiteral(hasByteOrdinal(field) ? "1" : "4")));
+				break;
+			default:
+				fixedSize++;
+				variableSizes.add(createNullableSize(ast, field,
+						createMethodInvocation(ast, createFieldAccess(ast, field), SERIALIZED_SIZE)));
+				break;
+			}
+		}
+
+		Expression size = fixedSize > 0 || variableSizes.isEmpty()
+				? ast.newNumberLiteral(Integer.toString(fixedSize)) : variableSizes.remove(0);
+		for (Expression variableSize : variableSizes) {
+			size = createInfixExpression(ast, size, InfixExpression.Operator.PLUS, variableSize);
+		}
+
+		final Block body = ast.newBlock();
+		body.statements().add(createReturnStatement(ast, size));
+
+		return createMethod(ast, SERIALIZED_SIZE, ast.newPrimitiveType(PrimitiveType.INT), body,
+				createPublicModifier(ast));
+	}
+
+	private ParenthesizedExpression createNullableSize(final AST ast, final ConvertedField field,
+			final Expression size) {
+		final ConditionalExpression nullableSize = ast.newConditionalExpression();
+		nullableSize.setExpression(createNullableCheck(ast, field));
+		nullableSize.setThenExpression(size);
+		nullableSize.setElseExpression(ast.newNumberLiteral("0"));
+
+		return parenthesize(ast, nullableSize);
+	}
+
+	private ParenthesizedExpression parenthesize(final AST ast, final Expression expression) {
+		final ParenthesizedExpression parenthesized = ast.newParenthesizedExpression();
+		parenthesized.setExpression(expression);
+
+		return parenthesized;
+	}
+
+	/**
+	 * Creates the string helpers by parsing them, as they consist of plain
+	 * code which is the same for every type.
+	 */
+	private List<BodyDeclaration> createStringHelpers(final AST ast, final String bufferType) {
+		final String modifier = codeGenerationSettings.makeParametersFinal ? "final " : "";
+		final String source = String.format(STRING_HELPERS, bufferType, imports.addImport(STANDARD_CHARSETS),
+				modifier);
+
+		final ASTParser parser = ASTParser.newParser(ImmutableClassGenerator.AST_LEVEL);
+		parser.setKind(ASTParser.K_CLASS_BODY_DECLARATIONS);
+		parser.setSource(source.toCharArray());
+
+		final List<BodyDeclaration> helpers = new ArrayList<>();
+		for (Object declaration : ((TypeDeclaration) parser.createAST(null)).bodyDeclarations()) {
+			helpers.add((BodyDeclaration) ASTNode.copySubtree(ast, (ASTNode) declaration));
+		}
+
+		return helpers;
+	}
+
+	private SingleVariableDeclaration createBufferParameter(final AST ast, final String bufferType) {
+		final SingleVariableDeclaration parameter = ast.newSingleVariableDeclaration();
+		parameter.setName(ast.newSimpleName(BUFFER));
+		parameter.setType(createSimpleType(ast, bufferType));
+
+		if (codeGenerationSettings.makeParametersFinal) {
+			parameter.modifiers().add(createFinalModifier(ast));
+		}
+
+		return parameter;
+	}
+
+	/**
+	 * @return the suffix of the <code>ByteBuffer</code> methods for the type,
+	 *         empty for <code>byte</code> and <code>boolean</code>
+	 */
+	private static String getBufferTypeSuffix(final PrimitiveType.Code primitiveType) {
+		if (primitiveType == PrimitiveType.BYTE || primitiveType == PrimitiveType.BOOLEAN) {
+			return "";
+		}
+
+		return capitalize(primitiveType.toString());
+	}
+
+	/**
+	 * @return the number of bytes written for the type
+	 */
+	private static int getSize(final PrimitiveType.Code primitiveType) {
+		if (primitiveType == PrimitiveType.LONG || primitiveType == PrimitiveType.DOUBLE) {
+			return 8;
+		} else if (primitiveType == PrimitiveType.INT || primitiveType == PrimitiveType.FLOAT) {
+			return 4;
+		} else if (primitiveType == PrimitiveType.CHAR || primitiveType == PrimitiveType.SHORT) {
+			return 2;
+		}
+
+		return 1;
+	}
+}
@@ -0,0 +1,116 @@
+package online.devtools.eclipse.generation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The collection interfaces of <code>java.util</code> which the generated
+ * code copies, with the implementation used for the copies and the
+ * <code>Collections</code> method wrapping them.
+ */
+enum CollectionType {
+
+	COLLECTION("Collection", "java.util.ArrayList", "unmodifiableCollection"),
+
+	LIST("List", "java.util.ArrayList", "unmodifiableList"),
+
+	SET("Set", "java.util.LinkedHashSet", "unmodifiableSet"),
+
+	SORTED_SET("SortedSet", "java.util.TreeSet", "unmodifiableSortedSet"),
+
+	NAVIGABLE_SET("NavigableSet", "java.util.TreeSet", "unmodifiableNavigableSet"),
+
+	MAP("Map", "java.util.LinkedHashMap", "unmodifiableMap"),
+
+	SORTED_MAP("SortedMap", "java.util.TreeMap", "unmodifiableSortedMap"),
+
+	NAVIGABLE_MAP("NavigableMap", "java.util.TreeMap", "unmodifiableNavigableMap");
+
+	private final String typeName;
+
+	private final String implementation;
+
+	private final String unmodifiableMethod;
+
+	private CollectionType(final String typeName, final String implementation, final String unmodifiableMethod) {
+		this.typeName = typeName;
+		this.implementation = implementation;
+		this.unmodifiableMethod = unmodifiableMethod;
+	}
+
+	/**
+	 * @return the fully qualified name of the implementation holding the
+	 *         copies, which keeps the order of the source
+	 */
+	String getImplementation() {
+		return implementation;
+	}
+
+	/**
+	 * @return the method of <code>java.util.Collections</code> wrapping the
+	 *         collection in an unmodifiable view
+	 */
+	String getUnmodifiableMethod() {
+		return unmodifiableMethod;
+	}
+
+	boolean isMap() {
+		return this == MAP || this == SORTED_MAP || this == NAVIGABLE_MAP;
+	}
+
+	/**
+	 * @return whether the implementation can be created with an initial
+	 *         capacity
+	 */
+	boolean isPresizable() {
+		return !isSorted();
+	}
+
+	/**
+	 * @return whether the implementation is a hash table, whose initial
+	 *         capacity has to account for its load factor
+	 */
+	boolean isHashed() {
+		return this == SET || this == MAP;
+	}
+
+	/**
+	 * @return the fully qualified names of the interfaces whose
+	 *         <code>of</code> methods create immutable collections of this
+	 *         type, none for the sorted types
+	 */
+	List<String> getImmutableFactoryTypes() {
+		switch (this) {
+		case COLLECTION:
+			return Arrays.asList("java.util.List", "java.util.Set");
+		case LIST:
+			return Collections.singletonList("java.util.List");
+		case SET:
+			return Collections.singletonList("java.util.Set");
+		case MAP:
+			return Collections.singletonList("java.util.Map");
+		default:
+			return Collections.emptyList();
+		}
+	}
+
+	private boolean isSorted() {
+		return this == SORTED_SET || this == NAVIGABLE_SET || this == SORTED_MAP || this == NAVIGABLE_MAP;
+	}
+
+	/**
+	 * @return the collection type of the field or <code>null</code> if it is
+	 *         not one of the collection interfaces
+	 */
+	static CollectionType of(final ConvertedField field) {
+		final String erasure = field.getErasure();
+		for (CollectionType collectionType : values()) {
+			if (collectionType.typeName.equals(erasure)) {
+				return collectionType;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,454 @@
+package online.devtools.eclipse.generation;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.ArrayCreation;
+import org.eclipse.jdt.core.dom.ArrayType;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.ThrowStatement;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+
+/**
+ * Generates the static <code>Columns</code> type, a growable collection of
+ * the instances of a type with only primitive fields, which keeps each field
+ * in an array of its own instead of an object per instance.
+ * 
+ * <code>add</code> copies the fields of an instance into the arrays, which
+ * grow by half of their length when they are full. The values are read by
+ * index per field or as a new instance by <code>get</code>, and the numeric
+ * columns are scanned sequentially as primitive streams over the arrays.
+ */
+class ColumnsGenerator extends MemberGenerator {
+
+	private static final String COLUMNS_TYPE_NAME = "Columns";
+
+	private static final String DEFAULT_CAPACITY = "16";
+
+	private static final String GROW = "grow";
+
+	private static final String CHECK_INDEX = "checkIndex";
+
+	private final Imports imports;
+
+	private final String sizeFieldName;
+
+	private final String valueName;
+
+	private final String indexName;
+
+	private final String capacityName;
+
+	ColumnsGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+		this.sizeFieldName = getUniqueColumnsFieldName("size");
+		this.valueName = getUniqueColumnsFieldName("value");
+		this.indexName = getUniqueColumnsFieldName("index");
+		this.capacityName = getUniqueColumnsFieldName("capacity");
+	}
+
+	boolean isEnabled() {
+		if (!codeGenerationSettings.generateColumns || !(type instanceof TypeDeclaration)
+				|| ((TypeDeclaration) type).isInterface() || !((TypeDeclaration) type).typeParameters().isEmpty()) {
+			return false;
+		}
+
+		for (ConvertedField field : fields) {
+			if (!field.isPrimitive()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the columns type at the end of the type, replacing an existing
+	 * member type with the same name if existing declarations are replaced.
+	 */
+	void addColumns(final ListRewrite listRewrite) {
+		if (!isEnabled()) {
+			return;
+		}
+
+		for (Object declaration : type.bodyDeclarations()) {
+			if (declaration instanceof TypeDeclaration
+					&& COLUMNS_TYPE_NAME.equals(((TypeDeclaration) declaration).getName().getIdentifier())) {
+				if (!codeGenerationSettings.replaceExistingDeclarations) {
+					return;
+				}
+				listRewrite.remove((TypeDeclaration) declaration, null);
+			}
+		}
+
+		listRewrite.insertLast(createColumns(listRewrite.getASTRewrite().getAST()), null);
+	}
+
+	private TypeDeclaration createColumns(final AST ast) {
+		final TypeDeclaration columnsType = ast.newTypeDeclaration();
+		columnsType.modifiers().add(createPublicModifier(ast));
+		columnsType.modifiers().add(createStaticModifier(ast));
+		columnsType.modifiers().add(createFinalModifier(ast));
+		columnsType.setName(ast.newSimpleName(COLUMNS_TYPE_NAME));
+
+		final List<BodyDeclaration> declarations = columnsType.bodyDeclarations();
+		declarations.add(createSizeField(ast));
+		for (ConvertedField field : fields) {
+			declarations.add(createColumnField(ast, field));
+		}
+
+		declarations.add(createDefaultConstructor(ast));
+		declarations.add(createCapacityConstructor(ast));
+		declarations.add(createSizeMethod(ast));
+		declarations.add(createAddMethod(ast));
+		declarations.add(createGetMethod(ast));
+		for (ConvertedField field : fields) {
+			declarations.add(createValueMethod(ast, field));
+		}
+		for (ConvertedField field : fields) {
+			if (field.getPrimitiveTypeCode() != PrimitiveType.BOOLEAN) {
+				declarations.add(createStreamMethod(ast, field));
+			}
+		}
+
+		declarations.add(createGrowMethod(ast));
+		declarations.add(createCheckIndexMethod(ast));
+
+		return columnsType;
+	}
+
+	private FieldDeclaration createSizeField(final AST ast) {
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(sizeFieldName));
+
+		final FieldDeclaration sizeField = ast.newFieldDeclaration(fragment);
+		sizeField.setType(ast.newPrimitiveType(PrimitiveType.INT));
+		sizeField.modifiers().add(createPrivateModifier(ast));
+
+		return sizeField;
+	}
+
+	private FieldDeclaration createColumnField(final AST ast, final ConvertedField field) {
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(createSimpleName(ast, field));
+
+		final FieldDeclaration columnField = ast.newFieldDeclaration(fragment);
+		columnField.setType(createColumnType(ast, field));
+		columnField.modifiers().add(createPrivateModifier(ast));
+
+		return columnField;
+	}
+
+	private MethodDeclaration createDefaultConstructor(final AST ast) {
+		final ConstructorInvocation invocation = ast.newConstructorInvocation();
+		invocation.arguments().add(ast.newNumberLiteral(DEFAULT_CAPACITY));
+
+		final Block body = ast.newBlock();
+		body.statements().add(invocation);
+
+		return createConstructor(ast, body);
+	}
+
+	private MethodDeclaration createCapacityConstructor(final AST ast) {
+		final Block body = ast.newBlock();
+		for (ConvertedField field : fields) {
+			final ArrayCreation column = ast.newArrayCreation();
+			column.setType(createColumnType(ast, field));
+			column.dimensions().add(ast.newSimpleName(capacityName));
+			body.statements().add(ast.newExpressionStatement(createAssignment(ast, field, column)));
+		}
+
+		final MethodDeclaration constructor = createConstructor(ast, body);
+		constructor.parameters().add(createIntParameter(ast, capacityName));
+
+		return constructor;
+	}
+
+	private MethodDeclaration createConstructor(final AST ast, final Block body) {
+		final MethodDeclaration constructor = ast.newMethodDeclaration();
+		constructor.setConstructor(true);
+		constructor.setName(ast.newSimpleName(COLUMNS_TYPE_NAME));
+		constructor.setBody(body);
+		constructor.modifiers().add(createPublicModifier(ast));
+
+		return constructor;
+	}
+
+	private MethodDeclaration createSizeMethod(final AST ast) {
+		final Block body = ast.newBlock();
+		body.statements().add(createReturnStatement(ast, createFieldAccess(ast, sizeFieldName)));
+
+		return createMethod(ast, "size", ast.newPrimitiveType(PrimitiveType.INT), body, createPublicModifier(ast));
+	}
+
+	/**
+	 * Creates the method appending the fields of an instance:
+	 * 
+	 * <pre>
+	 * if (size == x.length) {
+	 * 	grow();
+	 * }
+	 * x[size] = value.x;
+	 * size++;
+	 * </pre>
+	 */
+	private MethodDeclaration createAddMethod(final AST ast) {
+		final Block grow = ast.newBlock();
+		grow.statements().add(ast.newExpressionStatement(createMethodInvocation(ast, null, GROW)));
+
+		final FieldAccess length = ast.newFieldAccess();
+		length.setExpression(createFieldAccess(ast, fields.get(0).getName()));
+		length.setName(ast.newSimpleName("length"));
+
+		final IfStatement ifFull = ast.newIfStatement();
+		ifFull.setExpression(createInfixExpression(ast, createFieldAccess(ast, sizeFieldName),
+				InfixExpression.Operator.EQUALS, length));
+		ifFull.setThenStatement(grow);
+
+		final Block body = ast.newBlock();
+		body.statements().add(ifFull);
+		for (ConvertedField field : fields) {
+			body.statements().add(ast.newExpressionStatement(createAssignment(ast,
+					createElementAccess(ast, field, createFieldAccess(ast, sizeFieldName)),
+					createQualifiedFieldAccess(ast, valueName, field.getName()))));
+		}
+
+		final PostfixExpression increment = ast.newPostfixExpression();
+		increment.setOperand(createFieldAccess(ast, sizeFieldName));
+		increment.setOperator(PostfixExpression.Operator.INCREMENT);
+		body.statements().add(ast.newExpressionStatement(increment));
+
+		final MethodDeclaration add = createMethod(ast, "add", ast.newPrimitiveType(PrimitiveType.VOID), body,
+				createPublicModifier(ast));
+		add.parameters().add(createFinalAwareParameter(ast, createSimpleType(ast, getTypeName()), valueName));
+
+		return add;
+	}
+
+	private MethodDeclaration createGetMethod(final AST ast) {
+		final ClassInstanceCreation instance = ast.newClassInstanceCreation();
+		instance.setType(createSimpleType(ast, getTypeName()));
+		for (ConvertedField field : fields) {
+			instance.arguments().add(createElementAccess(ast, field, ast.newSimpleName(indexName)));
+		}
+
+		return createIndexedMethod(ast, "get", createSimpleType(ast, getTypeName()), instance);
+	}
+
+	/**
+	 * Creates the method returning the value of the field at an index, named
+	 * like the getter of the field.
+	 */
+	private MethodDeclaration createValueMethod(final AST ast, final ConvertedField field) {
+		return createIndexedMethod(ast, field.getGetterName(), field.createType(ast),
+				createElementAccess(ast, field, ast.newSimpleName(indexName)));
+	}
+
+	private MethodDeclaration createIndexedMethod(final AST ast, final String name, final Type returnType,
+			final Expression value) {
+		final Block body = ast.newBlock();
+		body.statements().add(ast.newExpressionStatement(
+				createMethodInvocation(ast, null, CHECK_INDEX, ast.newSimpleName(indexName))));
+		body.statements().add(createReturnStatement(ast, value));
+
+		final MethodDeclaration method = createMethod(ast, name, returnType, body, createPublicModifier(ast));
+		method.parameters().add(createIntParameter(ast, indexName));
+
+		return method;
+	}
+
+	/**
+	 * Creates the method scanning the column of a numeric field. Columns of
+	 * <code>int</code>, <code>long</code> and <code>double</code> are streamed
+	 * straight from the array, narrower types are widened to
+	 * <code>int</code> and <code>float</code> to <code>double</code>:
+	 * 
+	 * <pre>
+	 * return IntStream.range(0, size).map(index -&gt; x[index]);
+	 * </pre>
+	 */
+	private MethodDeclaration createStreamMethod(final AST ast, final ConvertedField field) {
+		final PrimitiveType.Code primitiveType = field.getPrimitiveTypeCode();
+		final String streamType;
+		final Expression stream;
+
+		if (primitiveType == PrimitiveType.INT || primitiveType == PrimitiveType.LONG
+				|| primitiveType == PrimitiveType.DOUBLE) {
+			streamType = getStreamType(primitiveType);
+			stream = createStaticInvocation(ast, imports, "java.util.Arrays", "stream",
+					createFieldAccess(ast, field.getName()), ast.newNumberLiteral("0"),
+					createFieldAccess(ast, sizeFieldName));
+		} else {
+			final boolean floating = primitiveType == PrimitiveType.FLOAT;
+			streamType = getStreamType(floating ? PrimitiveType.DOUBLE : PrimitiveType.INT);
+
+			final VariableDeclarationFragment index = ast.newVariableDeclarationFragment();
+			index.setName(ast.newSimpleName(indexName));
+
+			final LambdaExpression element = ast.newLambdaExpression();
+			element.setParentheses(false);
+			element.parameters().add(index);
+			element.setBody(createElementAccess(ast, field, ast.newSimpleName(indexName)));
+
+			stream = createMethodInvocation(ast,
+					createStaticInvocation(ast, imports, getStreamType(PrimitiveType.INT), "range",
+							ast.newNumberLiteral("0"), createFieldAccess(ast, sizeFieldName)),
+					floating ? "mapToDouble" : "map", element);
+		}
+
+		final Block body = ast.newBlock();
+		body.statements().add(createReturnStatement(ast, stream));
+
+		return createMethod(ast, "stream" + capitalize(field.getName()),
+				createSimpleType(ast, imports.addImport(streamType)), body, createPublicModifier(ast));
+	}
+
+	/**
+	 * Creates the method growing the columns by half of their size, at least
+	 * to the default capacity:
+	 * 
+	 * <pre>
+	 * final int capacity = Math.max(16, size + (size &gt;&gt; 1));
+	 * x = Arrays.copyOf(x, capacity);
+	 * </pre>
+	 */
+	private MethodDeclaration createGrowMethod(final AST ast) {
+		final ParenthesizedExpression half = ast.newParenthesizedExpression();
+		half.setExpression(createInfixExpression(ast, createFieldAccess(ast, sizeFieldName),
+				InfixExpression.Operator.RIGHT_SHIFT_SIGNED, ast.newNumberLiteral("1")));
+
+		final VariableDeclarationStatement capacity = createVariable(ast, ast.newPrimitiveType(PrimitiveType.INT),
+				capacityName, createMethodInvocation(ast, ast.newSimpleName("Math"), "max",
+						ast.newNumberLiteral(DEFAULT_CAPACITY), createInfixExpression(ast,
+								createFieldAccess(ast, sizeFieldName), InfixExpression.Operator.PLUS, half)));
+		capacity.modifiers().add(createFinalModifier(ast));
+
+		final Block body = ast.newBlock();
+		body.statements().add(capacity);
+		for (ConvertedField field : fields) {
+			body.statements().add(ast.newExpressionStatement(createAssignment(ast, field,
+					createStaticInvocation(ast, imports, "java.util.Arrays", "copyOf",
+							createFieldAccess(ast, field.getName()), ast.newSimpleName(capacityName)))));
+		}
+
+		return createMethod(ast, GROW, ast.newPrimitiveType(PrimitiveType.VOID), body, createPrivateModifier(ast));
+	}
+
+	private MethodDeclaration createCheckIndexMethod(final AST ast) {
+		final StringLiteral indexLabel = ast.newStringLiteral();
+		indexLabel.setLiteralValue("Index: ");
+		final StringLiteral sizeLabel = ast.newStringLiteral();
+		sizeLabel.setLiteralValue(", Size: ");
+
+		final InfixExpression message = createInfixExpression(ast, indexLabel, InfixExpression.Operator.PLUS,
+				ast.newSimpleName(indexName));
+		message.extendedOperands().add(sizeLabel);
+		message.extendedOperands().add(createFieldAccess(ast, sizeFieldName));
+
+		final ClassInstanceCreation exception = ast.newClassInstanceCreation();
+		exception.setType(createSimpleType(ast, "IndexOutOfBoundsException"));
+		exception.arguments().add(message);
+
+		final ThrowStatement throwStatement = ast.newThrowStatement();
+		throwStatement.setExpression(exception);
+
+		final IfStatement ifOutOfBounds = ast.newIfStatement();
+		ifOutOfBounds.setExpression(createInfixExpression(ast,
+				createInfixExpression(ast, ast.newSimpleName(indexName), InfixExpression.Operator.LESS,
+						ast.newNumberLiteral("0")),
+				InfixExpression.Operator.CONDITIONAL_OR, createInfixExpression(ast, ast.newSimpleName(indexName),
+						InfixExpression.Operator.GREATER_EQUALS, createFieldAccess(ast, sizeFieldName))));
+		ifOutOfBounds.setThenStatement(throwStatement);
+
+		final Block body = ast.newBlock();
+		body.statements().add(ifOutOfBounds);
+
+		final MethodDeclaration checkIndex = createMethod(ast, CHECK_INDEX, ast.newPrimitiveType(PrimitiveType.VOID),
+				body, createPrivateModifier(ast));
+		checkIndex.parameters().add(createIntParameter(ast, indexName));
+
+		return checkIndex;
+	}
+
+	private ArrayAccess createElementAccess(final AST ast, final ConvertedField field, final Expression index) {
+		final ArrayAccess element = ast.newArrayAccess();
+		element.setArray(createFieldAccess(ast, field.getName()));
+		element.setIndex(index);
+
+		return element;
+	}
+
+	private ArrayType createColumnType(final AST ast, final ConvertedField field) {
+		return ast.newArrayType(ast.newPrimitiveType(field.getPrimitiveTypeCode()));
+	}
+
+	private SingleVariableDeclaration createIntParameter(final AST ast, final String name) {
+		return createFinalAwareParameter(ast, ast.newPrimitiveType(PrimitiveType.INT), name);
+	}
+
+	private SingleVariableDeclaration createFinalAwareParameter(final AST ast, final Type parameterType,
+			final String name) {
+		final SingleVariableDeclaration parameter = ast.newSingleVariableDeclaration();
+		parameter.setName(ast.newSimpleName(name));
+		parameter.setType(parameterType);
+
+		if (codeGenerationSettings.makeParametersFinal) {
+			parameter.modifiers().add(createFinalModifier(ast));
+		}
+
+		return parameter;
+	}
+
+	private static String getStreamType(final PrimitiveType.Code primitiveType) {
+		return "java.util.stream." + capitalize(primitiveType.toString()) + "Stream";
+	}
+
+	/**
+	 * The columns type declares an array for each converted field, so the
+	 * name of its size and the names of the parameters and local variables,
+	 * which its methods use next to unqualified accesses of the arrays, must
+	 * not clash with any of them.
+	 */
+	private String getUniqueColumnsFieldName(final String name) {
+		String uniqueName = name;
+		for (int i = 1; isConvertedField(uniqueName); i++) {
+			uniqueName = name + i;
+		}
+
+		return uniqueName;
+	}
+
+	private boolean isConvertedField(final String name) {
+		for (ConvertedField field : fields) {
+			if (field.getName().equals(name)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,39 @@
+package online.devtools.eclipse.generation;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+
+/**
+ * Provides the comments for the generated declarations.
+ */
+public interface CommentProvider {
+
+	/**
+	 * Does not generate any comments.
+	 */
+	CommentProvider NONE = new CommentProvider() {
+
+		@Override
+		public String getMethodComment(String typeName, MethodDeclaration method) {
+			return null;
+		}
+
+		@Override
+		public String getGetterComment(String typeName, String getterName, String fieldName, String fieldType) {
+			return null;
+		}
+	};
+
+	/**
+	 * @return the comment for the method or <code>null</code> if no comment
+	 *         should be added
+	 */
+	String getMethodComment(String typeName, MethodDeclaration method) throws CoreException;
+
+	/**
+	 * @return the comment for the getter or <code>null</code> if no comment
+	 *         should be added
+	 */
+	String getGetterComment(String typeName, String getterName, String fieldName, String fieldType)
+			throws CoreException;
+}
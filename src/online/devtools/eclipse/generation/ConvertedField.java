@@ -0,0 +1,168 @@
+package online.devtools.eclipse.generation;
+
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ArrayType;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+
+/**
+ * A field selected for conversion together with its declaration in the AST.
+ */
+public class ConvertedField {
+
+	private final VariableDeclarationFragment fragment;
+
+	private final FieldDeclaration declaration;
+
+	private final String getterName;
+
+	public ConvertedField(final VariableDeclarationFragment fragment, final String getterName) {
+		this.fragment = fragment;
+		this.declaration = (FieldDeclaration) fragment.getParent();
+		this.getterName = getterName;
+	}
+
+	public String getName() {
+		return fragment.getName().getIdentifier();
+	}
+
+	public String getGetterName() {
+		return getterName;
+	}
+
+	public FieldDeclaration getDeclaration() {
+		return declaration;
+	}
+
+	public VariableDeclarationFragment getFragment() {
+		return fragment;
+	}
+
+	public Expression getInitializer() {
+		return fragment.getInitializer();
+	}
+
+	public boolean isPrimitive() {
+		return declaration.getType().isPrimitiveType() && fragment.getExtraDimensions() == 0;
+	}
+
+	public boolean isBoolean() {
+		return isPrimitive()
+				&& ((PrimitiveType) declaration.getType()).getPrimitiveTypeCode() == PrimitiveType.BOOLEAN;
+	}
+
+	/**
+	 * @return the primitive type code of the field or <code>null</code> if the
+	 *         field is not of a primitive type
+	 */
+	public PrimitiveType.Code getPrimitiveTypeCode() {
+		return isPrimitive() ? ((PrimitiveType) declaration.getType()).getPrimitiveTypeCode() : null;
+	}
+
+	/**
+	 * @return the primitive type code wrapped by the type of the field, like
+	 *         <code>int</code> for <code>Integer</code>, or <code>null</code>
+	 *         if the field is not of a wrapper type
+	 */
+	public PrimitiveType.Code getWrappedTypeCode() {
+		return fragment.getExtraDimensions() == 0 ? getWrappedTypeCode(declaration.getType()) : null;
+	}
+
+	/**
+	 * @return the primitive type code wrapped by the type or
+	 *         <code>null</code> if it is not a wrapper type
+	 */
+	static PrimitiveType.Code getWrappedTypeCode(final Type type) {
+		if (!type.isSimpleType()) {
+			return null;
+		}
+
+		switch (((SimpleType) type).getName().getFullyQualifiedName().replace("java.lang.", "")) {
+		case "Boolean":
+			return PrimitiveType.BOOLEAN;
+		case "Byte":
+			return PrimitiveType.BYTE;
+		case "Character":
+			return PrimitiveType.CHAR;
+		case "Short":
+			return PrimitiveType.SHORT;
+		case "Integer":
+			return PrimitiveType.INT;
+		case "Long":
+			return PrimitiveType.LONG;
+		case "Float":
+			return PrimitiveType.FLOAT;
+		case "Double":
+			return PrimitiveType.DOUBLE;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @return the number of array dimensions of the field, including the extra
+	 *         dimensions of the fragment
+	 */
+	public int getDimensions() {
+		final Type type = declaration.getType();
+		final int dimensions = type.isArrayType() ? ((ArrayType) type).getDimensions() : 0;
+
+		return dimensions + fragment.getExtraDimensions();
+	}
+
+	/**
+	 * @return the type of the field as written in the source, including the
+	 *         extra dimensions of the fragment
+	 */
+	public String getTypeName() {
+		final StringBuilder typeName = new StringBuilder(declaration.getType().toString());
+		for (int i = 0; i < fragment.getExtraDimensions(); i++) {
+			typeName.append("[]");
+		}
+
+		return typeName.toString();
+	}
+
+	/**
+	 * @return the simple name of the erasure of the field type
+	 * @see MemberIndex#getErasure(Type, int)
+	 */
+	public String getErasure() {
+		return MemberIndex.getErasure(declaration.getType(), fragment.getExtraDimensions());
+	}
+
+	/**
+	 * @return the unresolved type signature of the field
+	 */
+	public String getTypeSignature() {
+		return Signature.createTypeSignature(getTypeName(), false);
+	}
+
+	/**
+	 * Creates a copy of the field type for the given AST.
+	 */
+	public Type createType(final AST ast) {
+		final Type type = (Type) ASTNode.copySubtree(ast, declaration.getType());
+		final int extraDimensions = fragment.getExtraDimensions();
+
+		if (extraDimensions == 0) {
+			return type;
+		}
+
+		if (type.isArrayType()) {
+			final ArrayType arrayType = (ArrayType) type;
+			for (int i = 0; i < extraDimensions; i++) {
+				arrayType.dimensions().add(ast.newDimension());
+			}
+			return arrayType;
+		}
+
+		return ast.newArrayType(type, extraDimensions);
+	}
+}
@@ -0,0 +1,283 @@
+package online.devtools.eclipse.generation;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.DefensiveCopyStrategy;
+
+/**
+ * Creates the values assigned to and returned for the collection and array
+ * fields according to the {@link DefensiveCopyStrategy} of the settings.
+ * 
+ * Collections are copied into the implementation given by their
+ * {@link CollectionType} and wrapped by <code>Collections</code>, arrays are
+ * cloned. Only the top level is copied, the elements are shared.
+ * 
+ * When copying unless immutable, a collection is only kept if its class
+ * is one of the immutable collections created by <code>List.of</code>,
+ * <code>Set.of</code> and <code>Map.of</code>. An unmodifiable view can not
+ * be told apart from a view of a collection which the caller still changes,
+ * so views are always copied.
+ */
+class DefensiveCopyGenerator extends MemberGenerator {
+
+	private static final String COLLECTIONS = "java.util.Collections";
+
+	private final Imports imports;
+
+	private final DefensiveCopyStrategy strategy;
+
+	private final boolean transfer;
+
+	private final boolean builderOwnsValues;
+
+	private final Map<CollectionType, String> immutableClassesFields = new EnumMap<>(CollectionType.class);
+
+	/**
+	 * @param constructorGenerated
+	 *            whether the constructor assigning the fields is generated.
+	 *            The values owned by the builder can only be taken over by a
+	 *            generated constructor
+	 */
+	DefensiveCopyGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports, final boolean constructorGenerated) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+		this.strategy = codeGenerationSettings.defensiveCopyStrategy;
+		this.builderOwnsValues = codeGenerationSettings.generateBuilder
+				&& (strategy == DefensiveCopyStrategy.TRANSFER || codeGenerationSettings.freezeBuilder);
+		this.transfer = builderOwnsValues && constructorGenerated;
+
+		if (strategy == DefensiveCopyStrategy.COPY_IF_MUTABLE) {
+			for (ConvertedField field : fields) {
+				final CollectionType collectionType = CollectionType.of(field);
+				if (collectionType != null && !hasPrimitiveStorage(field)
+						&& !collectionType.getImmutableFactoryTypes().isEmpty()
+						&& !immutableClassesFields.containsKey(collectionType)) {
+					immutableClassesFields.put(collectionType,
+							getUniqueFieldName("IMMUTABLE_" + collectionType.name() + "_CLASSES"));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fields with a primitive storage are copied into it instead, see
+	 * {@link PrimitiveStorageGenerator}.
+	 */
+	boolean isCopied(final ConvertedField field) {
+		return (strategy != DefensiveCopyStrategy.NONE || transfer) && isCollectionOrArray(field)
+				&& !hasPrimitiveStorage(field);
+	}
+
+	private boolean isCollectionOrArray(final ConvertedField field) {
+		return field.getDimensions() > 0 || CollectionType.of(field) != null;
+	}
+
+	/**
+	 * Adds the constants holding the classes of the immutable collections
+	 * before the given field.
+	 */
+	void addConstants(final ListRewrite listRewrite, final FieldDeclaration insertionPoint) {
+		for (FieldDeclaration constant : createConstants(listRewrite.getASTRewrite().getAST())) {
+			listRewrite.insertBefore(constant, insertionPoint, null);
+		}
+	}
+
+	/**
+	 * Creates the constants holding the classes of the immutable collections
+	 * used by the values created so far:
+	 * 
+	 * <pre>
+	 * private static final List&lt;Class&lt;?&gt;&gt; IMMUTABLE_LIST_CLASSES = Arrays.asList(List.of().getClass(),
+	 * 		List.of(0).getClass(), List.of(0, 1).getClass(), List.of(0, 1, 2).getClass());
+	 * </pre>
+	 * 
+	 * The JDK uses different classes depending on the number of elements,
+	 * which also differ between its versions, so the classes are taken from
+	 * instances of each size up to the first one with an array of elements.
+	 */
+	List<FieldDeclaration> createConstants(final AST ast) {
+		final List<FieldDeclaration> constants = new ArrayList<>();
+		for (Map.Entry<CollectionType, String> immutableClassesField : immutableClassesFields.entrySet()) {
+			final MethodInvocation classes = createStaticInvocation(ast, imports, "java.util.Arrays", "asList");
+			for (String factoryType : immutableClassesField.getKey().getImmutableFactoryTypes()) {
+				final boolean map = factoryType.equals("java.util.Map");
+				for (int size = 0; size <= (map ? 2 : 3); size++) {
+					final MethodInvocation collection = createStaticInvocation(ast, imports, factoryType, "of");
+					for (int i = 0; i < size; i++) {
+						collection.arguments().add(ast.newNumberLiteral(Integer.toString(i)));
+						if (map) {
+							collection.arguments().add(ast.newNumberLiteral(Integer.toString(i)));
+						}
+					}
+					classes.arguments().add(createMethodInvocation(ast, collection, "getClass"));
+				}
+			}
+
+			final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+			fragment.setName(ast.newSimpleName(immutableClassesField.getValue()));
+			fragment.setInitializer(classes);
+
+			final ParameterizedType classType = ast.newParameterizedType(createSimpleType(ast, "Class"));
+			classType.typeArguments().add(ast.newWildcardType());
+			final ParameterizedType listType = ast.newParameterizedType(
+					createSimpleType(ast, imports.addImport("java.util.List")));
+			listType.typeArguments().add(classType);
+
+			final FieldDeclaration constant = ast.newFieldDeclaration(fragment);
+			constant.setType(listType);
+			constant.modifiers().add(createPrivateModifier(ast));
+			constant.modifiers().add(createStaticModifier(ast));
+			constant.modifiers().add(createFinalModifier(ast));
+
+			constants.add(constant);
+		}
+
+		return constants;
+	}
+
+	/**
+	 * Creates the value assigned to the field in the constructor.
+	 * 
+	 * @param nullable
+	 *            whether the parameter may be <code>null</code> at this point
+	 */
+	Expression createConstructorValue(final AST ast, final ConvertedField field, final boolean nullable) {
+		if (!isCopied(field) || (transfer && field.getDimensions() > 0)) {
+			return createSimpleName(ast, field);
+		}
+
+		final CollectionType collectionType = CollectionType.of(field);
+		final Expression value = transfer && collectionType != null
+				? createUnmodifiable(ast, collectionType, createSimpleName(ast, field))
+				: createOwnedValue(ast, collectionType, field);
+
+		return nullable ? createNullSafe(ast, createSimpleName(ast, field), value) : value;
+	}
+
+	/**
+	 * Creates the value passed by a <code>withX</code> method to the
+	 * constructor sharing the values. The parameter is copied even when the
+	 * builder transfers its values, as it is not owned by the instance.
+	 */
+	Expression createWitherValue(final AST ast, final ConvertedField field) {
+		if (!isCopied(field)) {
+			return createSimpleName(ast, field);
+		}
+
+		return createNullSafe(ast, createSimpleName(ast, field),
+				createOwnedValue(ast, CollectionType.of(field), field));
+	}
+
+	/**
+	 * Creates the value passed by the factory to the constructor. When the
+	 * constructor takes over the values of the builder, the parameters of the
+	 * factory are copied like the ones of the withers, as they are owned by
+	 * the caller, who may still change them.
+	 */
+	Expression createFactoryValue(final AST ast, final ConvertedField field) {
+		return transfer ? createWitherValue(ast, field) : createSimpleName(ast, field);
+	}
+
+	/**
+	 * Creates the value assigned to the field of the builder. When the
+	 * builder owns its values, it keeps its own copies.
+	 */
+	Expression createBuilderValue(final AST ast, final ConvertedField field) {
+		if (!builderOwnsValues || !isCollectionOrArray(field)) {
+			return createSimpleName(ast, field);
+		}
+
+		final CollectionType collectionType = CollectionType.of(field);
+		final Expression copy = collectionType == null ? createClone(ast, createSimpleName(ast, field))
+				: createInstance(ast, collectionType, createSimpleName(ast, field));
+
+		return createNullSafe(ast, createSimpleName(ast, field), copy);
+	}
+
+	/**
+	 * Creates the value returned by the getter. Arrays are cloned as they can
+	 * not be made unmodifiable.
+	 */
+	Expression createGetterValue(final AST ast, final ConvertedField field) {
+		if (!isCopied(field) || field.getDimensions() == 0) {
+			return createFieldAccess(ast, field);
+		}
+
+		return createNullSafe(ast, createFieldAccess(ast, field), createClone(ast, createFieldAccess(ast, field)));
+	}
+
+	/**
+	 * Creates the copy of the parameter which is owned by the instance.
+	 */
+	private Expression createOwnedValue(final AST ast, final CollectionType collectionType,
+			final ConvertedField field) {
+		if (collectionType == null) {
+			return createClone(ast, createSimpleName(ast, field));
+		} else if (immutableClassesFields.containsKey(collectionType)) {
+			final ConditionalExpression copyIfMutable = ast.newConditionalExpression();
+			copyIfMutable.setExpression(createMethodInvocation(ast,
+					ast.newSimpleName(immutableClassesFields.get(collectionType)), "contains",
+					createMethodInvocation(ast, createSimpleName(ast, field), "getClass")));
+			copyIfMutable.setThenExpression(createSimpleName(ast, field));
+			copyIfMutable.setElseExpression(createCopy(ast, collectionType, field));
+			return copyIfMutable;
+		}
+
+		return createCopy(ast, collectionType, field);
+	}
+
+	private Expression createCopy(final AST ast, final CollectionType collectionType, final ConvertedField field) {
+		return createUnmodifiable(ast, collectionType,
+				createInstance(ast, collectionType, createSimpleName(ast, field)));
+	}
+
+	private Expression createUnmodifiable(final AST ast, final CollectionType collectionType,
+			final Expression collection) {
+		return createStaticInvocation(ast, imports, COLLECTIONS, collectionType.getUnmodifiableMethod(), collection);
+	}
+
+	/**
+	 * Creates an instance of the implementation of the collection type.
+	 */
+	ClassInstanceCreation createInstance(final AST ast, final CollectionType collectionType,
+			final Expression... arguments) {
+		final ClassInstanceCreation instance = ast.newClassInstanceCreation();
+		instance.setType(ast.newParameterizedType(
+				createSimpleType(ast, imports.addImport(collectionType.getImplementation()))));
+		for (Expression argument : arguments) {
+			instance.arguments().add(argument);
+		}
+
+		return instance;
+	}
+
+	private Expression createClone(final AST ast, final Expression array) {
+		return createMethodInvocation(ast, array, "clone");
+	}
+
+	private ConditionalExpression createNullSafe(final AST ast, final Expression checked, final Expression value) {
+		final ConditionalExpression nullSafe = ast.newConditionalExpression();
+		nullSafe.setExpression(
+				createInfixExpression(ast, checked, InfixExpression.Operator.EQUALS, ast.newNullLiteral()));
+		nullSafe.setThenExpression(ast.newNullLiteral());
+		nullSafe.setElseExpression(value);
+
+		return nullSafe;
+	}
+}
@@ -0,0 +1,268 @@
+package online.devtools.eclipse.generation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.CastExpression;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.InstanceofExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.HashCodeStrategy;
+
+/**
+ * Generates <code>equals</code> which rejects unequal instances as early as
+ * possible. After the identity and type checks the cached hashes are
+ * compared, if there are any, and then the fields, cheapest first.
+ */
+class EqualsGenerator extends MemberGenerator {
+
+	private static final String EQUALS = "equals";
+
+	private static final String[] WRAPPER_TYPES = { "Boolean", "Byte", "Character", "Short", "Integer", "Long",
+			"Float", "Double" };
+
+	private final Imports imports;
+
+	private final HashCodeGenerator hashCodeGenerator;
+
+	private final String parameterName;
+
+	private final String otherVariableName;
+
+	EqualsGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports,
+			final HashCodeGenerator hashCodeGenerator) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+		this.hashCodeGenerator = hashCodeGenerator;
+		this.parameterName = getUniqueFieldName("obj");
+		this.otherVariableName = getUniqueFieldName("other");
+	}
+
+	/**
+	 * Adds <code>equals</code> after the given member.
+	 * 
+	 * @return the added method or the given insertion point if it was not
+	 *         added
+	 */
+	ASTNode addMethod(final ListRewrite listRewrite, final ASTNode insertionPoint) {
+		if (!codeGenerationSettings.generateEquals
+				|| !replaceExisting(members.getMethod(EQUALS, "Object"), listRewrite)) {
+			return insertionPoint;
+		}
+
+		final MethodDeclaration equals = createEqualsMethod(listRewrite.getASTRewrite().getAST());
+		listRewrite.insertAfter(equals, insertionPoint, null);
+
+		return equals;
+	}
+
+	private MethodDeclaration createEqualsMethod(final AST ast) {
+		final Block body = ast.newBlock();
+		final List<Object> statements = body.statements();
+
+		final InfixExpression identity = createInfixExpression(ast, ast.newThisExpression(),
+				InfixExpression.Operator.EQUALS, ast.newSimpleName(parameterName));
+		statements.add(createIfReturn(ast, identity, true));
+		statements.add(createIfReturn(ast, createTypeMismatch(ast), false));
+
+		final CastExpression cast = ast.newCastExpression();
+		cast.setType(createTypeWithWildcards(ast));
+		cast.setExpression(ast.newSimpleName(parameterName));
+		statements.add(createVariable(ast, createTypeWithWildcards(ast), otherVariableName, cast));
+
+		final Expression hashMismatch = createHashMismatch(ast);
+		if (hashMismatch != null) {
+			statements.add(createIfReturn(ast, hashMismatch, false));
+		}
+		if (hasPresenceMask()) {
+			statements.add(createIfReturn(ast, createInfixExpression(ast, createFieldAccess(ast, getPresenceMaskName()),
+					InfixExpression.Operator.NOT_EQUALS, createOtherFieldAccess(ast, getPresenceMaskName())), false));
+		}
+
+		for (ConvertedField field : getFieldsByComparisonCost()) {
+			statements.add(createIfReturn(ast, createFieldMismatch(ast, field), false));
+		}
+		statements.add(createReturnStatement(ast, ast.newBooleanLiteral(true)));
+
+		final SingleVariableDeclaration parameter = ast.newSingleVariableDeclaration();
+		parameter.setName(ast.newSimpleName(parameterName));
+		parameter.setType(createSimpleType(ast, "Object"));
+		if (codeGenerationSettings.makeParametersFinal) {
+			parameter.modifiers().add(createFinalModifier(ast));
+		}
+
+		final MethodDeclaration equals = createMethod(ast, EQUALS, ast.newPrimitiveType(PrimitiveType.BOOLEAN), body,
+				createPublicModifier(ast));
+		equals.modifiers().add(0, createOverrideAnnotation(ast));
+		equals.parameters().add(parameter);
+
+		return equals;
+	}
+
+	/**
+	 * A final type can not have subclasses, so the cheaper
+	 * <code>instanceof</code> check, which also rejects <code>null</code>, is
+	 * enough. Otherwise the classes are compared so that the check stays
+	 * symmetric.
+	 */
+	private Expression createTypeMismatch(final AST ast) {
+		if (Modifier.isFinal(type.getModifiers())) {
+			final InstanceofExpression instanceOf = ast.newInstanceofExpression();
+			instanceOf.setLeftOperand(ast.newSimpleName(parameterName));
+			instanceOf.setRightOperand(createTypeWithWildcards(ast));
+
+			return createNot(ast, instanceOf);
+		}
+
+		final InfixExpression isNull = createInfixExpression(ast, ast.newSimpleName(parameterName),
+				InfixExpression.Operator.EQUALS, ast.newNullLiteral());
+		final InfixExpression otherClass = createInfixExpression(ast, createMethodInvocation(ast, null, "getClass"),
+				InfixExpression.Operator.NOT_EQUALS,
+				createMethodInvocation(ast, ast.newSimpleName(parameterName), "getClass"));
+
+		return createInfixExpression(ast, isNull, InfixExpression.Operator.CONDITIONAL_OR, otherClass);
+	}
+
+	/**
+	 * Compares the cached hashes. A precomputed hash is always set, a lazily
+	 * computed one only when it is not zero.
+	 * 
+	 * @return the expression or <code>null</code> if the hash is not cached
+	 */
+	private Expression createHashMismatch(final AST ast) {
+		final HashCodeStrategy strategy = hashCodeGenerator.getStrategy();
+		if (strategy == HashCodeStrategy.NONE) {
+			return null;
+		}
+
+		final String hashFieldName = hashCodeGenerator.getHashFieldName();
+		final InfixExpression mismatch = createInfixExpression(ast, createFieldAccess(ast, hashFieldName),
+				InfixExpression.Operator.NOT_EQUALS, createOtherFieldAccess(ast, hashFieldName));
+
+		if (strategy == HashCodeStrategy.PRECOMPUTED) {
+			return mismatch;
+		}
+
+		final InfixExpression computed = createInfixExpression(ast, createFieldAccess(ast, hashFieldName),
+				InfixExpression.Operator.NOT_EQUALS, ast.newNumberLiteral("0"));
+		final InfixExpression otherComputed = createInfixExpression(ast, createOtherFieldAccess(ast, hashFieldName),
+				InfixExpression.Operator.NOT_EQUALS, ast.newNumberLiteral("0"));
+		final InfixExpression bothComputedMismatch = createInfixExpression(ast, computed,
+				InfixExpression.Operator.CONDITIONAL_AND, otherComputed);
+		bothComputedMismatch.extendedOperands().add(mismatch);
+
+		return bothComputedMismatch;
+	}
+
+	/**
+	 * Creates the check failing when the field differs.
+	 */
+	private Expression createFieldMismatch(final AST ast, final ConvertedField field) {
+		return createValueComparison(ast, imports, field, createFieldAccess(ast, field),
+				createOtherFieldAccess(ast, field.getName()), false);
+	}
+
+	/**
+	 * Orders the fields by the estimated cost of their comparison, keeping the
+	 * declaration order for fields of the same cost.
+	 */
+	private List<ConvertedField> getFieldsByComparisonCost() {
+		final List<ConvertedField> sortedFields = new ArrayList<>(fields);
+		sortedFields.sort(Comparator.comparingInt(EqualsGenerator::getComparisonCost));
+
+		return sortedFields;
+	}
+
+	/**
+	 * Estimates the cost of comparing a field from its type signature, in the
+	 * format of <code>IField.getTypeSignature()</code>. Primitives need a load
+	 * from each instance, the floating point ones a call to
+	 * <code>compare</code>. References need at least another load and a call,
+	 * wrappers and strings are usually cheap to compare, arrays and generic
+	 * types, mostly collections, are compared element by element.
+	 */
+	static int getComparisonCost(final ConvertedField field) {
+		final String signature = field.getTypeSignature();
+
+		switch (Signature.getTypeSignatureKind(signature)) {
+		case Signature.BASE_TYPE_SIGNATURE:
+			final char primitiveType = signature.charAt(0);
+			return primitiveType == Signature.C_FLOAT || primitiveType == Signature.C_DOUBLE ? 2 : 1;
+		case Signature.ARRAY_TYPE_SIGNATURE:
+			return 6 + Signature.getArrayCount(signature);
+		case Signature.CLASS_TYPE_SIGNATURE:
+			if (Signature.getTypeArguments(signature).length > 0) {
+				return 6;
+			}
+
+			final String simpleName = Signature.getSimpleName(Signature.toString(signature));
+			if (isWrapperType(simpleName)) {
+				return 3;
+			} else if ("String".equals(simpleName)) {
+				return 4;
+			}
+
+			return 5;
+		default:
+			return 5;
+		}
+	}
+
+	private static boolean isWrapperType(final String simpleName) {
+		for (String wrapperType : WRAPPER_TYPES) {
+			if (wrapperType.equals(simpleName)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private FieldAccess createOtherFieldAccess(final AST ast, final String fieldName) {
+		return createQualifiedFieldAccess(ast, otherVariableName, fieldName);
+	}
+
+	/**
+	 * Creates the type for the instance checks, with wildcards for the type
+	 * parameters of a generic type.
+	 */
+	private Type createTypeWithWildcards(final AST ast) {
+		final Type simpleType = createSimpleType(ast, getTypeName());
+		if (!(type instanceof TypeDeclaration) || ((TypeDeclaration) type).typeParameters().isEmpty()) {
+			return simpleType;
+		}
+
+		final ParameterizedType parameterizedType = ast.newParameterizedType(simpleType);
+		for (int i = 0; i < ((TypeDeclaration) type).typeParameters().size(); i++) {
+			parameterizedType.typeArguments().add(ast.newWildcardType());
+		}
+
+		return parameterizedType;
+	}
+
+	private IfStatement createIfReturn(final AST ast, final Expression condition, final boolean value) {
+		final IfStatement ifStatement = ast.newIfStatement();
+		ifStatement.setExpression(condition);
+		ifStatement.setThenStatement(createReturnStatement(ast, ast.newBooleanLiteral(value)));
+
+		return ifStatement;
+	}
+}
@@ -0,0 +1,431 @@
+package online.devtools.eclipse.generation;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier.ModifierKeyword;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.SynchronizedStatement;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.TypeParameter;
+import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.FactoryStrategy;
+
+/**
+ * Generates the static <code>of</code> method creating the instances in place
+ * of the public constructor.
+ * 
+ * With a caching {@link FactoryStrategy} the factory returns an existing
+ * instance equal to the new one if there is one, so that equal instances are
+ * shared. The cache is split into stripes selected by the hash of the
+ * instance, each guarded by its own lock, so that concurrent callers rarely
+ * contend.
+ */
+class FactoryGenerator extends MemberGenerator {
+
+	static final String FACTORY_METHOD_NAME = "of";
+
+	private static final int CACHE_STRIPES = 16;
+
+	private static final int LRU_CACHE_SIZE = 4096;
+
+	private final Imports imports;
+
+	private final DefensiveCopyGenerator defensiveCopies;
+
+	private final FactoryStrategy strategy;
+
+	private final boolean factoryGenerated;
+
+	private final String cacheFieldName;
+
+	private final String stripesFieldName;
+
+	private final String cacheSizeFieldName;
+
+	private final String instanceVariableName;
+
+	private final String hashVariableName;
+
+	private final String stripeVariableName;
+
+	private final String referenceVariableName;
+
+	private final String cachedVariableName;
+
+	/**
+	 * @param equalityDefined
+	 *            whether the type has <code>equals</code> and
+	 *            <code>hashCode</code>, either generated or declared. Without
+	 *            them no instances would be found equal and the factory does
+	 *            not cache
+	 */
+	FactoryGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports,
+			final DefensiveCopyGenerator defensiveCopies, final boolean equalityDefined) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+		this.defensiveCopies = defensiveCopies;
+		this.factoryGenerated = codeGenerationSettings.factoryStrategy != FactoryStrategy.NONE
+				&& (members.getMethod(FACTORY_METHOD_NAME, getFieldsTypes()) == null
+						|| codeGenerationSettings.replaceExistingDeclarations);
+
+		final FactoryStrategy requested = codeGenerationSettings.factoryStrategy;
+		if ((requested == FactoryStrategy.WEAK || requested == FactoryStrategy.LRU)
+				&& (!equalityDefined || isGeneric())) {
+			this.strategy = FactoryStrategy.PLAIN;
+		} else {
+			this.strategy = requested;
+		}
+
+		this.cacheFieldName = getUniqueFieldName("INSTANCES");
+		this.stripesFieldName = getUniqueFieldName("INSTANCE_STRIPES");
+		this.cacheSizeFieldName = getUniqueFieldName("INSTANCE_CACHE_SIZE");
+		this.instanceVariableName = getUniqueFieldName("instance");
+		this.hashVariableName = getUniqueFieldName("h");
+		this.stripeVariableName = getUniqueFieldName("stripe");
+		this.referenceVariableName = getUniqueFieldName("reference");
+		this.cachedVariableName = getUniqueFieldName("cached");
+	}
+
+	/**
+	 * @return whether the instances are created by the factory and the
+	 *         constructor is private
+	 */
+	boolean isEnabled() {
+		return codeGenerationSettings.factoryStrategy != FactoryStrategy.NONE;
+	}
+
+	/**
+	 * @return whether the generated factory shares equal instances. The
+	 *         builder then creates the instances through the factory as well
+	 */
+	boolean isCaching() {
+		return factoryGenerated && strategy != FactoryStrategy.PLAIN && strategy != FactoryStrategy.NONE;
+	}
+
+	/**
+	 * Adds the constants and the field holding the cache before the given
+	 * field.
+	 */
+	void addCacheFields(final ListRewrite listRewrite, final FieldDeclaration insertionPoint) {
+		if (!isCaching()) {
+			return;
+		}
+
+		final AST ast = listRewrite.getASTRewrite().getAST();
+		listRewrite.insertBefore(createIntConstant(ast, stripesFieldName, CACHE_STRIPES), insertionPoint, null);
+		if (strategy == FactoryStrategy.LRU) {
+			listRewrite.insertBefore(createIntConstant(ast, cacheSizeFieldName, LRU_CACHE_SIZE), insertionPoint,
+					null);
+		}
+
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(cacheFieldName));
+		fragment.setInitializer(createMethodInvocation(ast, null, getCreateCacheMethodName()));
+
+		final FieldDeclaration cacheField = ast.newFieldDeclaration(fragment);
+		cacheField.setType(createCacheType(ast));
+		cacheField.modifiers().add(createPrivateModifier(ast));
+		cacheField.modifiers().add(createStaticModifier(ast));
+		cacheField.modifiers().add(createFinalModifier(ast));
+
+		listRewrite.insertBefore(cacheField, insertionPoint, null);
+	}
+
+	/**
+	 * Adds the factory after the given constructor, followed by the method
+	 * creating the cache if the factory caches.
+	 */
+	void addMethods(final ListRewrite listRewrite, final MethodDeclaration constructor) {
+		if (!factoryGenerated) {
+			return;
+		}
+
+		final AST ast = listRewrite.getASTRewrite().getAST();
+		removeMethod(members.getMethod(FACTORY_METHOD_NAME, getFieldsTypes()), listRewrite);
+
+		final MethodDeclaration factory = createFactory(ast);
+		listRewrite.insertAfter(factory, constructor, null);
+		if (isCaching()) {
+			removeMethod(members.getMethod(getCreateCacheMethodName()), listRewrite);
+			listRewrite.insertAfter(createCreateCacheMethod(ast), factory, null);
+		}
+	}
+
+	/**
+	 * Creates the factory, which copies the collections and arrays the
+	 * constructor takes over, see
+	 * {@link DefensiveCopyGenerator#createFactoryValue(AST, ConvertedField)}.
+	 * A caching builder creates its instances through the factory as well, so
+	 * its values are copied once more then.
+	 */
+	private MethodDeclaration createFactory(final AST ast) {
+		final ClassInstanceCreation instance = ast.newClassInstanceCreation();
+		instance.setType(createInstanceType(ast, true));
+		for (ConvertedField field : fields) {
+			instance.arguments().add(defensiveCopies.createFactoryValue(ast, field));
+		}
+
+		final Block body = ast.newBlock();
+		if (isCaching()) {
+			addCacheLookup(ast, body, instance);
+		} else {
+			body.statements().add(createReturnStatement(ast, instance));
+		}
+
+		final MethodDeclaration factory = createMethod(ast, FACTORY_METHOD_NAME, createInstanceType(ast, false),
+				body, createPublicModifier(ast), createStaticModifier(ast));
+		if (isGeneric()) {
+			for (Object typeParameter : ((TypeDeclaration) type).typeParameters()) {
+				factory.typeParameters().add(ASTNode.copySubtree(ast, (TypeParameter) typeParameter));
+			}
+		}
+		for (ConvertedField field : fields) {
+			factory.parameters().add(createParameter(ast, field));
+		}
+
+		return factory;
+	}
+
+	/**
+	 * Adds the statements returning the cached instance equal to the new one,
+	 * or caching and returning the new one if there is none.
+	 */
+	private void addCacheLookup(final AST ast, final Block body, final Expression instance) {
+		body.statements().add(createVariable(ast, createSimpleType(ast, getTypeName()), instanceVariableName,
+				instance));
+		body.statements().add(createVariable(ast, ast.newPrimitiveType(PrimitiveType.INT), hashVariableName,
+				createMethodInvocation(ast, ast.newSimpleName(instanceVariableName), "hashCode")));
+
+		final Expression spreadHash = createInfixExpression(ast, ast.newSimpleName(hashVariableName),
+				InfixExpression.Operator.XOR, createParenthesized(ast, createInfixExpression(ast,
+						ast.newSimpleName(hashVariableName), InfixExpression.Operator.RIGHT_SHIFT_UNSIGNED,
+						ast.newNumberLiteral("16"))));
+		final Expression stripeIndex = createInfixExpression(ast, createParenthesized(ast, spreadHash),
+				InfixExpression.Operator.AND, createParenthesized(ast, createInfixExpression(ast,
+						ast.newSimpleName(stripesFieldName), InfixExpression.Operator.MINUS,
+						ast.newNumberLiteral("1"))));
+		body.statements().add(createVariable(ast, createStripeType(ast), stripeVariableName,
+				createMethodInvocation(ast, ast.newSimpleName(cacheFieldName), "get", stripeIndex)));
+
+		final Block guarded = ast.newBlock();
+		final Expression lookup = createMethodInvocation(ast, ast.newSimpleName(stripeVariableName), "get",
+				ast.newSimpleName(instanceVariableName));
+		final Expression cachedValue;
+		if (strategy == FactoryStrategy.WEAK) {
+			guarded.statements().add(createVariable(ast, createReferenceType(ast), referenceVariableName, lookup));
+
+			final ConditionalExpression dereference = ast.newConditionalExpression();
+			dereference.setExpression(createInfixExpression(ast, ast.newSimpleName(referenceVariableName),
+					InfixExpression.Operator.NOT_EQUALS, ast.newNullLiteral()));
+			dereference.setThenExpression(
+					createMethodInvocation(ast, ast.newSimpleName(referenceVariableName), "get"));
+			dereference.setElseExpression(ast.newNullLiteral());
+			cachedValue = dereference;
+		} else {
+			cachedValue = lookup;
+		}
+		guarded.statements().add(createVariable(ast, createSimpleType(ast, getTypeName()), cachedVariableName,
+				cachedValue));
+
+		final IfStatement found = ast.newIfStatement();
+		found.setExpression(createInfixExpression(ast, ast.newSimpleName(cachedVariableName),
+				InfixExpression.Operator.NOT_EQUALS, ast.newNullLiteral()));
+		final Block returnCached = ast.newBlock();
+		returnCached.statements().add(createReturnStatement(ast, ast.newSimpleName(cachedVariableName)));
+		found.setThenStatement(returnCached);
+		guarded.statements().add(found);
+
+		final Expression cacheValue;
+		if (strategy == FactoryStrategy.WEAK) {
+			final ClassInstanceCreation reference = ast.newClassInstanceCreation();
+			reference.setType(ast.newParameterizedType(
+					createSimpleType(ast, imports.addImport("java.lang.ref.WeakReference"))));
+			reference.arguments().add(ast.newSimpleName(instanceVariableName));
+			cacheValue = reference;
+		} else {
+			cacheValue = ast.newSimpleName(instanceVariableName);
+		}
+		guarded.statements().add(ast.newExpressionStatement(createMethodInvocation(ast,
+				ast.newSimpleName(stripeVariableName), "put", ast.newSimpleName(instanceVariableName), cacheValue)));
+
+		final SynchronizedStatement synchronizedStatement = ast.newSynchronizedStatement();
+		synchronizedStatement.setExpression(ast.newSimpleName(stripeVariableName));
+		synchronizedStatement.setBody(guarded);
+		body.statements().add(synchronizedStatement);
+		body.statements().add(createReturnStatement(ast, ast.newSimpleName(instanceVariableName)));
+	}
+
+	/**
+	 * Creates the method creating the stripes of the cache. The weak cache
+	 * uses a <code>WeakHashMap</code> per stripe, the LRU cache a
+	 * <code>LinkedHashMap</code> in access order which drops its eldest entry
+	 * when it is full.
+	 */
+	private MethodDeclaration createCreateCacheMethod(final AST ast) {
+		final String cacheVariableName = getUniqueFieldName("instances");
+		final String indexVariableName = getUniqueFieldName("i");
+		final Block body = ast.newBlock();
+
+		final ClassInstanceCreation list = ast.newClassInstanceCreation();
+		list.setType(ast.newParameterizedType(createSimpleType(ast, imports.addImport("java.util.ArrayList"))));
+		list.arguments().add(ast.newSimpleName(stripesFieldName));
+		body.statements().add(createVariable(ast, createCacheType(ast), cacheVariableName, list));
+
+		final VariableDeclarationFragment index = ast.newVariableDeclarationFragment();
+		index.setName(ast.newSimpleName(indexVariableName));
+		index.setInitializer(ast.newNumberLiteral("0"));
+		final VariableDeclarationExpression indexDeclaration = ast.newVariableDeclarationExpression(index);
+		indexDeclaration.setType(ast.newPrimitiveType(PrimitiveType.INT));
+
+		final PostfixExpression increment = ast.newPostfixExpression();
+		increment.setOperand(ast.newSimpleName(indexVariableName));
+		increment.setOperator(PostfixExpression.Operator.INCREMENT);
+
+		final Block loopBody = ast.newBlock();
+		loopBody.statements().add(ast.newExpressionStatement(createMethodInvocation(ast,
+				ast.newSimpleName(cacheVariableName), "add", createStripe(ast))));
+
+		final ForStatement loop = ast.newForStatement();
+		loop.initializers().add(indexDeclaration);
+		loop.setExpression(createInfixExpression(ast, ast.newSimpleName(indexVariableName),
+				InfixExpression.Operator.LESS, ast.newSimpleName(stripesFieldName)));
+		loop.updaters().add(increment);
+		loop.setBody(loopBody);
+		body.statements().add(loop);
+		body.statements().add(createReturnStatement(ast, ast.newSimpleName(cacheVariableName)));
+
+		return createMethod(ast, getCreateCacheMethodName(), createCacheType(ast), body, createPrivateModifier(ast),
+				createStaticModifier(ast));
+	}
+
+	private Expression createStripe(final AST ast) {
+		final ClassInstanceCreation stripe = ast.newClassInstanceCreation();
+		if (strategy == FactoryStrategy.WEAK) {
+			stripe.setType(ast.newParameterizedType(createSimpleType(ast, imports.addImport("java.util.WeakHashMap"))));
+			return stripe;
+		}
+
+		final ParameterizedType stripeType = ast
+				.newParameterizedType(createSimpleType(ast, imports.addImport("java.util.LinkedHashMap")));
+		stripeType.typeArguments().add(createSimpleType(ast, getTypeName()));
+		stripeType.typeArguments().add(createSimpleType(ast, getTypeName()));
+		stripe.setType(stripeType);
+		stripe.arguments().add(ast.newNumberLiteral("16"));
+		stripe.arguments().add(ast.newNumberLiteral("0.75f"));
+		stripe.arguments().add(ast.newBooleanLiteral(true));
+
+		final ParameterizedType entryType = ast.newParameterizedType(
+				createSimpleType(ast, imports.addImport("java.util.Map") + ".Entry"));
+		entryType.typeArguments().add(createSimpleType(ast, getTypeName()));
+		entryType.typeArguments().add(createSimpleType(ast, getTypeName()));
+
+		final SingleVariableDeclaration eldest = ast.newSingleVariableDeclaration();
+		eldest.setType(entryType);
+		eldest.setName(ast.newSimpleName("eldest"));
+		if (codeGenerationSettings.makeParametersFinal) {
+			eldest.modifiers().add(createFinalModifier(ast));
+		}
+
+		final Block removeEldestBody = ast.newBlock();
+		removeEldestBody.statements().add(createReturnStatement(ast,
+				createInfixExpression(ast, createMethodInvocation(ast, null, "size"),
+						InfixExpression.Operator.GREATER, createInfixExpression(ast,
+								ast.newSimpleName(cacheSizeFieldName), InfixExpression.Operator.DIVIDE,
+								ast.newSimpleName(stripesFieldName)))));
+
+		final MethodDeclaration removeEldest = ast.newMethodDeclaration();
+		removeEldest.modifiers().add(createOverrideAnnotation(ast));
+		removeEldest.modifiers().add(ast.newModifier(ModifierKeyword.PROTECTED_KEYWORD));
+		removeEldest.setReturnType2(ast.newPrimitiveType(PrimitiveType.BOOLEAN));
+		removeEldest.setName(ast.newSimpleName("removeEldestEntry"));
+		removeEldest.parameters().add(eldest);
+		removeEldest.setBody(removeEldestBody);
+
+		final AnonymousClassDeclaration evicting = ast.newAnonymousClassDeclaration();
+		evicting.bodyDeclarations().add(removeEldest);
+		stripe.setAnonymousClassDeclaration(evicting);
+
+		return stripe;
+	}
+
+	/**
+	 * @return <code>List&lt;Map&lt;Type, V&gt;&gt;</code> where the values are
+	 *         the instances or the weak references to them
+	 */
+	private Type createCacheType(final AST ast) {
+		final ParameterizedType cacheType = ast
+				.newParameterizedType(createSimpleType(ast, imports.addImport("java.util.List")));
+		cacheType.typeArguments().add(createStripeType(ast));
+
+		return cacheType;
+	}
+
+	private Type createStripeType(final AST ast) {
+		final ParameterizedType stripeType = ast
+				.newParameterizedType(createSimpleType(ast, imports.addImport("java.util.Map")));
+		stripeType.typeArguments().add(createSimpleType(ast, getTypeName()));
+		stripeType.typeArguments().add(strategy == FactoryStrategy.WEAK ? createReferenceType(ast)
+				: createSimpleType(ast, getTypeName()));
+
+		return stripeType;
+	}
+
+	private Type createReferenceType(final AST ast) {
+		final ParameterizedType referenceType = ast
+				.newParameterizedType(createSimpleType(ast, imports.addImport("java.lang.ref.WeakReference")));
+		referenceType.typeArguments().add(createSimpleType(ast, getTypeName()));
+
+		return referenceType;
+	}
+
+	private FieldDeclaration createIntConstant(final AST ast, final String name, final int value) {
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(name));
+		fragment.setInitializer(ast.newNumberLiteral(Integer.toString(value)));
+
+		final FieldDeclaration constant = ast.newFieldDeclaration(fragment);
+		constant.setType(ast.newPrimitiveType(PrimitiveType.INT));
+		constant.modifiers().add(createPrivateModifier(ast));
+		constant.modifiers().add(createStaticModifier(ast));
+		constant.modifiers().add(createFinalModifier(ast));
+
+		return constant;
+	}
+
+	private Expression createParenthesized(final AST ast, final Expression expression) {
+		final ParenthesizedExpression parenthesized = ast.newParenthesizedExpression();
+		parenthesized.setExpression(expression);
+
+		return parenthesized;
+	}
+
+	private String getCreateCacheMethodName() {
+		return "create" + capitalize(cacheFieldName.toLowerCase());
+	}
+
+	private boolean isGeneric() {
+		return type instanceof TypeDeclaration && !((TypeDeclaration) type).typeParameters().isEmpty();
+	}
+}
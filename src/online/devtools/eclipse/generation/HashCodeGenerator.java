@@ -0,0 +1,266 @@
+package online.devtools.eclipse.generation;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.HashCodeStrategy;
+
+/**
+ * Generates <code>hashCode</code> caching the hash of the instance according
+ * to the {@link HashCodeStrategy} of the settings.
+ */
+class HashCodeGenerator extends MemberGenerator {
+
+	private static final String HASH_CODE = "hashCode";
+
+	private static final String COMPUTE_HASH_CODE = "computeHashCode";
+
+	private final Imports imports;
+
+	private final HashCodeStrategy strategy;
+
+	private final String hashFieldName;
+
+	private final String resultVariableName;
+
+	private final String hashVariableName;
+
+	/**
+	 * @param constructorGenerated
+	 *            whether the constructor assigning the fields is generated.
+	 *            The hash can not be precomputed in an existing constructor so
+	 *            it is computed lazily instead
+	 */
+	HashCodeGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports, final boolean constructorGenerated) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+
+		final boolean declaresHashCode = members.getMethod(HASH_CODE) != null;
+		final HashCodeStrategy resolved = codeGenerationSettings.hashCodeStrategy.resolve(fields.size(),
+				declaresHashCode);
+
+		if (!codeGenerationSettings.replaceExistingDeclarations
+				&& (declaresHashCode || members.getMethod(COMPUTE_HASH_CODE) != null)) {
+			this.strategy = HashCodeStrategy.NONE;
+		} else if (resolved == HashCodeStrategy.PRECOMPUTED && !constructorGenerated) {
+			this.strategy = HashCodeStrategy.LAZY;
+		} else {
+			this.strategy = resolved;
+		}
+
+		this.hashFieldName = getUniqueFieldName("hash");
+		this.resultVariableName = getUniqueFieldName("result");
+		this.hashVariableName = getUniqueFieldName("h");
+	}
+
+	boolean isEnabled() {
+		return strategy != HashCodeStrategy.NONE;
+	}
+
+	/**
+	 * @return the strategy resolved for the type, {@link HashCodeStrategy#NONE}
+	 *         if <code>hashCode</code> is not generated
+	 */
+	HashCodeStrategy getStrategy() {
+		return strategy;
+	}
+
+	String getHashFieldName() {
+		return hashFieldName;
+	}
+
+	/**
+	 * @return the statement storing the hash at the end of the constructor or
+	 *         <code>null</code> if the hash is not precomputed
+	 */
+	Statement createHashInitialization(final AST ast) {
+		if (strategy != HashCodeStrategy.PRECOMPUTED) {
+			return null;
+		}
+
+		final Expression hashField = createThisPrefixedFieldAccess(ast, hashFieldName);
+		return ast.newExpressionStatement(createAssignment(ast, hashField, createHashCodeInvocation(ast)));
+	}
+
+	/**
+	 * Adds the field caching the hash after the given field.
+	 */
+	void addHashField(final ListRewrite listRewrite, final ASTNode insertionPoint) {
+		if (!isEnabled()) {
+			return;
+		}
+
+		final AST ast = listRewrite.getASTRewrite().getAST();
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(hashFieldName));
+
+		final FieldDeclaration hashField = ast.newFieldDeclaration(fragment);
+		hashField.setType(ast.newPrimitiveType(PrimitiveType.INT));
+		hashField.modifiers().add(createPrivateModifier(ast));
+		if (strategy == HashCodeStrategy.PRECOMPUTED) {
+			hashField.modifiers().add(createFinalModifier(ast));
+		}
+
+		listRewrite.insertAfter(hashField, insertionPoint, null);
+	}
+
+	/**
+	 * Adds <code>hashCode</code> and the method computing the hash after the
+	 * given member.
+	 * 
+	 * @return the last added method or the given insertion point if nothing
+	 *         was added
+	 */
+	ASTNode addMethods(final ListRewrite listRewrite, final ASTNode insertionPoint) {
+		if (!isEnabled()) {
+			return insertionPoint;
+		}
+
+		removeMethod(members.getMethod(HASH_CODE), listRewrite);
+		removeMethod(members.getMethod(COMPUTE_HASH_CODE), listRewrite);
+
+		final AST ast = listRewrite.getASTRewrite().getAST();
+		final MethodDeclaration hashCode = createHashCodeMethod(ast);
+		final MethodDeclaration computeHashCode = createComputeHashCodeMethod(ast);
+
+		listRewrite.insertAfter(hashCode, insertionPoint, null);
+		listRewrite.insertAfter(computeHashCode, hashCode, null);
+
+		return computeHashCode;
+	}
+
+	private MethodDeclaration createHashCodeMethod(final AST ast) {
+		final Block body = ast.newBlock();
+		if (strategy == HashCodeStrategy.PRECOMPUTED) {
+			body.statements().add(createReturnStatement(ast, createFieldAccess(ast, hashFieldName)));
+		} else {
+			addLazyHashCodeStatements(ast, body);
+		}
+
+		final MethodDeclaration hashCode = createMethod(ast, HASH_CODE, ast.newPrimitiveType(PrimitiveType.INT), body,
+				createPublicModifier(ast));
+		hashCode.modifiers().add(0, createOverrideAnnotation(ast));
+
+		return hashCode;
+	}
+
+	/**
+	 * Creates the racy single-check of <code>String.hashCode()</code>:
+	 * 
+	 * <pre>
+	 * int h = hash;
+	 * if (h == 0) {
+	 * 	h = computeHashCode();
+	 * 	hash = h;
+	 * }
+	 * return h;
+	 * </pre>
+	 * 
+	 * The field is read once, so the method never returns the zero seen by a
+	 * racing read.
+	 */
+	private void addLazyHashCodeStatements(final AST ast, final Block body) {
+		final List<Statement> statements = body.statements();
+		statements.add(createIntVariable(ast, hashVariableName, createFieldAccess(ast, hashFieldName)));
+
+		final Block compute = ast.newBlock();
+		compute.statements().add(ast.newExpressionStatement(
+				createAssignment(ast, ast.newSimpleName(hashVariableName), createHashCodeInvocation(ast))));
+		compute.statements().add(ast.newExpressionStatement(createAssignment(ast,
+				createFieldAccess(ast, hashFieldName), ast.newSimpleName(hashVariableName))));
+
+		final IfStatement ifStatement = ast.newIfStatement();
+		ifStatement.setExpression(createInfixExpression(ast, ast.newSimpleName(hashVariableName),
+				InfixExpression.Operator.EQUALS, ast.newNumberLiteral("0")));
+		ifStatement.setThenStatement(compute);
+		statements.add(ifStatement);
+		statements.add(createReturnStatement(ast, ast.newSimpleName(hashVariableName)));
+	}
+
+	/**
+	 * Creates the method combining the hashes of the fields as
+	 * <code>31 * result + hash</code> in the declaration order of the fields,
+	 * followed by the presence mask of the unboxed fields.
+	 */
+	private MethodDeclaration createComputeHashCodeMethod(final AST ast) {
+		final Block body = ast.newBlock();
+		if (fields.isEmpty()) {
+			body.statements().add(createReturnStatement(ast, ast.newNumberLiteral("0")));
+		} else {
+			body.statements().add(createIntVariable(ast, resultVariableName, createFieldHash(ast, fields.get(0))));
+			for (ConvertedField field : fields.subList(1, fields.size())) {
+				body.statements().add(createCombination(ast, createFieldHash(ast, field)));
+			}
+			if (hasPresenceMask()) {
+				final Expression presenceMask = createFieldAccess(ast, getPresenceMaskName());
+				body.statements().add(createCombination(ast, isLongPresenceMask()
+						? createStaticInvocation(ast, imports, "java.lang.Long", HASH_CODE, presenceMask)
+						: presenceMask));
+			}
+			body.statements().add(createReturnStatement(ast, ast.newSimpleName(resultVariableName)));
+		}
+
+		return createMethod(ast, COMPUTE_HASH_CODE, ast.newPrimitiveType(PrimitiveType.INT), body,
+				createPrivateModifier(ast));
+	}
+
+	private Statement createCombination(final AST ast, final Expression hash) {
+		final InfixExpression multiplied = createInfixExpression(ast, ast.newNumberLiteral("31"),
+				InfixExpression.Operator.TIMES, ast.newSimpleName(resultVariableName));
+		final InfixExpression combined = createInfixExpression(ast, multiplied, InfixExpression.Operator.PLUS, hash);
+
+		return ast.newExpressionStatement(createAssignment(ast, ast.newSimpleName(resultVariableName), combined));
+	}
+
+	/**
+	 * Creates the hash of a single field without boxing it. The integral types
+	 * narrower than <code>long</code> are their own hash.
+	 */
+	private Expression createFieldHash(final AST ast, final ConvertedField field) {
+		final Expression fieldAccess = createFieldAccess(ast, field);
+		final PrimitiveType.Code primitiveType = getStorageTypeCode(field);
+
+		if (primitiveType == PrimitiveType.INT || primitiveType == PrimitiveType.SHORT
+				|| primitiveType == PrimitiveType.BYTE || primitiveType == PrimitiveType.CHAR) {
+			return fieldAccess;
+		} else if (primitiveType == PrimitiveType.BOOLEAN) {
+			return createStaticInvocation(ast, imports, "java.lang.Boolean", HASH_CODE, fieldAccess);
+		} else if (primitiveType == PrimitiveType.LONG) {
+			return createStaticInvocation(ast, imports, "java.lang.Long", HASH_CODE, fieldAccess);
+		} else if (primitiveType == PrimitiveType.FLOAT) {
+			return createStaticInvocation(ast, imports, "java.lang.Float", HASH_CODE, fieldAccess);
+		} else if (primitiveType == PrimitiveType.DOUBLE) {
+			return createStaticInvocation(ast, imports, "java.lang.Double", HASH_CODE, fieldAccess);
+		} else if (field.getDimensions() > 1) {
+			return createStaticInvocation(ast, imports, "java.util.Arrays", "deepHashCode", fieldAccess);
+		} else if (field.getDimensions() == 1 || hasPrimitiveStorage(field)) {
+			return createStaticInvocation(ast, imports, "java.util.Arrays", HASH_CODE, fieldAccess);
+		}
+
+		return createStaticInvocation(ast, imports, "java.util.Objects", HASH_CODE, fieldAccess);
+	}
+
+	private Expression createHashCodeInvocation(final AST ast) {
+		return createMethodInvocation(ast, null, COMPUTE_HASH_CODE);
+	}
+
+	private VariableDeclarationStatement createIntVariable(final AST ast, final String name,
+			final Expression initializer) {
+		return createVariable(ast, ast.newPrimitiveType(PrimitiveType.INT), name, initializer);
+	}
+}
@@ -0,0 +1,492 @@
+package online.devtools.eclipse.generation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IExtendedModifier;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.text.edits.TextEdit;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+
+/**
+ * Computes the changes converting a type to an immutable one.
+ * 
+ * The generator works on the AST only and does not depend on the Java model
+ * or the workbench, so it can be used both from the IDE and headless.
+ */
+public class ImmutableClassGenerator extends MemberGenerator {
+
+	/**
+	 * The level of the ASTs the generator works on, which supports records.
+	 */
+	public static final int AST_LEVEL = AST.JLS16;
+
+	private final CompilationUnit compilationUnit;
+
+	private final CommentProvider commentProvider;
+
+	private final List<MethodDeclaration> derivedMethods;
+
+	private CallSiteChanges callSiteChanges;
+
+	public ImmutableClassGenerator(final CompilationUnit compilationUnit, final MemberIndex members,
+			final List<ConvertedField> fields, final CodeSettings codeGenerationSettings,
+			final CommentProvider commentProvider) {
+		this(compilationUnit, members, fields, Collections.emptyList(), codeGenerationSettings, commentProvider);
+	}
+
+	/**
+	 * @param derivedMethods
+	 *            the methods of the type marked as lazy derived, which are
+	 *            memoized
+	 */
+	public ImmutableClassGenerator(final CompilationUnit compilationUnit, final MemberIndex members,
+			final List<ConvertedField> fields, final List<MethodDeclaration> derivedMethods,
+			final CodeSettings codeGenerationSettings, final CommentProvider commentProvider) {
+		super(members, fields, codeGenerationSettings);
+		this.compilationUnit = compilationUnit;
+		this.commentProvider = commentProvider;
+		this.derivedMethods = derivedMethods;
+	}
+
+	/**
+	 * Computes the text edit converting the type.
+	 * 
+	 * @param document
+	 *            the document containing the source the AST was created from
+	 * @param options
+	 *            the formatter options
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * @return the text edit to be applied on the document
+	 * @throws CoreException
+	 */
+	public TextEdit generate(final IDocument document, final Map<String, String> options,
+			final IProgressMonitor monitor) throws CoreException {
+		final SubMonitor progress = SubMonitor.convert(monitor, 10);
+		final ASTRewrite astRewrite = rewrite(progress.split(9));
+
+		progress.split(1);
+		return astRewrite.rewriteAST(document, options);
+	}
+
+	/**
+	 * Records the changes converting the type without computing the text edit.
+	 * 
+	 * @param monitor
+	 *            the progress monitor, may be <code>null</code>
+	 * @return the rewrite containing the changes
+	 * @throws CoreException
+	 */
+	public ASTRewrite rewrite(final IProgressMonitor monitor) throws CoreException {
+		final SubMonitor progress = SubMonitor.convert(monitor, fields.size() + 2);
+		final ASTRewrite astRewrite = ASTRewrite.create(compilationUnit.getAST());
+		final AST ast = astRewrite.getAST();
+		final ListRewrite listRewrite = astRewrite.getListRewrite(type, type.getBodyDeclarationsProperty());
+		final Imports imports = new Imports(compilationUnit, astRewrite);
+
+		final RecordGenerator recordGenerator = new RecordGenerator(members, fields, codeGenerationSettings, imports);
+		if (recordGenerator.isEnabled()) {
+			progress.split(fields.size() + 2);
+			recordGenerator.convert(astRewrite);
+			callSiteChanges = createCallSiteChanges(CallSiteChanges.Creation.UNCHANGED,
+					recordGenerator.getRemovedSetters(), false);
+			return astRewrite;
+		}
+
+		final HashCodeGenerator hashCodeGenerator = new HashCodeGenerator(members, fields, codeGenerationSettings,
+				imports, isConstructorGenerated());
+		final EqualsGenerator equalsGenerator = new EqualsGenerator(members, fields, codeGenerationSettings, imports,
+				hashCodeGenerator);
+		final ToStringGenerator toStringGenerator = new ToStringGenerator(members, fields, codeGenerationSettings,
+				imports);
+		final DefensiveCopyGenerator defensiveCopies = new DefensiveCopyGenerator(members, fields,
+				codeGenerationSettings, imports, isConstructorGenerated());
+		final FactoryGenerator factoryGenerator = new FactoryGenerator(members, fields, codeGenerationSettings,
+				imports, defensiveCopies, isEqualityDefined(hashCodeGenerator));
+		final UnboxingGenerator unboxing = new UnboxingGenerator(members, fields, codeGenerationSettings, imports);
+		final PrimitiveStorageGenerator primitiveStorage = new PrimitiveStorageGenerator(members, fields,
+				codeGenerationSettings, imports);
+
+		MethodDeclaration insertionPoint = null;
+		final CallSiteChanges.Creation creation = getCreation(factoryGenerator);
+
+		if (codeGenerationSettings.generateBuilder) {
+			progress.split(1);
+			insertionPoint = addConstructor(listRewrite, astRewrite, ast.newModifiers(Modifier.PRIVATE),
+					hashCodeGenerator, defensiveCopies, primitiveStorage);
+			progress.split(1);
+			new BuilderGenerator(members, fields, codeGenerationSettings, defensiveCopies).addBuilder(listRewrite,
+					insertionPoint, factoryGenerator.isCaching());
+		} else {
+			progress.split(2);
+			final int visibility = factoryGenerator.isEnabled() ? Modifier.PRIVATE : Modifier.PUBLIC;
+			insertionPoint = addConstructor(listRewrite, astRewrite, ast.newModifiers(visibility),
+					hashCodeGenerator, defensiveCopies, primitiveStorage);
+		}
+
+		ASTNode lastMember = insertionPoint;
+
+		final Map<String, String> removedSetters = removeSetters(listRewrite);
+		if (codeGenerationSettings.generateFinalFields) {
+			addPublicFinalFields(listRewrite, ast);
+		} else {
+			lastMember = addGetters(listRewrite, astRewrite, insertionPoint, defensiveCopies, unboxing,
+					primitiveStorage, progress);
+		}
+
+		if (codeGenerationSettings.generateWithers) {
+			lastMember = new WitherGenerator(members, fields, codeGenerationSettings, imports, defensiveCopies,
+					primitiveStorage, hashCodeGenerator, isConstructorGenerated()).addMethods(listRewrite,
+							lastMember);
+		}
+
+		factoryGenerator.addMethods(listRewrite, insertionPoint);
+		factoryGenerator.addCacheFields(listRewrite, fields.get(0).getDeclaration());
+		defensiveCopies.addConstants(listRewrite, fields.get(0).getDeclaration());
+		unboxing.addPresenceMask(listRewrite, getLastField());
+		primitiveStorage.addStorage(listRewrite, insertionPoint);
+		toStringGenerator.addStringField(listRewrite, getLastField());
+		hashCodeGenerator.addHashField(listRewrite, getLastField());
+		new LazyDerivedGenerator(members, fields, codeGenerationSettings, derivedMethods).addMemoization(listRewrite,
+				getLastField());
+		final CodecGenerator codecGenerator = new CodecGenerator(members, fields, codeGenerationSettings, imports);
+		codecGenerator.addConstants(listRewrite, fields.get(0).getDeclaration());
+		lastMember = codecGenerator.addMethods(listRewrite, lastMember);
+		lastMember = hashCodeGenerator.addMethods(listRewrite, lastMember);
+		lastMember = equalsGenerator.addMethod(listRewrite, lastMember);
+		toStringGenerator.addMethods(listRewrite, lastMember);
+		new ColumnsGenerator(members, fields, codeGenerationSettings, imports).addColumns(listRewrite);
+		callSiteChanges = createCallSiteChanges(creation, removedSetters, codeGenerationSettings.generateWithers);
+
+		return astRewrite;
+	}
+
+	/**
+	 * @return the changes of the last rewrite which break the code using the
+	 *         type, or <code>null</code> if the type was not rewritten yet
+	 */
+	public CallSiteChanges getCallSiteChanges() {
+		return callSiteChanges;
+	}
+
+	private CallSiteChanges createCallSiteChanges(final CallSiteChanges.Creation creation,
+			final Map<String, String> removedSetters, final boolean withers) {
+		final List<String> fieldNames = new ArrayList<>();
+		for (ConvertedField field : fields) {
+			fieldNames.add(field.getName());
+		}
+
+		return new CallSiteChanges(getTypeName(), fieldNames, creation, removedSetters, withers);
+	}
+
+	/**
+	 * The existing constructor assigning all fields becomes private if it is
+	 * replaced and the instances are created by the factory or the builder.
+	 */
+	private CallSiteChanges.Creation getCreation(final FactoryGenerator factoryGenerator) {
+		if (members.getConstructor(getFieldsTypes()) == null || !codeGenerationSettings.replaceExistingDeclarations) {
+			return CallSiteChanges.Creation.UNCHANGED;
+		} else if (factoryGenerator.isEnabled()) {
+			return CallSiteChanges.Creation.FACTORY;
+		} else if (codeGenerationSettings.generateBuilder) {
+			return CallSiteChanges.Creation.BUILDER;
+		}
+
+		return CallSiteChanges.Creation.UNCHANGED;
+	}
+
+	/**
+	 * Removes the setters of the fields, which can not assign them once they
+	 * are final.
+	 * 
+	 * @return the names of the removed setters mapped to the names of their
+	 *         fields
+	 */
+	private Map<String, String> removeSetters(final ListRewrite listRewrite) {
+		final Map<String, String> removedSetters = new LinkedHashMap<>();
+		for (ConvertedField field : fields) {
+			final MethodDeclaration setter = getSetter(field);
+			if (setter != null && !Modifier.isStatic(setter.getModifiers())) {
+				removeMethod(setter, listRewrite);
+				removedSetters.put(setter.getName().getIdentifier(), field.getName());
+			}
+		}
+
+		return removedSetters;
+	}
+
+	/**
+	 * 
+	 * Adds a constructor.
+	 * 
+	 * 
+	 * If a constructor already exists and should not be replaced then this
+	 * method returns the existing constructor
+	 * 
+	 * 
+	 * @param listRewrite
+	 * @param astRewrite
+	 * @param modifiers
+	 *            Modifiers for the constructor
+	 * 
+	 * @return The ASTNode for the constructor. Used as an insertion point for
+	 *         the next statement in most cases. In case the constructor is not
+	 *         added (if it exists and should not be replaced) the insertion
+	 *         point is the existing constructor otherwise it is the newly added
+	 *         constructor
+	 * 
+	 * @throws CoreException
+	 */
+	private MethodDeclaration addConstructor(final ListRewrite listRewrite, final ASTRewrite astRewrite,
+			final Collection<IExtendedModifier> modifiers, final HashCodeGenerator hashCodeGenerator,
+			final DefensiveCopyGenerator defensiveCopies, final PrimitiveStorageGenerator primitiveStorage)
+			throws CoreException {
+		return addConstructor(listRewrite, astRewrite, modifiers, hashCodeGenerator, defensiveCopies,
+				primitiveStorage, existingConstructor -> existingConstructor != null
+						&& !codeGenerationSettings.replaceExistingDeclarations);
+	}
+
+	private MethodDeclaration addConstructor(final ListRewrite listRewrite, final ASTRewrite astRewrite,
+			final Collection<IExtendedModifier> modifiers, final HashCodeGenerator hashCodeGenerator,
+			final DefensiveCopyGenerator defensiveCopies, final PrimitiveStorageGenerator primitiveStorage,
+			Predicate<MethodDeclaration> shouldReplaceExistingConstructor) throws CoreException {
+		final String constructorName = getTypeName();
+		final MethodDeclaration existingConstructor = members.getConstructor(getFieldsTypes());
+
+		if (shouldReplaceExistingConstructor != null && shouldReplaceExistingConstructor.test(existingConstructor)) {
+			return existingConstructor;
+		}
+
+		removeMethod(existingConstructor, listRewrite);
+		ASTNode insertionPoint = getLastField();
+		final MethodDeclaration constructor = createConstructor(constructorName, listRewrite, astRewrite, modifiers,
+				defensiveCopies, primitiveStorage);
+		final Statement hashInitialization = hashCodeGenerator.createHashInitialization(astRewrite.getAST());
+		if (hashInitialization != null) {
+			constructor.getBody().statements().add(hashInitialization);
+		}
+
+		if (codeGenerationSettings.addComments) {
+			final String comment = commentProvider.getMethodComment(getTypeName(), constructor);
+			insertionPoint = insertComment(comment, listRewrite, astRewrite, insertionPoint);
+		}
+
+		listRewrite.insertAfter(constructor, insertionPoint, null);
+		return constructor;
+	}
+
+	/**
+	 * @return the last added getter or the given insertion point if no getter
+	 *         was added
+	 */
+	private ASTNode addGetters(final ListRewrite listRewrite, final ASTRewrite astRewrite, ASTNode insertPoint,
+			final DefensiveCopyGenerator defensiveCopies, final UnboxingGenerator unboxing,
+			final PrimitiveStorageGenerator primitiveStorage, final SubMonitor monitor) throws CoreException {
+		final AST ast = astRewrite.getAST();
+		for (ConvertedField field : fields) {
+			monitor.split(1);
+			final String methodName = field.getGetterName();
+			final MethodDeclaration existingMethod = members.getMethod(methodName);
+
+			if (existingMethod == null
+					|| (existingMethod != null && codeGenerationSettings.replaceExistingDeclarations)) {
+				removeMethod(existingMethod, listRewrite);
+				if (codeGenerationSettings.addComments) {
+					final String fieldName = field.getName();
+					final String comment = commentProvider.getGetterComment(getTypeName(), methodName, fieldName,
+							getType(field));
+					insertPoint = insertComment(comment, listRewrite, astRewrite, insertPoint);
+				}
+
+				final MethodDeclaration createGetterMethod = createGetterMethod(ast, field, methodName,
+						defensiveCopies, unboxing, primitiveStorage);
+				listRewrite.insertAfter(createGetterMethod, insertPoint, null);
+				addFinalFieldModifier(astRewrite, field);
+				insertPoint = createGetterMethod;
+			}
+		}
+
+		return insertPoint;
+	}
+
+	private ASTNode insertComment(final String comment, final ListRewrite listRewrite, final ASTRewrite astRewrite,
+			final ASTNode insertionPoint) {
+		if (comment != null) {
+			final ASTNode commentPlaceholder = astRewrite.createStringPlaceholder(comment, ASTNode.BLOCK_COMMENT);
+			listRewrite.insertAfter(commentPlaceholder, insertionPoint, null);
+			return commentPlaceholder;
+		}
+		return insertionPoint;
+	}
+
+	private void addPublicFinalFields(final ListRewrite listRewrite, final AST ast) {
+		for (ConvertedField field : fields) {
+			listRewrite.replace(field.getDeclaration(), createPublicFinalField(ast, field), null);
+		}
+	}
+
+	/**
+	 * @return whether the type has <code>equals</code> and
+	 *         <code>hashCode</code> after the conversion, either generated or
+	 *         kept
+	 */
+	private boolean isEqualityDefined(final HashCodeGenerator hashCodeGenerator) {
+		return (codeGenerationSettings.generateEquals || members.getMethod("equals", "Object") != null)
+				&& (hashCodeGenerator.isEnabled() || members.getMethod("hashCode") != null);
+	}
+
+	private ASTNode getLastField() {
+		return fields.get(fields.size() - 1).getDeclaration();
+	}
+
+	private void addFinalFieldModifier(final ASTRewrite astRewrite, final ConvertedField field) {
+		final FieldDeclaration fieldDeclaration = field.getDeclaration();
+		if (!isFinal(fieldDeclaration)) {
+			final AST ast = astRewrite.getAST();
+			final ListRewrite fieldRewrite = astRewrite.getListRewrite(fieldDeclaration,
+					FieldDeclaration.MODIFIERS2_PROPERTY);
+			fieldRewrite.insertLast(createFinalModifier(ast), null);
+		}
+	}
+
+	private boolean isFinal(final FieldDeclaration fieldDeclaration) {
+		final List<IExtendedModifier> modifiers = fieldDeclaration.modifiers();
+		if (modifiers != null) {
+			for (IExtendedModifier modifier : modifiers) {
+				if (modifier.isModifier() && modifier instanceof Modifier) {
+					if (((Modifier) modifier).isFinal()) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	private MethodDeclaration createGetterMethod(final AST ast, final ConvertedField field,
+			final String methodName, final DefensiveCopyGenerator defensiveCopies, final UnboxingGenerator unboxing,
+			final PrimitiveStorageGenerator primitiveStorage) {
+		final boolean unboxed = isUnboxed(field);
+		final Expression value;
+		if (unboxed) {
+			value = unboxing.createGetterValue(ast, field);
+		} else if (hasPrimitiveStorage(field)) {
+			value = primitiveStorage.createGetterValue(ast, field);
+		} else {
+			value = defensiveCopies.createGetterValue(ast, field);
+		}
+		final Block body = ast.newBlock();
+		body.statements().add(createReturnStatement(ast, value));
+		final MethodDeclaration methodDeclaration = ast.newMethodDeclaration();
+		methodDeclaration.setName(ast.newSimpleName(methodName));
+		methodDeclaration.setReturnType2(unboxed ? unboxing.createGetterType(ast, field) : field.createType(ast));
+		methodDeclaration.setBody(body);
+		methodDeclaration.modifiers().add(createPublicModifier(ast));
+
+		return methodDeclaration;
+	}
+
+	private FieldDeclaration createPublicFinalField(final AST ast, final ConvertedField field) {
+		return createField(ast, field, Arrays.asList(createPublicModifier(ast), createFinalModifier(ast)));
+	}
+
+	private MethodDeclaration createConstructor(final String name, final ListRewrite listRewrite,
+			final ASTRewrite astRewrite, final Collection<IExtendedModifier> modifiers,
+			final DefensiveCopyGenerator defensiveCopies, final PrimitiveStorageGenerator primitiveStorage) {
+		final AST ast = astRewrite.getAST();
+		final Block body = ast.newBlock();
+		final Collection<SingleVariableDeclaration> parameters = new ArrayList<>();
+
+		for (ConvertedField field : fields) {
+			body.statements().add(createFieldInitialization(field, astRewrite, defensiveCopies, primitiveStorage));
+			parameters.add(createParameter(ast, field));
+		}
+		if (hasPresenceMask()) {
+			body.statements().add(createPresenceMaskInitialization(ast));
+		}
+
+		final MethodDeclaration constructor = ast.newMethodDeclaration();
+		constructor.setConstructor(true);
+		constructor.modifiers().addAll(modifiers);
+		constructor.setName(ast.newSimpleName(name));
+		constructor.setBody(body);
+		constructor.parameters().addAll(parameters);
+
+		return constructor;
+	}
+
+	private Statement createFieldInitialization(final ConvertedField field, final ASTRewrite astRewrite,
+			final DefensiveCopyGenerator defensiveCopies, final PrimitiveStorageGenerator primitiveStorage) {
+		final AST ast = astRewrite.getAST();
+		final Expression variableInitializer = field.getInitializer();
+		if (isUnboxed(field)) {
+			return ast.newExpressionStatement(createAssignment(ast, field, createUnboxedValue(ast, field)));
+		} else if (hasPrimitiveStorage(field)) {
+			return ast.newExpressionStatement(
+					createAssignment(ast, field, primitiveStorage.createStoredValue(ast, field)));
+		} else if (variableInitializer == null) {
+			return ast.newExpressionStatement(
+					createAssignment(ast, field, defensiveCopies.createConstructorValue(ast, field, true)));
+		} else {
+			Statement initalizationStatement = null;
+			if (field.isPrimitive()) {
+				initalizationStatement = ast.newExpressionStatement(createAssignment(ast, field));
+			} else {
+				final IfStatement ifStatement = ast.newIfStatement();
+				ifStatement.setExpression(createNotNullCheck(ast, field));
+				ifStatement.setThenStatement(ast.newExpressionStatement(
+						createAssignment(ast, field, defensiveCopies.createConstructorValue(ast, field, false))));
+				ifStatement.setElseStatement(ast.newExpressionStatement(
+						createAssignment(ast, field, (Expression) ASTNode.copySubtree(ast, variableInitializer))));
+				initalizationStatement = ifStatement;
+			}
+
+			astRewrite.remove(variableInitializer, null);
+
+			return initalizationStatement;
+		}
+	}
+
+	private InfixExpression createNotNullCheck(final AST ast, final ConvertedField field) {
+		final InfixExpression nullCheck = ast.newInfixExpression();
+		nullCheck.setLeftOperand(createSimpleName(ast, field));
+		nullCheck.setOperator(InfixExpression.Operator.NOT_EQUALS);
+		nullCheck.setRightOperand(ast.newNullLiteral());
+
+		return nullCheck;
+	}
+
+	private String getType(final ConvertedField field) {
+		return getType(field.getTypeName());
+	}
+
+	private String getType(final String typeName) {
+		return Signature.getSimpleName(typeName);
+	}
+}
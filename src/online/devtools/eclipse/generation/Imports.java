@@ -0,0 +1,159 @@
+package online.devtools.eclipse.generation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ImportDeclaration;
+import org.eclipse.jdt.core.dom.PackageDeclaration;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+/**
+ * Adds the imports needed by the generated code.
+ * 
+ * Unlike <code>ImportRewrite</code> it does not need a compilation unit of
+ * the Java model and works on ASTs parsed from plain sources. Types are
+ * referenced by their simple names unless the name is already taken by
+ * another import or type declared in the compilation unit.
+ */
+final class Imports {
+
+	private static final String JAVA_LANG = "java.lang";
+
+	private final ListRewrite importsRewrite;
+
+	private final String packageName;
+
+	private final Map<String, String> importedTypes = new HashMap<>();
+
+	private final Set<String> importedPackages = new HashSet<>();
+
+	private final Set<String> declaredTypes = new HashSet<>();
+
+	Imports(final CompilationUnit compilationUnit, final ASTRewrite astRewrite) {
+		this.importsRewrite = astRewrite.getListRewrite(compilationUnit, CompilationUnit.IMPORTS_PROPERTY);
+
+		final PackageDeclaration packageDeclaration = compilationUnit.getPackage();
+		this.packageName = packageDeclaration == null ? "" : packageDeclaration.getName().getFullyQualifiedName();
+		final List<ImportDeclaration> imports = compilationUnit.imports();
+		for (ImportDeclaration declaration : imports) {
+			if (declaration.isStatic()) {
+				continue;
+			}
+
+			final String name = declaration.getName().getFullyQualifiedName();
+			if (declaration.isOnDemand()) {
+				importedPackages.add(name);
+			} else {
+				importedTypes.put(getSimpleName(name), name);
+			}
+		}
+
+		for (Object type : compilationUnit.types()) {
+			declaredTypes.add(((AbstractTypeDeclaration) type).getName().getIdentifier());
+		}
+	}
+
+	/**
+	 * Imports a type if needed.
+	 * 
+	 * @param qualifiedName
+	 *            the fully qualified name of the type
+	 * @return the name to be used for referencing the type in the compilation
+	 *         unit
+	 */
+	String addImport(final String qualifiedName) {
+		final String simpleName = getSimpleName(qualifiedName);
+		final String typePackage = getPackageName(qualifiedName);
+		final String importedType = importedTypes.get(simpleName);
+
+		if (importedType != null) {
+			return importedType.equals(qualifiedName) ? simpleName : qualifiedName;
+		}
+
+		if (declaredTypes.contains(simpleName)) {
+			return qualifiedName;
+		}
+
+		if (JAVA_LANG.equals(typePackage) || packageName.equals(typePackage)
+				|| importedPackages.contains(typePackage)) {
+			return simpleName;
+		}
+
+		insertImport(qualifiedName);
+		importedTypes.put(simpleName, qualifiedName);
+
+		return simpleName;
+	}
+
+	/**
+	 * Tells without bindings whether a type name may refer to a type of the
+	 * Java class library: a type of <code>java.lang</code> or a type
+	 * qualified by or imported from a <code>java</code> or
+	 * <code>javax</code> package. A simple name which is not imported by a
+	 * single type import is taken for a library type if such a package is
+	 * imported on demand.
+	 * 
+	 * @param typeName
+	 *            the simple or qualified name of a type as written in the
+	 *            compilation unit
+	 */
+	boolean isLibraryType(final String typeName) {
+		final String qualifiedName = typeName.indexOf('.') < 0 ? importedTypes.get(typeName) : typeName;
+		if (qualifiedName != null) {
+			return isLibraryPackage(qualifiedName);
+		}
+
+		if (declaredTypes.contains(typeName)) {
+			return false;
+		}
+
+		for (String importedPackage : importedPackages) {
+			if (isLibraryPackage(importedPackage + '.')) {
+				return true;
+			}
+		}
+
+		try {
+			Class.forName(JAVA_LANG + '.' + typeName, false, null);
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	private static boolean isLibraryPackage(final String qualifiedName) {
+		return qualifiedName.startsWith("java.") || qualifiedName.startsWith("javax.");
+	}
+
+	private void insertImport(final String qualifiedName) {
+		final AST ast = importsRewrite.getASTRewrite().getAST();
+		final ImportDeclaration declaration = ast.newImportDeclaration();
+		declaration.setName(ast.newName(qualifiedName));
+
+		final List<ImportDeclaration> rewrittenImports = importsRewrite.getRewrittenList();
+		for (ImportDeclaration existing : rewrittenImports) {
+			if (!existing.isStatic() && existing.getName().getFullyQualifiedName().compareTo(qualifiedName) > 0) {
+				importsRewrite.insertBefore(declaration, existing, null);
+				return;
+			}
+		}
+
+		importsRewrite.insertLast(declaration, null);
+	}
+
+	private static String getSimpleName(final String qualifiedName) {
+		return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+	}
+
+	private static String getPackageName(final String qualifiedName) {
+		final int lastDot = qualifiedName.lastIndexOf('.');
+		return lastDot < 0 ? "" : qualifiedName.substring(0, lastDot);
+	}
+}
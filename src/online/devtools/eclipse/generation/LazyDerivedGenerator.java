@@ -0,0 +1,282 @@
+package online.devtools.eclipse.generation;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.SynchronizedStatement;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.LazyDerivedStrategy;
+
+/**
+ * Memoizes the methods marked as lazy derived according to the
+ * {@link LazyDerivedStrategy} of the settings.
+ * 
+ * The body of each method is moved to a private <code>computeX()</code>
+ * method and the method returns the value kept in a field, computing it on
+ * the first call. References are kept in a volatile field and
+ * <code>null</code> marks a value which is not computed yet, so a method
+ * returning <code>null</code> computes it on every call. Primitives are kept
+ * in a plain field published by a volatile flag set after the value. The
+ * construction of the instances does not change.
+ */
+class LazyDerivedGenerator extends MemberGenerator {
+
+	private static final String RESULT = "result";
+
+	private final List<MethodDeclaration> derivedMethods;
+
+	private final Set<String> generatedNames = new HashSet<>();
+
+	LazyDerivedGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final List<MethodDeclaration> derivedMethods) {
+		super(members, fields, codeGenerationSettings);
+		this.derivedMethods = derivedMethods;
+	}
+
+	/**
+	 * Memoizes the derived methods which can be memoized, adding the fields
+	 * keeping the values after the given field and each computing method
+	 * after its memoized method.
+	 */
+	void addMemoization(final ListRewrite listRewrite, final ASTNode fieldInsertionPoint) {
+		final ASTRewrite astRewrite = listRewrite.getASTRewrite();
+		final AST ast = astRewrite.getAST();
+		ASTNode lastField = fieldInsertionPoint;
+
+		for (MethodDeclaration method : derivedMethods) {
+			if (!isMemoizable(method)) {
+				continue;
+			}
+
+			final String valueName = getUniqueName(getValueName(method), true);
+			final String computeName = getUniqueName("compute" + capitalize(valueName), false);
+			final boolean primitive = method.getReturnType2().isPrimitiveType();
+			final String computedName = primitive ? getUniqueName(valueName + "Computed", true) : null;
+
+			final FieldDeclaration valueField = createMemoField(ast, copyReturnType(ast, method), valueName,
+					!primitive);
+			listRewrite.insertAfter(valueField, lastField, null);
+			lastField = valueField;
+			if (primitive) {
+				final FieldDeclaration computedField = createMemoField(ast,
+						ast.newPrimitiveType(PrimitiveType.BOOLEAN), computedName, true);
+				listRewrite.insertAfter(computedField, lastField, null);
+				lastField = computedField;
+			}
+
+			final MethodDeclaration compute = createMethod(ast, computeName, copyReturnType(ast, method),
+					(Block) astRewrite.createMoveTarget(method.getBody()), createPrivateModifier(ast));
+			for (Object exceptionType : method.thrownExceptionTypes()) {
+				compute.thrownExceptionTypes().add(ASTNode.copySubtree(ast, (ASTNode) exceptionType));
+			}
+
+			final Block body = primitive ? createPrimitiveBody(ast, valueName, computedName, computeName)
+					: createReferenceBody(ast, method, valueName, computeName);
+			astRewrite.set(method, MethodDeclaration.BODY_PROPERTY, body, null);
+			listRewrite.insertAfter(compute, method, null);
+		}
+	}
+
+	/**
+	 * Only instance methods without parameters returning a value can be
+	 * memoized.
+	 */
+	private static boolean isMemoizable(final MethodDeclaration method) {
+		return !method.isConstructor() && method.getBody() != null && method.parameters().isEmpty()
+				&& method.typeParameters().isEmpty() && method.getExtraDimensions() == 0
+				&& !Modifier.isStatic(method.getModifiers()) && method.getReturnType2() != null
+				&& !isVoid(method.getReturnType2());
+	}
+
+	private static boolean isVoid(final Type type) {
+		return type.isPrimitiveType() && ((PrimitiveType) type).getPrimitiveTypeCode() == PrimitiveType.VOID;
+	}
+
+	/**
+	 * @return the name of the method without the <code>get</code> or
+	 *         <code>is</code> prefix of a getter
+	 */
+	private static String getValueName(final MethodDeclaration method) {
+		final String name = method.getName().getIdentifier();
+		for (String prefix : new String[] { "get", "is" }) {
+			if (name.length() > prefix.length() && name.startsWith(prefix)
+					&& Character.isUpperCase(name.charAt(prefix.length()))) {
+				return Character.toLowerCase(name.charAt(prefix.length())) + name.substring(prefix.length() + 1);
+			}
+		}
+
+		return name;
+	}
+
+	/**
+	 * @return the given name or the name followed by the first number which
+	 *         is neither declared by the type nor generated before
+	 */
+	private String getUniqueName(final String name, final boolean field) {
+		String uniqueName = name;
+		for (int i = 1; generatedNames.contains(uniqueName) || (field ? members.getField(uniqueName) != null
+				: members.getMethod(uniqueName) != null); i++) {
+			uniqueName = name + i;
+		}
+		generatedNames.add(uniqueName);
+
+		return uniqueName;
+	}
+
+	private FieldDeclaration createMemoField(final AST ast, final Type fieldType, final String name,
+			final boolean volatileField) {
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(name));
+
+		final FieldDeclaration field = ast.newFieldDeclaration(fragment);
+		field.setType(fieldType);
+		field.modifiers().add(createPrivateModifier(ast));
+		if (volatileField) {
+			field.modifiers().add(ast.newModifier(Modifier.ModifierKeyword.VOLATILE_KEYWORD));
+		}
+
+		return field;
+	}
+
+	/**
+	 * Creates the body keeping a reference, reading the volatile field once
+	 * on the fast path:
+	 * 
+	 * <pre>
+	 * Key result = this.key;
+	 * if (result == null) {
+	 * 	synchronized (this) {
+	 * 		result = this.key;
+	 * 		if (result == null) {
+	 * 			result = computeKey();
+	 * 			this.key = result;
+	 * 		}
+	 * 	}
+	 * }
+	 * return result;
+	 * </pre>
+	 * 
+	 * The racy single-check omits the synchronized block and the second read.
+	 */
+	private Block createReferenceBody(final AST ast, final MethodDeclaration method, final String valueName,
+			final String computeName) {
+		final Block compute = ast.newBlock();
+		compute.statements().add(ast.newExpressionStatement(createAssignment(ast, ast.newSimpleName(RESULT),
+				createMethodInvocation(ast, null, computeName))));
+		compute.statements().add(ast.newExpressionStatement(createAssignment(ast,
+				createThisPrefixedFieldAccess(ast, valueName), ast.newSimpleName(RESULT))));
+
+		Statement check = createIfNull(ast, compute);
+		if (isDoubleChecked()) {
+			final Block locked = ast.newBlock();
+			locked.statements().add(ast.newExpressionStatement(createAssignment(ast, ast.newSimpleName(RESULT),
+					createThisPrefixedFieldAccess(ast, valueName))));
+			locked.statements().add(check);
+			check = createIfNull(ast, createSynchronized(ast, locked));
+		}
+
+		final Block body = ast.newBlock();
+		body.statements().add(createVariable(ast, copyReturnType(ast, method), RESULT,
+				createThisPrefixedFieldAccess(ast, valueName)));
+		body.statements().add(check);
+		body.statements().add(createReturnStatement(ast, ast.newSimpleName(RESULT)));
+
+		return body;
+	}
+
+	/**
+	 * Creates the body keeping a primitive, which is published by setting the
+	 * volatile flag after the value:
+	 * 
+	 * <pre>
+	 * if (!this.countComputed) {
+	 * 	synchronized (this) {
+	 * 		if (!this.countComputed) {
+	 * 			this.count = computeCount();
+	 * 			this.countComputed = true;
+	 * 		}
+	 * 	}
+	 * }
+	 * return this.count;
+	 * </pre>
+	 * 
+	 * The racy single-check omits the synchronized block and the second check.
+	 */
+	private Block createPrimitiveBody(final AST ast, final String valueName, final String computedName,
+			final String computeName) {
+		final Block compute = ast.newBlock();
+		compute.statements().add(ast.newExpressionStatement(createAssignment(ast,
+				createThisPrefixedFieldAccess(ast, valueName), createMethodInvocation(ast, null, computeName))));
+		compute.statements().add(ast.newExpressionStatement(createAssignment(ast,
+				createThisPrefixedFieldAccess(ast, computedName), ast.newBooleanLiteral(true))));
+
+		Statement check = createIfNotComputed(ast, computedName, compute);
+		if (isDoubleChecked()) {
+			final Block locked = ast.newBlock();
+			locked.statements().add(check);
+			check = createIfNotComputed(ast, computedName, createSynchronized(ast, locked));
+		}
+
+		final Block body = ast.newBlock();
+		body.statements().add(check);
+		body.statements().add(createReturnStatement(ast, createThisPrefixedFieldAccess(ast, valueName)));
+
+		return body;
+	}
+
+	private boolean isDoubleChecked() {
+		return codeGenerationSettings.lazyDerivedStrategy == LazyDerivedStrategy.DOUBLE_CHECKED;
+	}
+
+	private IfStatement createIfNull(final AST ast, final Statement statement) {
+		return createIf(ast, createInfixExpression(ast, ast.newSimpleName(RESULT), InfixExpression.Operator.EQUALS,
+				ast.newNullLiteral()), statement);
+	}
+
+	private IfStatement createIfNotComputed(final AST ast, final String computedName, final Statement statement) {
+		return createIf(ast, createNot(ast, createThisPrefixedFieldAccess(ast, computedName)), statement);
+	}
+
+	private IfStatement createIf(final AST ast, final Expression condition, final Statement statement) {
+		final IfStatement ifStatement = ast.newIfStatement();
+		ifStatement.setExpression(condition);
+		if (statement instanceof Block) {
+			ifStatement.setThenStatement(statement);
+		} else {
+			final Block then = ast.newBlock();
+			then.statements().add(statement);
+			ifStatement.setThenStatement(then);
+		}
+
+		return ifStatement;
+	}
+
+	private SynchronizedStatement createSynchronized(final AST ast, final Block body) {
+		final SynchronizedStatement synchronizedStatement = ast.newSynchronizedStatement();
+		synchronizedStatement.setExpression(ast.newThisExpression());
+		synchronizedStatement.setBody(body);
+
+		return synchronizedStatement;
+	}
+
+	private static Type copyReturnType(final AST ast, final MethodDeclaration method) {
+		return (Type) ASTNode.copySubtree(ast, method.getReturnType2());
+	}
+}
@@ -0,0 +1,663 @@
+package online.devtools.eclipse.generation;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IExtendedModifier;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.InstanceofExpression;
+import org.eclipse.jdt.core.dom.MarkerAnnotation;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Modifier.ModifierKeyword;
+import org.eclipse.jdt.core.dom.NumberLiteral;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.ReturnStatement;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.TypeParameter;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.HashCodeStrategy;
+import online.devtools.eclipse.handlers.tools.ToStringStrategy;
+import online.devtools.eclipse.handlers.tools.UnboxingStrategy;
+
+/**
+ * Base class of the generators, providing the AST factory methods shared by
+ * them.
+ */
+abstract class MemberGenerator {
+
+	protected final AbstractTypeDeclaration type;
+
+	protected final MemberIndex members;
+
+	protected final List<ConvertedField> fields;
+
+	protected final CodeSettings codeGenerationSettings;
+
+	/**
+	 * The index of the bit of each unboxed field in the presence mask, see
+	 * {@link #getPresenceBits()}.
+	 */
+	private Map<ConvertedField, Integer> presenceBits;
+
+	protected MemberGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings) {
+		this.type = members.getType();
+		this.members = members;
+		this.fields = fields;
+		this.codeGenerationSettings = codeGenerationSettings;
+	}
+
+	protected String getTypeName() {
+		return type.getName().getIdentifier();
+	}
+
+	/**
+	 * Checks whether a declaration should be generated in place of an existing
+	 * one. The existing declaration is removed if it should be replaced.
+	 * 
+	 * @return <code>true</code> if there is no existing declaration or it was
+	 *         removed
+	 */
+	protected boolean replaceExisting(final MethodDeclaration existing, final ListRewrite listRewrite) {
+		if (existing == null) {
+			return true;
+		}
+
+		if (codeGenerationSettings.replaceExistingDeclarations) {
+			listRewrite.remove(existing, null);
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the given name or the name followed by the first number which
+	 *         is not used by a field of the type
+	 */
+	protected String getUniqueFieldName(final String name) {
+		String uniqueName = name;
+		for (int i = 1; members.getField(uniqueName) != null; i++) {
+			uniqueName = name + i;
+		}
+
+		return uniqueName;
+	}
+
+	/**
+	 * @return whether the constructor assigning the fields is generated or an
+	 *         existing one is kept
+	 */
+	protected boolean isConstructorGenerated() {
+		return codeGenerationSettings.replaceExistingDeclarations || members.getConstructor(getFieldsTypes()) == null;
+	}
+
+	protected String[] getFieldsTypes() {
+		final String[] parameterTypes = new String[fields.size()];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			parameterTypes[i] = fields.get(i).getErasure();
+		}
+
+		return parameterTypes;
+	}
+
+	/**
+	 * @return whether the field of a wrapper type is stored as a primitive,
+	 *         with its presence recorded in the presence mask
+	 * @see UnboxingStrategy
+	 */
+	protected boolean isUnboxed(final ConvertedField field) {
+		return getPresenceBit(field) >= 0;
+	}
+
+	/**
+	 * @return whether any of the fields is unboxed
+	 */
+	protected boolean hasPresenceMask() {
+		return getUnboxedCount() > 0;
+	}
+
+	/**
+	 * @return whether the presence mask needs a <code>long</code>
+	 */
+	protected boolean isLongPresenceMask() {
+		return getUnboxedCount() > Integer.SIZE;
+	}
+
+	protected String getPresenceMaskName() {
+		return getUniqueFieldName("present");
+	}
+
+	/**
+	 * @return the type in which the value of the field is stored, the wrapped
+	 *         primitive type for the unboxed fields
+	 */
+	protected PrimitiveType.Code getStorageTypeCode(final ConvertedField field) {
+		return isUnboxed(field) ? field.getWrappedTypeCode() : field.getPrimitiveTypeCode();
+	}
+
+	/**
+	 * Creates the check whether the value of the unboxed field is present or
+	 * absent, that is whether it was <code>null</code>.
+	 */
+	protected Expression createPresenceCheck(final AST ast, final ConvertedField field, final boolean present) {
+		return createPresenceCheck(ast, field, createFieldAccess(ast, getPresenceMaskName()), present);
+	}
+
+	private Expression createPresenceCheck(final AST ast, final ConvertedField field, final Expression presenceMask,
+			final boolean present) {
+		final ParenthesizedExpression bit = ast.newParenthesizedExpression();
+		bit.setExpression(createInfixExpression(ast, presenceMask, InfixExpression.Operator.AND,
+				createPresenceBitLiteral(ast, field)));
+
+		return createInfixExpression(ast, bit,
+				present ? InfixExpression.Operator.NOT_EQUALS : InfixExpression.Operator.EQUALS,
+				ast.newNumberLiteral("0"));
+	}
+
+	/**
+	 * Creates the value of an unboxed field as its wrapper type,
+	 * <code>null</code> if it is absent.
+	 */
+	protected Expression createBoxedValue(final AST ast, final ConvertedField field) {
+		final ConditionalExpression value = ast.newConditionalExpression();
+		value.setExpression(createPresenceCheck(ast, field, true));
+		value.setThenExpression(createFieldAccess(ast, field));
+		value.setElseExpression(ast.newNullLiteral());
+
+		return value;
+	}
+
+	/**
+	 * Creates the value of an unboxed field of another instance as its
+	 * wrapper type.
+	 * 
+	 * @param instanceName
+	 *            the name of the variable holding the instance
+	 */
+	protected Expression createBoxedValue(final AST ast, final ConvertedField field, final String instanceName) {
+		final ConditionalExpression value = ast.newConditionalExpression();
+		value.setExpression(createPresenceCheck(ast, field,
+				createQualifiedFieldAccess(ast, instanceName, getPresenceMaskName()), true));
+		value.setThenExpression(createQualifiedFieldAccess(ast, instanceName, field.getName()));
+		value.setElseExpression(ast.newNullLiteral());
+
+		return value;
+	}
+
+	/**
+	 * Creates the primitive value assigned from the parameter of the unboxed
+	 * field, the default value of the primitive type for <code>null</code>.
+	 */
+	protected Expression createUnboxedValue(final AST ast, final ConvertedField field) {
+		final ConditionalExpression value = ast.newConditionalExpression();
+		value.setExpression(createInfixExpression(ast, createSimpleName(ast, field),
+				InfixExpression.Operator.NOT_EQUALS, ast.newNullLiteral()));
+		value.setThenExpression(createSimpleName(ast, field));
+		value.setElseExpression(field.getWrappedTypeCode() == PrimitiveType.BOOLEAN ? ast.newBooleanLiteral(false)
+				: ast.newNumberLiteral("0"));
+
+		return value;
+	}
+
+	/**
+	 * Creates the assignment of the presence mask from the parameters of the
+	 * unboxed fields.
+	 */
+	protected Statement createPresenceMaskInitialization(final AST ast) {
+		Expression mask = null;
+		for (ConvertedField field : fields) {
+			if (isUnboxed(field)) {
+				final ConditionalExpression bit = ast.newConditionalExpression();
+				bit.setExpression(createInfixExpression(ast, createSimpleName(ast, field),
+						InfixExpression.Operator.NOT_EQUALS, ast.newNullLiteral()));
+				bit.setThenExpression(createPresenceBitLiteral(ast, field));
+				bit.setElseExpression(ast.newNumberLiteral("0"));
+
+				final ParenthesizedExpression parenthesized = ast.newParenthesizedExpression();
+				parenthesized.setExpression(bit);
+				mask = mask == null ? parenthesized
+						: createInfixExpression(ast, mask, InfixExpression.Operator.OR, parenthesized);
+			}
+		}
+
+		return ast.newExpressionStatement(
+				createAssignment(ast, createThisPrefixedFieldAccess(ast, getPresenceMaskName()), mask));
+	}
+
+	private NumberLiteral createPresenceBitLiteral(final AST ast, final ConvertedField field) {
+		final long bit = 1L << getPresenceBit(field);
+		return ast.newNumberLiteral(
+				isLongPresenceMask() ? "0x" + Long.toHexString(bit) + "L" : "0x" + Integer.toHexString((int) bit));
+	}
+
+	/**
+	 * @return the index of the bit of the field in the presence mask or -1 if
+	 *         the field is not unboxed
+	 */
+	private int getPresenceBit(final ConvertedField field) {
+		final Integer bit = getPresenceBits().get(field);
+		return bit == null ? -1 : bit;
+	}
+
+	private int getUnboxedCount() {
+		return getPresenceBits().size();
+	}
+
+	/**
+	 * Numbers the unboxable fields in their declaration order, up to the size
+	 * of a <code>long</code>. Whether a field is unboxable depends on the
+	 * references to it in the other members, so the bits are computed once,
+	 * on first use, and looked up afterwards.
+	 */
+	private Map<ConvertedField, Integer> getPresenceBits() {
+		if (presenceBits == null) {
+			presenceBits = new IdentityHashMap<>();
+			if (isUnboxingEnabled()) {
+				for (ConvertedField field : fields) {
+					if (presenceBits.size() == Long.SIZE) {
+						break;
+					} else if (isUnboxable(field)) {
+						presenceBits.put(field, presenceBits.size());
+					}
+				}
+			}
+		}
+
+		return presenceBits;
+	}
+
+	/**
+	 * The fields can only be unboxed by a generated constructor, which records
+	 * their presence, and not when they are public.
+	 */
+	private boolean isUnboxingEnabled() {
+		return codeGenerationSettings.unboxingStrategy != UnboxingStrategy.NONE
+				&& !codeGenerationSettings.generateFinalFields && isConstructorGenerated();
+	}
+
+	/**
+	 * Fields with an initializer keep their wrapper type, as do fields sharing
+	 * the declaration with other fields and fields used by members the
+	 * conversion keeps, see {@link #isReferencedElsewhere(ConvertedField)}.
+	 */
+	private boolean isUnboxable(final ConvertedField field) {
+		return field.getWrappedTypeCode() != null && field.getInitializer() == null
+				&& field.getDeclaration().fragments().size() == 1 && !isReferencedElsewhere(field);
+	}
+
+	/**
+	 * The references to the field in the members kept by the conversion are
+	 * not rewritten, so the field can only change its type if there are none.
+	 * 
+	 * @return whether a member of the type other than the ones the conversion
+	 *         replaces or removes uses the name of the field
+	 */
+	protected boolean isReferencedElsewhere(final ConvertedField field) {
+		for (BodyDeclaration declaration : members.getReferences(field.getName())) {
+			if (!(declaration instanceof MethodDeclaration) || !isReplaced((MethodDeclaration) declaration)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return whether the method is removed or replaced by a generated one:
+	 *         the constructor assigning the fields, the setters and, if
+	 *         existing declarations are replaced, the getters, the withers,
+	 *         <code>equals</code>, <code>hashCode</code> and
+	 *         <code>toString</code>
+	 */
+	private boolean isReplaced(final MethodDeclaration method) {
+		if (method.isConstructor()) {
+			return method == members.getConstructor(getFieldsTypes()) && isConstructorGenerated();
+		}
+
+		for (ConvertedField field : fields) {
+			if (method == getSetter(field)) {
+				return true;
+			}
+		}
+
+		if (!codeGenerationSettings.replaceExistingDeclarations) {
+			return false;
+		} else if (method == members.getMethod("equals", "Object")) {
+			return codeGenerationSettings.generateEquals;
+		} else if (method == members.getMethod("hashCode")) {
+			return codeGenerationSettings.hashCodeStrategy.resolve(fields.size(), true) != HashCodeStrategy.NONE;
+		} else if (method == members.getMethod("toString")) {
+			return codeGenerationSettings.toStringStrategy != ToStringStrategy.NONE;
+		}
+
+		for (ConvertedField field : fields) {
+			final String witherName = WitherGenerator.WITHER_PREFIX + capitalize(field.getName());
+			if ((!codeGenerationSettings.generateFinalFields && method == members.getMethod(field.getGetterName()))
+					|| (codeGenerationSettings.generateWithers
+							&& method == members.getMethod(witherName, field.getErasure()))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Only a generated constructor and getter convert the field from and to
+	 * its primitive storage, and only fields declared alone without an
+	 * initializer and not used by the members the conversion keeps change
+	 * their type.
+	 * 
+	 * @return the primitive storage of the field or <code>null</code> if the
+	 *         field keeps its type
+	 */
+	protected PrimitiveStorage getPrimitiveStorage(final ConvertedField field) {
+		if (!codeGenerationSettings.primitiveCollections || codeGenerationSettings.generateFinalFields
+				|| !isConstructorGenerated() || field.getInitializer() != null
+				|| field.getDeclaration().fragments().size() > 1
+				|| (members.getMethod(field.getGetterName()) != null
+						&& !codeGenerationSettings.replaceExistingDeclarations)
+				|| isReferencedElsewhere(field)) {
+			return null;
+		}
+
+		return PrimitiveStorage.of(field);
+	}
+
+	protected boolean hasPrimitiveStorage(final ConvertedField field) {
+		return getPrimitiveStorage(field) != null;
+	}
+
+	/**
+	 * @return the declared setter of the field or <code>null</code>
+	 */
+	protected MethodDeclaration getSetter(final ConvertedField field) {
+		return members.getMethod("set" + capitalize(field.getName()), field.getErasure());
+	}
+
+	protected void removeMethod(final MethodDeclaration declaration, final ListRewrite rewrite) {
+		if (declaration != null) {
+			rewrite.remove(declaration, null);
+		}
+	}
+
+	protected FieldDeclaration createField(final AST ast, final ConvertedField field,
+			final Collection<IExtendedModifier> modifiers) {
+		final VariableDeclarationFragment variableDeclarationFragment = ast.newVariableDeclarationFragment();
+		variableDeclarationFragment.setName(createSimpleName(ast, field));
+
+		final FieldDeclaration fieldDeclaration = ast.newFieldDeclaration(variableDeclarationFragment);
+		fieldDeclaration.modifiers().addAll(modifiers);
+		fieldDeclaration.setType(field.createType(ast));
+
+		return fieldDeclaration;
+	}
+
+	protected MethodDeclaration createMethod(final AST ast, final String name, final Type returnType,
+			final Block body, final Modifier... modifiers) {
+		final MethodDeclaration methodDeclaration = ast.newMethodDeclaration();
+		methodDeclaration.setName(ast.newSimpleName(name));
+		methodDeclaration.setReturnType2(returnType);
+		methodDeclaration.setBody(body);
+		for (Modifier modifier : modifiers) {
+			methodDeclaration.modifiers().add(modifier);
+		}
+
+		return methodDeclaration;
+	}
+
+	/**
+	 * Creates the invocation of a static method, importing its type.
+	 */
+	protected MethodInvocation createStaticInvocation(final AST ast, final Imports imports,
+			final String qualifiedTypeName, final String name, final Expression... arguments) {
+		return createMethodInvocation(ast, ast.newName(imports.addImport(qualifiedTypeName)), name, arguments);
+	}
+
+	protected InfixExpression createInfixExpression(final AST ast, final Expression left,
+			final InfixExpression.Operator operator, final Expression right) {
+		final InfixExpression expression = ast.newInfixExpression();
+		expression.setLeftOperand(left);
+		expression.setOperator(operator);
+		expression.setRightOperand(right);
+
+		return expression;
+	}
+
+	protected PrefixExpression createNot(final AST ast, final Expression expression) {
+		final PrefixExpression not = ast.newPrefixExpression();
+		not.setOperator(PrefixExpression.Operator.NOT);
+		if (expression instanceof InstanceofExpression || expression instanceof InfixExpression) {
+			final ParenthesizedExpression parenthesized = ast.newParenthesizedExpression();
+			parenthesized.setExpression(expression);
+			not.setOperand(parenthesized);
+		} else {
+			not.setOperand(expression);
+		}
+
+		return not;
+	}
+
+	/**
+	 * Creates the comparison of two values of the type of the field.
+	 * Primitives are compared directly, floating point values with the
+	 * semantics of <code>Float.compare</code> and <code>Double.compare</code>,
+	 * so that <code>NaN</code> equals itself as required by the contract of
+	 * <code>equals</code>. Fields with a primitive storage are compared as
+	 * arrays.
+	 * 
+	 * @param equal
+	 *            whether the comparison is <code>true</code> for equal or for
+	 *            different values
+	 */
+	protected Expression createValueComparison(final AST ast, final Imports imports, final ConvertedField field,
+			final Expression value, final Expression otherValue, final boolean equal) {
+		final InfixExpression.Operator operator = equal ? InfixExpression.Operator.EQUALS
+				: InfixExpression.Operator.NOT_EQUALS;
+		final PrimitiveType.Code primitiveType = getStorageTypeCode(field);
+		final Expression equality;
+
+		if (primitiveType == PrimitiveType.FLOAT || primitiveType == PrimitiveType.DOUBLE) {
+			final String wrapper = primitiveType == PrimitiveType.FLOAT ? "java.lang.Float" : "java.lang.Double";
+			final Expression comparison = createStaticInvocation(ast, imports, wrapper, "compare", value, otherValue);
+			return createInfixExpression(ast, comparison, operator, ast.newNumberLiteral("0"));
+		} else if (primitiveType != null) {
+			return createInfixExpression(ast, value, operator, otherValue);
+		} else if (field.getDimensions() > 1) {
+			equality = createStaticInvocation(ast, imports, "java.util.Arrays", "deepEquals", value, otherValue);
+		} else if (field.getDimensions() == 1 || hasPrimitiveStorage(field)) {
+			equality = createStaticInvocation(ast, imports, "java.util.Arrays", "equals", value, otherValue);
+		} else {
+			equality = createStaticInvocation(ast, imports, "java.util.Objects", "equals", value, otherValue);
+		}
+
+		return equal ? equality : createNot(ast, equality);
+	}
+
+	protected MarkerAnnotation createOverrideAnnotation(final AST ast) {
+		final MarkerAnnotation annotation = ast.newMarkerAnnotation();
+		annotation.setTypeName(ast.newSimpleName("Override"));
+
+		return annotation;
+	}
+
+	protected ReturnStatement createFieldReturnStatement(final AST ast, final ConvertedField field) {
+		return createReturnStatement(ast, createFieldAccess(ast, field));
+	}
+
+	protected ReturnStatement createThisReturnStatement(final AST ast) {
+		return createReturnStatement(ast, ast.newThisExpression());
+	}
+
+	protected ReturnStatement createReturnStatement(final AST ast, final Expression expression) {
+		final ReturnStatement returnStatement = ast.newReturnStatement();
+		returnStatement.setExpression(expression);
+
+		return returnStatement;
+	}
+
+	protected Expression createFieldAccess(final AST ast, final ConvertedField field) {
+		return createFieldAccess(ast, field.getName());
+	}
+
+	protected Expression createFieldAccess(final AST ast, final String fieldName) {
+		if (codeGenerationSettings.qualifyFieldAccessWithThis) {
+			return createThisPrefixedFieldAccess(ast, fieldName);
+		}
+
+		return ast.newSimpleName(fieldName);
+	}
+
+	/**
+	 * Creates the access to a field of the instance held by the given
+	 * variable.
+	 */
+	protected FieldAccess createQualifiedFieldAccess(final AST ast, final String instanceName,
+			final String fieldName) {
+		final FieldAccess fieldAccess = ast.newFieldAccess();
+		fieldAccess.setExpression(ast.newSimpleName(instanceName));
+		fieldAccess.setName(ast.newSimpleName(fieldName));
+
+		return fieldAccess;
+	}
+
+	protected FieldAccess createThisPrefixedFieldAccess(final AST ast, final ConvertedField field) {
+		return createThisPrefixedFieldAccess(ast, field.getName());
+	}
+
+	protected FieldAccess createThisPrefixedFieldAccess(final AST ast, final String fieldName) {
+		final FieldAccess fieldAccess = ast.newFieldAccess();
+		fieldAccess.setExpression(ast.newThisExpression());
+		fieldAccess.setName(ast.newSimpleName(fieldName));
+
+		return fieldAccess;
+	}
+
+	protected MethodInvocation createMethodInvocation(final AST ast, final Expression target, final String name,
+			final Expression... arguments) {
+		final MethodInvocation invocation = ast.newMethodInvocation();
+		invocation.setExpression(target);
+		invocation.setName(ast.newSimpleName(name));
+		for (Expression argument : arguments) {
+			invocation.arguments().add(argument);
+		}
+
+		return invocation;
+	}
+
+	protected SimpleName createSimpleName(final AST ast, final ConvertedField field) {
+		return ast.newSimpleName(field.getName());
+	}
+
+	protected SimpleType createSimpleType(final AST ast, final String typeName) {
+		return ast.newSimpleType(ast.newName(typeName));
+	}
+
+	/**
+	 * Creates the type of the instances, parameterized by the type variables
+	 * of a generic type or, for the creation of an instance, by the diamond.
+	 */
+	protected Type createInstanceType(final AST ast, final boolean diamond) {
+		final SimpleType simpleType = createSimpleType(ast, getTypeName());
+		if (!(type instanceof TypeDeclaration) || ((TypeDeclaration) type).typeParameters().isEmpty()) {
+			return simpleType;
+		}
+
+		final ParameterizedType parameterizedType = ast.newParameterizedType(simpleType);
+		if (!diamond) {
+			for (Object typeParameter : ((TypeDeclaration) type).typeParameters()) {
+				parameterizedType.typeArguments()
+						.add(createSimpleType(ast, ((TypeParameter) typeParameter).getName().getIdentifier()));
+			}
+		}
+
+		return parameterizedType;
+	}
+
+	protected Modifier createFinalModifier(final AST ast) {
+		return ast.newModifier(ModifierKeyword.FINAL_KEYWORD);
+	}
+
+	protected Modifier createPublicModifier(final AST ast) {
+		return ast.newModifier(ModifierKeyword.PUBLIC_KEYWORD);
+	}
+
+	protected Modifier createStaticModifier(final AST ast) {
+		return ast.newModifier(ModifierKeyword.STATIC_KEYWORD);
+	}
+
+	protected Modifier createPrivateModifier(final AST ast) {
+		return ast.newModifier(ModifierKeyword.PRIVATE_KEYWORD);
+	}
+
+	protected SingleVariableDeclaration createParameter(final AST ast, final ConvertedField field) {
+		final SingleVariableDeclaration parameter = ast.newSingleVariableDeclaration();
+		parameter.setName(createSimpleName(ast, field));
+		parameter.setType(field.createType(ast));
+
+		if (codeGenerationSettings.makeParametersFinal) {
+			parameter.modifiers().add(createFinalModifier(ast));
+		}
+
+		return parameter;
+	}
+
+	protected Assignment createAssignment(final AST ast, final ConvertedField field) {
+		return createAssignment(ast, field, createSimpleName(ast, field));
+	}
+
+	protected Assignment createAssignment(final AST ast, final ConvertedField field, final Expression expression) {
+		return createAssignment(ast, createThisPrefixedFieldAccess(ast, field), expression);
+	}
+
+	protected Assignment createAssignment(final AST ast, final Expression target, final Expression expression) {
+		final Assignment assignment = ast.newAssignment();
+		assignment.setLeftHandSide(target);
+		assignment.setRightHandSide(expression);
+		assignment.setOperator(Assignment.Operator.ASSIGN);
+
+		return assignment;
+	}
+
+	protected VariableDeclarationStatement createVariable(final AST ast, final Type type, final String name,
+			final Expression initializer) {
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(name));
+		fragment.setInitializer(initializer);
+
+		final VariableDeclarationStatement variable = ast.newVariableDeclarationStatement(fragment);
+		variable.setType(type);
+
+		return variable;
+	}
+
+	protected static String capitalize(final String name) {
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1, name.length());
+	}
+}
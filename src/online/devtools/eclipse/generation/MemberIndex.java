@@ -0,0 +1,198 @@
+package online.devtools.eclipse.generation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.ArrayType;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.NameQualifiedType;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.QualifiedType;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+
+/**
+ * Index of the members declared directly in a type.
+ * 
+ * The index is built in a single pass over the body declarations. Fields are
+ * looked up by name or by the offset of their name, methods and constructors
+ * by name and erased parameter types, so each lookup takes constant time
+ * regardless of the number of members.
+ */
+public class MemberIndex {
+
+	private final AbstractTypeDeclaration type;
+
+	private final Map<String, VariableDeclarationFragment> fieldsByName = new HashMap<>();
+
+	private final Map<Integer, VariableDeclarationFragment> fieldsByOffset = new HashMap<>();
+
+	private final Map<String, MethodDeclaration> methods = new HashMap<>();
+
+	private final Map<String, MethodDeclaration> constructors = new HashMap<>();
+
+	private Map<String, List<BodyDeclaration>> references;
+
+	public MemberIndex(final AbstractTypeDeclaration type) {
+		this.type = type;
+
+		for (BodyDeclaration declaration : (List<BodyDeclaration>) type.bodyDeclarations()) {
+			if (declaration instanceof FieldDeclaration) {
+				final List<VariableDeclarationFragment> fragments = ((FieldDeclaration) declaration).fragments();
+				for (VariableDeclarationFragment fragment : fragments) {
+					fieldsByName.putIfAbsent(fragment.getName().getIdentifier(), fragment);
+					fieldsByOffset.put(fragment.getName().getStartPosition(), fragment);
+				}
+			} else if (declaration instanceof MethodDeclaration) {
+				final MethodDeclaration method = (MethodDeclaration) declaration;
+				if (method.isConstructor()) {
+					constructors.putIfAbsent(getKey("", getParameterTypes(method)), method);
+				} else {
+					methods.putIfAbsent(getKey(method.getName().getIdentifier(), getParameterTypes(method)), method);
+				}
+			}
+		}
+	}
+
+	public AbstractTypeDeclaration getType() {
+		return type;
+	}
+
+	/**
+	 * @return the fragment declaring the field or <code>null</code>
+	 */
+	public VariableDeclarationFragment getField(final String name) {
+		return fieldsByName.get(name);
+	}
+
+	/**
+	 * @param nameOffset
+	 *            the start position of the field name
+	 * @return the fragment declaring the field or <code>null</code>
+	 */
+	public VariableDeclarationFragment getField(final int nameOffset) {
+		return fieldsByOffset.get(nameOffset);
+	}
+
+	/**
+	 * @param parameterTypes
+	 *            the erased parameter types as returned by
+	 *            {@link #getErasure(Type, int)}
+	 * @return the method or <code>null</code>
+	 */
+	public MethodDeclaration getMethod(final String name, final String... parameterTypes) {
+		return methods.get(getKey(name, parameterTypes));
+	}
+
+	/**
+	 * @param parameterTypes
+	 *            the erased parameter types as returned by
+	 *            {@link #getErasure(Type, int)}
+	 * @return the constructor or <code>null</code>
+	 */
+	public MethodDeclaration getConstructor(final String... parameterTypes) {
+		return constructors.get(getKey("", parameterTypes));
+	}
+
+	/**
+	 * Returns the members of the type using the name other than as the name
+	 * of a declaration or of an invoked method. The names are indexed in a
+	 * single pass on the first call.
+	 * 
+	 * The index is built without bindings, so a local variable or a field of
+	 * another type with the same name is taken for a reference as well.
+	 * 
+	 * @return the members in their declaration order
+	 */
+	public List<BodyDeclaration> getReferences(final String name) {
+		if (references == null) {
+			references = new HashMap<>();
+			for (BodyDeclaration declaration : (List<BodyDeclaration>) type.bodyDeclarations()) {
+				declaration.accept(new ASTVisitor() {
+					@Override
+					public boolean visit(final SimpleName node) {
+						if (!node.isDeclaration() && node.getLocationInParent() != MethodInvocation.NAME_PROPERTY
+								&& node.getLocationInParent() != SuperMethodInvocation.NAME_PROPERTY) {
+							final List<BodyDeclaration> declarations = references
+									.computeIfAbsent(node.getIdentifier(), identifier -> new ArrayList<>());
+							if (declarations.isEmpty() || declarations.get(declarations.size() - 1) != declaration) {
+								declarations.add(declaration);
+							}
+						}
+						return false;
+					}
+				});
+			}
+		}
+
+		return references.getOrDefault(name, Collections.emptyList());
+	}
+
+	/**
+	 * Returns the simple name of the erasure of the type, for example
+	 * <code>Map</code> for <code>java.util.Map&lt;K, V&gt;</code>.
+	 */
+	public static String getErasure(final Type type, final int extraDimensions) {
+		final StringBuilder erasure = new StringBuilder();
+		Type elementType = type;
+		int dimensions = extraDimensions;
+
+		if (elementType.isArrayType()) {
+			dimensions += ((ArrayType) elementType).getDimensions();
+			elementType = ((ArrayType) elementType).getElementType();
+		}
+
+		if (elementType.isParameterizedType()) {
+			elementType = ((ParameterizedType) elementType).getType();
+		}
+
+		if (elementType.isSimpleType()) {
+			final Name name = ((SimpleType) elementType).getName();
+			erasure.append(name.isQualifiedName() ? ((QualifiedName) name).getName().getIdentifier()
+					: ((SimpleName) name).getIdentifier());
+		} else if (elementType.isQualifiedType()) {
+			erasure.append(((QualifiedType) elementType).getName().getIdentifier());
+		} else if (elementType.isNameQualifiedType()) {
+			erasure.append(((NameQualifiedType) elementType).getName().getIdentifier());
+		} else {
+			erasure.append(elementType.toString());
+		}
+
+		for (int i = 0; i < dimensions; i++) {
+			erasure.append("[]");
+		}
+
+		return erasure.toString();
+	}
+
+	private static String[] getParameterTypes(final MethodDeclaration method) {
+		final List<SingleVariableDeclaration> parameters = method.parameters();
+		final String[] parameterTypes = new String[parameters.size()];
+
+		for (int i = 0; i < parameterTypes.length; i++) {
+			final SingleVariableDeclaration parameter = parameters.get(i);
+			parameterTypes[i] = getErasure(parameter.getType(),
+					parameter.getExtraDimensions() + (parameter.isVarargs() ? 1 : 0));
+		}
+
+		return parameterTypes;
+	}
+
+	private static String getKey(final String name, final String[] parameterTypes) {
+		return name + '(' + String.join(",", parameterTypes) + ')';
+	}
+}
@@ -0,0 +1,102 @@
+package online.devtools.eclipse.generation;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.Type;
+
+/**
+ * The primitive array storing a list, set or map field of the wrapper types
+ * which have primitive streams, <code>Integer</code>, <code>Long</code> and
+ * <code>Double</code>.
+ * 
+ * Lists keep their order, sets are sorted so that they can be searched. Maps
+ * keep their keys sorted in the first half of the array and the values in
+ * the same order in the second half, in an <code>int[]</code> if both are
+ * <code>Integer</code> and in a <code>long[]</code> otherwise, holding
+ * <code>double</code> values by their bits. Map keys can not be
+ * <code>Double</code>, as their bits do not sort like their values.
+ */
+final class PrimitiveStorage {
+
+	private final CollectionType collectionType;
+
+	private final PrimitiveType.Code elementType;
+
+	private final PrimitiveType.Code valueType;
+
+	private final PrimitiveType.Code arrayType;
+
+	private PrimitiveStorage(final CollectionType collectionType, final PrimitiveType.Code elementType,
+			final PrimitiveType.Code valueType, final PrimitiveType.Code arrayType) {
+		this.collectionType = collectionType;
+		this.elementType = elementType;
+		this.valueType = valueType;
+		this.arrayType = arrayType;
+	}
+
+	CollectionType getCollectionType() {
+		return collectionType;
+	}
+
+	/**
+	 * @return the primitive type of the elements or, for a map, of the keys
+	 */
+	PrimitiveType.Code getElementType() {
+		return elementType;
+	}
+
+	/**
+	 * @return the primitive type of the values of a map or <code>null</code>
+	 *         for a list or a set
+	 */
+	PrimitiveType.Code getValueType() {
+		return valueType;
+	}
+
+	/**
+	 * @return the primitive type of the elements of the array
+	 */
+	PrimitiveType.Code getArrayType() {
+		return arrayType;
+	}
+
+	boolean isMap() {
+		return valueType != null;
+	}
+
+	/**
+	 * @return the storage of the field or <code>null</code> if it is not a
+	 *         list, set or map of the supported wrapper types
+	 */
+	static PrimitiveStorage of(final ConvertedField field) {
+		final CollectionType collectionType = CollectionType.of(field);
+		final Type type = field.getDeclaration().getType();
+		if (field.getDimensions() > 0 || !type.isParameterizedType() || (collectionType != CollectionType.LIST
+				&& collectionType != CollectionType.SET && collectionType != CollectionType.MAP)) {
+			return null;
+		}
+
+		final List<Type> typeArguments = ((ParameterizedType) type).typeArguments();
+		final PrimitiveType.Code elementType = ConvertedField.getWrappedTypeCode(typeArguments.get(0));
+		if (!collectionType.isMap()) {
+			return isStreamable(elementType) ? new PrimitiveStorage(collectionType, elementType, null, elementType)
+					: null;
+		}
+
+		final PrimitiveType.Code valueType = ConvertedField.getWrappedTypeCode(typeArguments.get(1));
+		if (elementType == PrimitiveType.DOUBLE || !isStreamable(elementType) || !isStreamable(valueType)) {
+			return null;
+		}
+
+		return new PrimitiveStorage(collectionType, elementType, valueType,
+				elementType == PrimitiveType.INT && valueType == PrimitiveType.INT ? PrimitiveType.INT
+						: PrimitiveType.LONG);
+	}
+
+	private static boolean isStreamable(final PrimitiveType.Code primitiveType) {
+		return primitiveType == PrimitiveType.INT || primitiveType == PrimitiveType.LONG
+				|| primitiveType == PrimitiveType.DOUBLE;
+	}
+}
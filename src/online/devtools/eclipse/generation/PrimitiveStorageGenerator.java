@@ -0,0 +1,556 @@
+package online.devtools.eclipse.generation;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.CastExpression;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionMethodReference;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.InstanceofExpression;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+
+/**
+ * Stores the lists, sets and maps of <code>Integer</code>, <code>Long</code>
+ * and <code>Double</code> in primitive arrays as described by
+ * {@link PrimitiveStorage}.
+ * 
+ * The constructor and the builder keep taking the collections, which the
+ * constructor converts into the array in a single pass. The getters return
+ * read-only views of the arrays: lists index them, sets and maps search them
+ * with <code>Arrays.binarySearch</code>. The elements are boxed only when they
+ * are read through a view.
+ * 
+ * As an array can not hold <code>null</code>, the constructor rejects
+ * <code>null</code> elements, keys and values with a
+ * <code>NullPointerException</code> naming the field.
+ */
+class PrimitiveStorageGenerator extends MemberGenerator {
+
+	private static final String ARRAYS = "java.util.Arrays";
+
+	private static final String SIZE = "size";
+
+	private final Imports imports;
+
+	private final String elementName;
+
+	private final String keyName;
+
+	private final String valueName;
+
+	PrimitiveStorageGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+		this.elementName = getUniqueFieldName("element");
+		this.keyName = getUniqueFieldName("key");
+		this.valueName = getUniqueFieldName("value");
+	}
+
+	/**
+	 * Changes the types of the fields to their arrays and adds the methods
+	 * converting the maps after the given member.
+	 */
+	void addStorage(final ListRewrite listRewrite, final ASTNode insertionPoint) {
+		final ASTRewrite astRewrite = listRewrite.getASTRewrite();
+		final AST ast = astRewrite.getAST();
+		ASTNode lastMember = insertionPoint;
+
+		for (ConvertedField field : fields) {
+			final PrimitiveStorage storage = getPrimitiveStorage(field);
+			if (storage == null) {
+				continue;
+			}
+
+			astRewrite.set(field.getDeclaration(), FieldDeclaration.TYPE_PROPERTY, createStorageType(ast, field),
+					null);
+			if (storage.isMap()) {
+				removeMethod(members.getMethod(getConversionMethodName(field), field.getErasure()), listRewrite);
+				final MethodDeclaration conversion = createMapConversion(ast, field, storage);
+				listRewrite.insertAfter(conversion, lastMember, null);
+				lastMember = conversion;
+			}
+		}
+	}
+
+	Type createStorageType(final AST ast, final ConvertedField field) {
+		return ast.newArrayType(ast.newPrimitiveType(getPrimitiveStorage(field).getArrayType()));
+	}
+
+	/**
+	 * Creates the array stored for the parameter of the field,
+	 * <code>null</code> for <code>null</code>:
+	 * 
+	 * <pre>
+	 * ids == null ? null
+	 * 		: ids.stream()
+	 * 				.mapToLong(element -&gt; Objects.requireNonNull(element, "ids must not contain null").longValue())
+	 * 				.toArray()
+	 * </pre>
+	 */
+	Expression createStoredValue(final AST ast, final ConvertedField field) {
+		final PrimitiveStorage storage = getPrimitiveStorage(field);
+		final Expression stored;
+		if (storage.isMap()) {
+			stored = createMethodInvocation(ast, null, getConversionMethodName(field), createSimpleName(ast, field));
+		} else {
+			Expression stream = createMethodInvocation(ast, createMethodInvocation(ast, createSimpleName(ast, field),
+					"stream"), getMapMethodName(storage), createCheckedUnboxing(ast, field, storage));
+			if (storage.getCollectionType() == CollectionType.SET) {
+				stream = createMethodInvocation(ast, stream, "sorted");
+			}
+			stored = createMethodInvocation(ast, stream, "toArray");
+		}
+
+		return createNullSafe(ast, createSimpleName(ast, field), stored);
+	}
+
+	/**
+	 * Creates the value returned by the getter, a view of the array.
+	 */
+	Expression createGetterValue(final AST ast, final ConvertedField field) {
+		final PrimitiveStorage storage = getPrimitiveStorage(field);
+		final List<Type> typeArguments = ((ParameterizedType) field.getDeclaration().getType()).typeArguments();
+		final ClassInstanceCreation view;
+		if (storage.isMap()) {
+			view = createMapView(ast, field, storage, typeArguments);
+		} else if (storage.getCollectionType() == CollectionType.SET) {
+			view = createSetView(ast, field, typeArguments);
+		} else {
+			view = createListView(ast, field, typeArguments);
+		}
+
+		return createNullSafe(ast, createFieldAccess(ast, field), view);
+	}
+
+	private ClassInstanceCreation createListView(final AST ast, final ConvertedField field,
+			final List<Type> typeArguments) {
+		final ClassInstanceCreation view = createAnonymousInstance(ast, "java.util.AbstractList", typeArguments);
+		final List<Object> methods = view.getAnonymousClassDeclaration().bodyDeclarations();
+
+		methods.add(createViewMethod(ast, "get", copyType(ast, typeArguments.get(0)),
+				createElementAccess(ast, field, ast.newSimpleName("index")),
+				createViewParameter(ast, ast.newPrimitiveType(PrimitiveType.INT), "index")));
+		methods.add(createViewMethod(ast, SIZE, ast.newPrimitiveType(PrimitiveType.INT), createLength(ast, field)));
+
+		return view;
+	}
+
+	/**
+	 * Creates the view of a sorted array, searching it in
+	 * <code>contains</code>:
+	 * 
+	 * <pre>
+	 * return value instanceof Long &amp;&amp; Arrays.binarySearch(Type.this.ids, (Long) value) &gt;= 0;
+	 * </pre>
+	 */
+	private ClassInstanceCreation createSetView(final AST ast, final ConvertedField field,
+			final List<Type> typeArguments) {
+		final ClassInstanceCreation view = createAnonymousInstance(ast, "java.util.AbstractSet", typeArguments);
+		final List<Object> methods = view.getAnonymousClassDeclaration().bodyDeclarations();
+		final Type elementType = typeArguments.get(0);
+
+		final Expression search = createStaticInvocation(ast, imports, ARRAYS, "binarySearch",
+				createOuterFieldAccess(ast, field), createCast(ast, copyType(ast, elementType), "value"));
+		final Expression contains = createInfixExpression(ast, createInstanceof(ast, "value", elementType),
+				InfixExpression.Operator.CONDITIONAL_AND, createInfixExpression(ast, search,
+						InfixExpression.Operator.GREATER_EQUALS, ast.newNumberLiteral("0")));
+		methods.add(createViewMethod(ast, "contains", ast.newPrimitiveType(PrimitiveType.BOOLEAN), contains,
+				createViewParameter(ast, createSimpleType(ast, "Object"), "value")));
+
+		final Expression iterator = createMethodInvocation(ast,
+				createStaticInvocation(ast, imports, ARRAYS, "stream", createOuterFieldAccess(ast, field)), "iterator");
+		methods.add(createViewMethod(ast, "iterator", createParameterizedType(ast, "java.util.Iterator", typeArguments),
+				iterator));
+		methods.add(createViewMethod(ast, SIZE, ast.newPrimitiveType(PrimitiveType.INT), createLength(ast, field)));
+
+		return view;
+	}
+
+	/**
+	 * Creates the view of the sorted keys and their values. <code>get</code>
+	 * searches the keys, the entries are created while iterating:
+	 * 
+	 * <pre>
+	 * return IntStream.range(0, Type.this.rates.length / 2)
+	 * 		.&lt;Map.Entry&lt;Integer, Double&gt;&gt; mapToObj(index -&gt; new AbstractMap.SimpleImmutableEntry&lt;&gt;(
+	 * 				Type.this.rates[index],
+	 * 				Double.longBitsToDouble(Type.this.rates[Type.this.rates.length / 2 + index])))
+	 * 		.iterator();
+	 * </pre>
+	 */
+	private ClassInstanceCreation createMapView(final AST ast, final ConvertedField field,
+			final PrimitiveStorage storage, final List<Type> typeArguments) {
+		final ClassInstanceCreation view = createAnonymousInstance(ast, "java.util.AbstractMap", typeArguments);
+		final List<Object> methods = view.getAnonymousClassDeclaration().bodyDeclarations();
+		final Type keyType = typeArguments.get(0);
+
+		final Block get = ast.newBlock();
+		final IfStatement otherKey = ast.newIfStatement();
+		otherKey.setExpression(createNot(ast, createInstanceof(ast, "key", keyType)));
+		final Block otherKeyBlock = ast.newBlock();
+		otherKeyBlock.statements().add(createReturnStatement(ast, ast.newNullLiteral()));
+		otherKey.setThenStatement(otherKeyBlock);
+		get.statements().add(otherKey);
+		get.statements().add(createVariable(ast, ast.newPrimitiveType(PrimitiveType.INT), "index",
+				createStaticInvocation(ast, imports, ARRAYS, "binarySearch", createOuterFieldAccess(ast, field),
+						ast.newNumberLiteral("0"), createMapSize(ast, field),
+						createCast(ast, copyType(ast, keyType), "key"))));
+		final ConditionalExpression value = ast.newConditionalExpression();
+		value.setExpression(createInfixExpression(ast, ast.newSimpleName("index"), InfixExpression.Operator.LESS,
+				ast.newNumberLiteral("0")));
+		value.setThenExpression(ast.newNullLiteral());
+		value.setElseExpression(createValueAccess(ast, field, storage, ast.newSimpleName("index")));
+		get.statements().add(createReturnStatement(ast, value));
+		methods.add(createViewMethod(ast, "get", copyType(ast, typeArguments.get(1)), get,
+				createViewParameter(ast, createSimpleType(ast, "Object"), "key")));
+
+		methods.add(createViewMethod(ast, "containsKey", ast.newPrimitiveType(PrimitiveType.BOOLEAN),
+				createInfixExpression(ast, createMethodInvocation(ast, null, "get", ast.newSimpleName("key")),
+						InfixExpression.Operator.NOT_EQUALS, ast.newNullLiteral()),
+				createViewParameter(ast, createSimpleType(ast, "Object"), "key")));
+		methods.add(createViewMethod(ast, SIZE, ast.newPrimitiveType(PrimitiveType.INT), createMapSize(ast, field)));
+
+		final ParameterizedType entryType = ast.newParameterizedType(
+				createSimpleType(ast, imports.addImport("java.util.Map") + ".Entry"));
+		for (Type typeArgument : typeArguments) {
+			entryType.typeArguments().add(copyType(ast, typeArgument));
+		}
+
+		final ClassInstanceCreation entry = ast.newClassInstanceCreation();
+		entry.setType(ast.newParameterizedType(
+				createSimpleType(ast, imports.addImport("java.util.AbstractMap") + ".SimpleImmutableEntry")));
+		entry.arguments().add(createKeyAccess(ast, field, storage, ast.newSimpleName("index")));
+		entry.arguments().add(createValueAccess(ast, field, storage, ast.newSimpleName("index")));
+
+		final LambdaExpression toEntry = ast.newLambdaExpression();
+		toEntry.setParentheses(false);
+		toEntry.parameters().add(createLambdaParameter(ast, "index"));
+		toEntry.setBody(entry);
+
+		final MethodInvocation entries = createMethodInvocation(ast,
+				createStaticInvocation(ast, imports, "java.util.stream.IntStream", "range", ast.newNumberLiteral("0"),
+						createMapSize(ast, field)),
+				"mapToObj", toEntry);
+		entries.typeArguments().add(copyType(ast, entryType));
+
+		final List<Type> entryTypes = Collections.singletonList(entryType);
+		final ClassInstanceCreation entrySet = createAnonymousInstance(ast, "java.util.AbstractSet", entryTypes);
+		final List<Object> entrySetMethods = entrySet.getAnonymousClassDeclaration().bodyDeclarations();
+		entrySetMethods.add(createViewMethod(ast, "iterator",
+				createParameterizedType(ast, "java.util.Iterator", entryTypes),
+				createMethodInvocation(ast, entries, "iterator")));
+		entrySetMethods.add(
+				createViewMethod(ast, SIZE, ast.newPrimitiveType(PrimitiveType.INT), createMapSize(ast, field)));
+		methods.add(createViewMethod(ast, "entrySet",
+				createParameterizedType(ast, "java.util.Set", entryTypes),
+				entrySet));
+
+		return view;
+	}
+
+	/**
+	 * Creates the method converting a map, sorting it first and rejecting
+	 * <code>null</code> keys and values:
+	 * 
+	 * <pre>
+	 * TreeMap&lt;Integer, Double&gt; sortedRates = new TreeMap&lt;&gt;();
+	 * rates.forEach((key, value) -&gt; sortedRates.put(Objects.requireNonNull(key, "rates must not contain null keys"),
+	 * 		Objects.requireNonNull(value, "rates must not contain null values")));
+	 * return LongStream.concat(sortedRates.keySet().stream().mapToLong(Integer::longValue),
+	 * 		sortedRates.values().stream().mapToLong(Double::doubleToLongBits)).toArray();
+	 * </pre>
+	 */
+	private MethodDeclaration createMapConversion(final AST ast, final ConvertedField field,
+			final PrimitiveStorage storage) {
+		final List<Type> typeArguments = ((ParameterizedType) field.getDeclaration().getType()).typeArguments();
+		final String sortedName = "sorted" + capitalize(field.getName());
+		final Block body = ast.newBlock();
+
+		final ClassInstanceCreation sorted = ast.newClassInstanceCreation();
+		sorted.setType(ast.newParameterizedType(createSimpleType(ast, imports.addImport("java.util.TreeMap"))));
+		body.statements().add(
+				createVariable(ast, createParameterizedType(ast, "java.util.TreeMap", typeArguments), sortedName,
+						sorted));
+
+		final LambdaExpression put = ast.newLambdaExpression();
+		put.parameters().add(createLambdaParameter(ast, keyName));
+		put.parameters().add(createLambdaParameter(ast, valueName));
+		put.setBody(createMethodInvocation(ast, ast.newSimpleName(sortedName), "put",
+				createNonNull(ast, keyName, field.getName() + " must not contain null keys"),
+				createNonNull(ast, valueName, field.getName() + " must not contain null values")));
+		body.statements().add(ast.newExpressionStatement(
+				createMethodInvocation(ast, createSimpleName(ast, field), "forEach", put)));
+
+		final Expression keys = createMethodInvocation(ast,
+				createMethodInvocation(ast,
+						createMethodInvocation(ast, ast.newSimpleName(sortedName), "keySet"), "stream"),
+				getMapMethodName(storage), createUnboxing(ast, storage.getElementType(), storage));
+		final Expression values = createMethodInvocation(ast,
+				createMethodInvocation(ast,
+						createMethodInvocation(ast, ast.newSimpleName(sortedName), "values"), "stream"),
+				getMapMethodName(storage), createUnboxing(ast, storage.getValueType(), storage));
+		final String streamType = storage.getArrayType() == PrimitiveType.INT ? "java.util.stream.IntStream"
+				: "java.util.stream.LongStream";
+		body.statements().add(createReturnStatement(ast, createMethodInvocation(ast,
+				createStaticInvocation(ast, imports, streamType, "concat", keys, values), "toArray")));
+
+		final MethodDeclaration conversion = createMethod(ast, getConversionMethodName(field),
+				createStorageType(ast, field), body, createPrivateModifier(ast), createStaticModifier(ast));
+		conversion.parameters().add(createParameter(ast, field));
+
+		return conversion;
+	}
+
+	private String getConversionMethodName(final ConvertedField field) {
+		return "to" + capitalize(field.getName()) + "Array";
+	}
+
+	/**
+	 * @return the method of <code>Stream</code> mapping the elements to the
+	 *         primitive stream of the array type
+	 */
+	private static String getMapMethodName(final PrimitiveStorage storage) {
+		final PrimitiveType.Code arrayType = storage.getArrayType();
+		if (arrayType == PrimitiveType.INT) {
+			return "mapToInt";
+		} else if (arrayType == PrimitiveType.LONG) {
+			return "mapToLong";
+		}
+
+		return "mapToDouble";
+	}
+
+	/**
+	 * Creates the method reference converting a wrapper to the element type
+	 * of the array, <code>Integer::longValue</code> or
+	 * <code>Double::doubleToLongBits</code> for example.
+	 */
+	private ExpressionMethodReference createUnboxing(final AST ast, final PrimitiveType.Code primitiveType,
+			final PrimitiveStorage storage) {
+		final PrimitiveType.Code arrayType = storage.getArrayType();
+		final ExpressionMethodReference unboxing = ast.newExpressionMethodReference();
+		unboxing.setExpression(ast.newSimpleName(getWrapperName(primitiveType)));
+		unboxing.setName(ast.newSimpleName(primitiveType == PrimitiveType.DOUBLE && arrayType == PrimitiveType.LONG
+				? "doubleToLongBits" : arrayType.toString() + "Value"));
+
+		return unboxing;
+	}
+
+	/**
+	 * Creates the lambda converting an element of a list or a set to the
+	 * element type of the array, rejecting <code>null</code>.
+	 */
+	private LambdaExpression createCheckedUnboxing(final AST ast, final ConvertedField field,
+			final PrimitiveStorage storage) {
+		final Expression checked = createNonNull(ast, elementName, field.getName() + " must not contain null");
+		final PrimitiveType.Code arrayType = storage.getArrayType();
+		final Expression unboxed;
+		if (storage.getElementType() == PrimitiveType.DOUBLE && arrayType == PrimitiveType.LONG) {
+			unboxed = createMethodInvocation(ast, ast.newSimpleName("Double"), "doubleToLongBits", checked);
+		} else {
+			unboxed = createMethodInvocation(ast, checked, arrayType.toString() + "Value");
+		}
+
+		final LambdaExpression unboxing = ast.newLambdaExpression();
+		unboxing.setParentheses(false);
+		unboxing.parameters().add(createLambdaParameter(ast, elementName));
+		unboxing.setBody(unboxed);
+
+		return unboxing;
+	}
+
+	private static VariableDeclarationFragment createLambdaParameter(final AST ast, final String name) {
+		final VariableDeclarationFragment parameter = ast.newVariableDeclarationFragment();
+		parameter.setName(ast.newSimpleName(name));
+
+		return parameter;
+	}
+
+	private MethodInvocation createNonNull(final AST ast, final String name, final String message) {
+		final StringLiteral literal = ast.newStringLiteral();
+		literal.setLiteralValue(message);
+
+		return createStaticInvocation(ast, imports, "java.util.Objects", "requireNonNull", ast.newSimpleName(name),
+				literal);
+	}
+
+	private static String getWrapperName(final PrimitiveType.Code primitiveType) {
+		if (primitiveType == PrimitiveType.INT) {
+			return "Integer";
+		} else if (primitiveType == PrimitiveType.LONG) {
+			return "Long";
+		}
+
+		return "Double";
+	}
+
+	private Expression createElementAccess(final AST ast, final ConvertedField field, final Expression index) {
+		final ArrayAccess element = ast.newArrayAccess();
+		element.setArray(createOuterFieldAccess(ast, field));
+		element.setIndex(index);
+
+		return element;
+	}
+
+	private Expression createKeyAccess(final AST ast, final ConvertedField field, final PrimitiveStorage storage,
+			final Expression index) {
+		return createDecoding(ast, storage.getElementType(), storage, createElementAccess(ast, field, index));
+	}
+
+	private Expression createValueAccess(final AST ast, final ConvertedField field, final PrimitiveStorage storage,
+			final Expression index) {
+		return createDecoding(ast, storage.getValueType(), storage, createElementAccess(ast, field,
+				createInfixExpression(ast, createMapSize(ast, field), InfixExpression.Operator.PLUS, index)));
+	}
+
+	/**
+	 * Converts an element of a <code>long[]</code> back to an
+	 * <code>int</code> or a <code>double</code>.
+	 */
+	private Expression createDecoding(final AST ast, final PrimitiveType.Code primitiveType,
+			final PrimitiveStorage storage, final Expression element) {
+		if (storage.getArrayType() != PrimitiveType.LONG || primitiveType == PrimitiveType.LONG) {
+			return element;
+		} else if (primitiveType == PrimitiveType.DOUBLE) {
+			return createMethodInvocation(ast, ast.newSimpleName("Double"), "longBitsToDouble", element);
+		}
+
+		final CastExpression cast = ast.newCastExpression();
+		cast.setType(ast.newPrimitiveType(primitiveType));
+		cast.setExpression(element);
+
+		return cast;
+	}
+
+	/**
+	 * The field is qualified by the type, as inside of the view
+	 * <code>this</code> is the view.
+	 */
+	private FieldAccess createOuterFieldAccess(final AST ast, final ConvertedField field) {
+		final ThisExpression outer = ast.newThisExpression();
+		outer.setQualifier(ast.newSimpleName(getTypeName()));
+
+		final FieldAccess fieldAccess = ast.newFieldAccess();
+		fieldAccess.setExpression(outer);
+		fieldAccess.setName(createSimpleName(ast, field));
+
+		return fieldAccess;
+	}
+
+	private FieldAccess createLength(final AST ast, final ConvertedField field) {
+		final FieldAccess length = ast.newFieldAccess();
+		length.setExpression(createOuterFieldAccess(ast, field));
+		length.setName(ast.newSimpleName("length"));
+
+		return length;
+	}
+
+	private Expression createMapSize(final AST ast, final ConvertedField field) {
+		return createInfixExpression(ast, createLength(ast, field), InfixExpression.Operator.DIVIDE,
+				ast.newNumberLiteral("2"));
+	}
+
+	private ClassInstanceCreation createAnonymousInstance(final AST ast, final String qualifiedTypeName,
+			final List<Type> typeArguments) {
+		final ClassInstanceCreation instance = ast.newClassInstanceCreation();
+		instance.setType(createParameterizedType(ast, qualifiedTypeName, typeArguments));
+		instance.setAnonymousClassDeclaration(ast.newAnonymousClassDeclaration());
+
+		return instance;
+	}
+
+	private ParameterizedType createParameterizedType(final AST ast, final String qualifiedTypeName,
+			final List<Type> typeArguments) {
+		final ParameterizedType parameterizedType = ast
+				.newParameterizedType(createSimpleType(ast, imports.addImport(qualifiedTypeName)));
+		for (Type typeArgument : typeArguments) {
+			parameterizedType.typeArguments().add(copyType(ast, typeArgument));
+		}
+
+		return parameterizedType;
+	}
+
+	private MethodDeclaration createViewMethod(final AST ast, final String name, final Type returnType,
+			final Expression returned, final SingleVariableDeclaration... parameters) {
+		final Block body = ast.newBlock();
+		body.statements().add(createReturnStatement(ast, returned));
+
+		return createViewMethod(ast, name, returnType, body, parameters);
+	}
+
+	private MethodDeclaration createViewMethod(final AST ast, final String name, final Type returnType,
+			final Block body, final SingleVariableDeclaration... parameters) {
+		final MethodDeclaration method = createMethod(ast, name, returnType, body, createPublicModifier(ast));
+		method.modifiers().add(0, createOverrideAnnotation(ast));
+		for (SingleVariableDeclaration parameter : parameters) {
+			method.parameters().add(parameter);
+		}
+
+		return method;
+	}
+
+	private SingleVariableDeclaration createViewParameter(final AST ast, final Type type, final String name) {
+		final SingleVariableDeclaration parameter = ast.newSingleVariableDeclaration();
+		parameter.setType(type);
+		parameter.setName(ast.newSimpleName(name));
+		if (codeGenerationSettings.makeParametersFinal) {
+			parameter.modifiers().add(createFinalModifier(ast));
+		}
+
+		return parameter;
+	}
+
+	private InstanceofExpression createInstanceof(final AST ast, final String name, final Type type) {
+		final InstanceofExpression instanceOf = ast.newInstanceofExpression();
+		instanceOf.setLeftOperand(ast.newSimpleName(name));
+		instanceOf.setRightOperand(copyType(ast, type));
+
+		return instanceOf;
+	}
+
+	private CastExpression createCast(final AST ast, final Type type, final String name) {
+		final CastExpression cast = ast.newCastExpression();
+		cast.setType(type);
+		cast.setExpression(ast.newSimpleName(name));
+
+		return cast;
+	}
+
+	private static Type copyType(final AST ast, final Type type) {
+		return (Type) ASTNode.copySubtree(ast, type);
+	}
+
+	private ConditionalExpression createNullSafe(final AST ast, final Expression checked, final Expression value) {
+		final ConditionalExpression nullSafe = ast.newConditionalExpression();
+		nullSafe.setExpression(
+				createInfixExpression(ast, checked, InfixExpression.Operator.EQUALS, ast.newNullLiteral()));
+		nullSafe.setThenExpression(ast.newNullLiteral());
+		nullSafe.setElseExpression(value);
+
+		return nullSafe;
+	}
+}
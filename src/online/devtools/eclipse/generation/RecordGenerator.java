@@ -0,0 +1,334 @@
+package online.devtools.eclipse.generation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IExtendedModifier;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.Initializer;
+import org.eclipse.jdt.core.dom.Javadoc;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.RecordDeclaration;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.UnboxingStrategy;
+
+/**
+ * Converts the type to a record with a component for each converted field.
+ * 
+ * The fields of a record are trusted to be final by the JIT, so their values
+ * can be constant folded like the ones of <code>static final</code> fields.
+ * The record keeps the other members of the type and gets a compact
+ * constructor with the initialization the canonical constructor can not do
+ * by itself: the defaults of the fields with an initializer and the
+ * defensive copies. The accessors, <code>equals</code>,
+ * <code>hashCode</code> and <code>toString</code> are the ones of the record,
+ * so only the builder of the other options is generated. The setters of the
+ * fields are left out, as the components can not be assigned.
+ * 
+ * Only classes which do not extend another class and are neither abstract
+ * nor inner classes, and whose instance fields are all converted and are not
+ * arrays, can be converted. Any other constructor of a record has to start
+ * with <code>this(...)</code>, so classes with constructors other than the
+ * one assigning all fields, such as the no-arg constructor of a bean, are not
+ * converted. Neither are classes whose constructor assigning all fields is
+ * kept but is not valid as the canonical constructor of a record.
+ */
+class RecordGenerator extends MemberGenerator {
+
+	private final Imports imports;
+
+	private final Map<String, String> removedSetters = new LinkedHashMap<>();
+
+	RecordGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports) {
+		super(members, fields, CodeSettings.builder().withCodeSettings(codeGenerationSettings)
+				.withUnboxingStrategy(UnboxingStrategy.NONE).withPrimitiveCollections(false).build());
+		this.imports = imports;
+	}
+
+	boolean isEnabled() {
+		if (!codeGenerationSettings.generateRecord || type.getAST().apiLevel() < AST.JLS16
+				|| !(type instanceof TypeDeclaration)) {
+			return false;
+		}
+
+		final TypeDeclaration typeDeclaration = (TypeDeclaration) type;
+		if (typeDeclaration.isInterface() || typeDeclaration.getSuperclassType() != null
+				|| Modifier.isAbstract(typeDeclaration.getModifiers()) || type.isLocalTypeDeclaration()
+				|| (type.isMemberTypeDeclaration() && !Modifier.isStatic(typeDeclaration.getModifiers())
+						&& !isInterface(type.getParent()))) {
+			return false;
+		}
+
+		for (ConvertedField field : fields) {
+			if (field.getDimensions() > 0) {
+				return false;
+			}
+		}
+
+		final MethodDeclaration canonicalConstructor = members.getConstructor(getFieldsTypes());
+		for (Object declaration : typeDeclaration.bodyDeclarations()) {
+			if (declaration instanceof Initializer && !Modifier.isStatic(((Initializer) declaration).getModifiers())) {
+				return false;
+			} else if (isInstanceField(declaration) && !isConverted((FieldDeclaration) declaration)) {
+				return false;
+			} else if (declaration instanceof MethodDeclaration && ((MethodDeclaration) declaration).isConstructor()
+					&& declaration != canonicalConstructor) {
+				return false;
+			}
+		}
+
+		return canonicalConstructor == null || isConstructorGenerated() || isCanonical(canonicalConstructor);
+	}
+
+	/**
+	 * A kept constructor assigning all fields becomes the canonical constructor
+	 * of the record, which must be at least as accessible as the record, must
+	 * not be generic, throw checked exceptions or invoke another constructor,
+	 * and must name its parameters like the components.
+	 */
+	private boolean isCanonical(final MethodDeclaration constructor) {
+		if (getAccessLevel(constructor.getModifiers()) < getAccessLevel(type.getModifiers())
+				|| !constructor.typeParameters().isEmpty() || !constructor.thrownExceptionTypes().isEmpty()) {
+			return false;
+		}
+
+		final List<SingleVariableDeclaration> parameters = constructor.parameters();
+		for (int i = 0; i < parameters.size(); i++) {
+			if (!parameters.get(i).getName().getIdentifier().equals(fields.get(i).getName())) {
+				return false;
+			}
+		}
+
+		final List<Statement> statements = constructor.getBody() == null ? null : constructor.getBody().statements();
+		return statements != null && (statements.isEmpty() || !(statements.get(0) instanceof ConstructorInvocation
+				|| statements.get(0) instanceof SuperConstructorInvocation));
+	}
+
+	/**
+	 * @return the access level of the modifiers, from 0 for private to 3 for
+	 *         public
+	 */
+	private static int getAccessLevel(final int modifiers) {
+		if (Modifier.isPublic(modifiers)) {
+			return 3;
+		} else if (Modifier.isProtected(modifiers)) {
+			return 2;
+		}
+
+		return Modifier.isPrivate(modifiers) ? 0 : 1;
+	}
+
+	private static boolean isInterface(final ASTNode parent) {
+		return parent instanceof TypeDeclaration && ((TypeDeclaration) parent).isInterface();
+	}
+
+	private static boolean isInstanceField(final Object declaration) {
+		return declaration instanceof FieldDeclaration
+				&& !Modifier.isStatic(((FieldDeclaration) declaration).getModifiers());
+	}
+
+	private boolean isConverted(final FieldDeclaration declaration) {
+		for (Object fragment : declaration.fragments()) {
+			if (fields.stream().noneMatch(field -> field.getFragment() == fragment)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the names of the setters left out of the record mapped to the
+	 *         names of their fields
+	 */
+	Map<String, String> getRemovedSetters() {
+		return removedSetters;
+	}
+
+	/**
+	 * Replaces the type with the record. The existing canonical constructor
+	 * is kept unless existing declarations are replaced, in which case the
+	 * compact constructor takes its place.
+	 */
+	void convert(final ASTRewrite astRewrite) {
+		final AST ast = astRewrite.getAST();
+		final TypeDeclaration typeDeclaration = (TypeDeclaration) type;
+		final MethodDeclaration existingConstructor = members.getConstructor(getFieldsTypes());
+		final DefensiveCopyGenerator defensiveCopies = new DefensiveCopyGenerator(members, fields,
+				codeGenerationSettings, imports, isConstructorGenerated());
+		final List<MethodDeclaration> setters = new ArrayList<>();
+		for (ConvertedField field : fields) {
+			final MethodDeclaration setter = getSetter(field);
+			if (setter != null && !Modifier.isStatic(setter.getModifiers())) {
+				setters.add(setter);
+				removedSetters.put(setter.getName().getIdentifier(), field.getName());
+			}
+		}
+		final MethodDeclaration compactConstructor = isConstructorGenerated()
+				? createCompactConstructor(ast, defensiveCopies)
+				: null;
+
+		final RecordDeclaration record = ast.newRecordDeclaration();
+		if (type.getJavadoc() != null) {
+			record.setJavadoc((Javadoc) astRewrite.createMoveTarget(type.getJavadoc()));
+		}
+		for (Object modifier : type.modifiers()) {
+			if (!(modifier instanceof Modifier) || !((Modifier) modifier).isFinal()) {
+				record.modifiers().add(astRewrite.createMoveTarget((ASTNode) modifier));
+			}
+		}
+		record.setName(ast.newSimpleName(getTypeName()));
+		for (Object typeParameter : typeDeclaration.typeParameters()) {
+			record.typeParameters().add(astRewrite.createMoveTarget((ASTNode) typeParameter));
+		}
+		for (Object interfaceType : typeDeclaration.superInterfaceTypes()) {
+			record.superInterfaceTypes().add(astRewrite.createMoveTarget((ASTNode) interfaceType));
+		}
+		for (ConvertedField field : fields) {
+			record.recordComponents().add(createComponent(ast, field));
+		}
+
+		final List<BodyDeclaration> bodyDeclarations = record.bodyDeclarations();
+		bodyDeclarations.addAll(defensiveCopies.createConstants(ast));
+		for (Object declaration : typeDeclaration.bodyDeclarations()) {
+			if (isInstanceField(declaration)) {
+				if (compactConstructor != null && !bodyDeclarations.contains(compactConstructor)) {
+					bodyDeclarations.add(compactConstructor);
+				}
+			} else if ((declaration != existingConstructor || compactConstructor == null)
+					&& !setters.contains(declaration)) {
+				bodyDeclarations.add((BodyDeclaration) astRewrite.createMoveTarget((ASTNode) declaration));
+			}
+		}
+
+		if (codeGenerationSettings.generateBuilder) {
+			bodyDeclarations.addAll(new BuilderGenerator(members, fields, codeGenerationSettings, defensiveCopies)
+					.createBuilderDeclarations(ast, createCanonicalSignature(ast), false));
+		}
+
+		astRewrite.replace(type, record, null);
+	}
+
+	/**
+	 * Creates the component keeping the annotations of the field.
+	 */
+	private SingleVariableDeclaration createComponent(final AST ast, final ConvertedField field) {
+		final SingleVariableDeclaration component = ast.newSingleVariableDeclaration();
+		for (Object modifier : field.getDeclaration().modifiers()) {
+			if (((IExtendedModifier) modifier).isAnnotation()) {
+				component.modifiers().add(ASTNode.copySubtree(ast, (ASTNode) modifier));
+			}
+		}
+		component.setType(field.createType(ast));
+		component.setName(createSimpleName(ast, field));
+
+		return component;
+	}
+
+	/**
+	 * Creates the compact constructor in place of the fields, which assigns
+	 * the parameters before the fields are assigned from them:
+	 * 
+	 * <pre>
+	 * if (items != null) {
+	 * 	items = Collections.unmodifiableList(new ArrayList&lt;&gt;(items));
+	 * } else {
+	 * 	items = new ArrayList&lt;&gt;();
+	 * }
+	 * </pre>
+	 * 
+	 * @return the constructor or <code>null</code> if the canonical
+	 *         constructor of the record initializes the fields as they are
+	 */
+	private MethodDeclaration createCompactConstructor(final AST ast, final DefensiveCopyGenerator defensiveCopies) {
+		final Block body = ast.newBlock();
+		for (ConvertedField field : fields) {
+			final Statement initialization = createInitialization(ast, field, defensiveCopies);
+			if (initialization != null) {
+				body.statements().add(initialization);
+			}
+		}
+
+		if (body.statements().isEmpty()) {
+			return null;
+		}
+
+		final MethodDeclaration constructor = ast.newMethodDeclaration();
+		constructor.setConstructor(true);
+		constructor.setCompactConstructor(true);
+		constructor.modifiers().add(createPublicModifier(ast));
+		constructor.setName(ast.newSimpleName(getTypeName()));
+		constructor.setBody(body);
+
+		return constructor;
+	}
+
+	/**
+	 * Primitive fields can not be <code>null</code>, so their initializers
+	 * are dropped like the ones of the fields assigned by a constructor.
+	 */
+	private Statement createInitialization(final AST ast, final ConvertedField field,
+			final DefensiveCopyGenerator defensiveCopies) {
+		final Expression variableInitializer = field.getInitializer();
+		if (variableInitializer == null || field.isPrimitive()) {
+			final Expression value = defensiveCopies.createConstructorValue(ast, field, true);
+			return value instanceof SimpleName ? null : createParameterAssignment(ast, field, value);
+		}
+
+		final Expression value = defensiveCopies.createConstructorValue(ast, field, false);
+		final boolean copied = !(value instanceof SimpleName);
+		final IfStatement ifStatement = ast.newIfStatement();
+		ifStatement.setExpression(createInfixExpression(ast, createSimpleName(ast, field),
+				copied ? InfixExpression.Operator.NOT_EQUALS : InfixExpression.Operator.EQUALS,
+				ast.newNullLiteral()));
+		final Statement defaultAssignment = createParameterAssignment(ast, field,
+				(Expression) ASTNode.copySubtree(ast, variableInitializer));
+		if (copied) {
+			ifStatement.setThenStatement(createParameterAssignment(ast, field, value));
+			ifStatement.setElseStatement(defaultAssignment);
+		} else {
+			ifStatement.setThenStatement(defaultAssignment);
+		}
+
+		return ifStatement;
+	}
+
+	private Statement createParameterAssignment(final AST ast, final ConvertedField field,
+			final Expression value) {
+		return ast.newExpressionStatement(createAssignment(ast, createSimpleName(ast, field), value));
+	}
+
+	/**
+	 * Creates the signature of the canonical constructor invoked by the
+	 * builder.
+	 */
+	private MethodDeclaration createCanonicalSignature(final AST ast) {
+		final MethodDeclaration constructor = ast.newMethodDeclaration();
+		constructor.setConstructor(true);
+		constructor.setName(ast.newSimpleName(getTypeName()));
+		for (ConvertedField field : fields) {
+			constructor.parameters().add(createParameter(ast, field));
+		}
+
+		return constructor;
+	}
+}
@@ -0,0 +1,265 @@
+package online.devtools.eclipse.generation;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.CharacterLiteral;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.ToStringStrategy;
+
+/**
+ * Generates <code>toString</code> in the format
+ * <code>Type [field=value, ...]</code>.
+ * 
+ * The string is built by a single <code>StringBuilder</code> presized from
+ * an estimate of the length of the result, so that it is not grown and
+ * copied while appending. Depending on the {@link ToStringStrategy} the
+ * result is memoized in a field set on the first call.
+ */
+class ToStringGenerator extends MemberGenerator {
+
+	private static final String TO_STRING = "toString";
+
+	private static final String FORMAT_TO_STRING = "formatToString";
+
+	private static final String STRING_TYPE = "String";
+
+	private static final String BUILDER_TYPE = "StringBuilder";
+
+	private final Imports imports;
+
+	private final ToStringStrategy strategy;
+
+	private final String stringFieldName;
+
+	private final String stringVariableName;
+
+	private final String builderVariableName;
+
+	ToStringGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+
+		if (!codeGenerationSettings.replaceExistingDeclarations
+				&& (members.getMethod(TO_STRING) != null || members.getMethod(FORMAT_TO_STRING) != null)) {
+			this.strategy = ToStringStrategy.NONE;
+		} else {
+			this.strategy = codeGenerationSettings.toStringStrategy;
+		}
+
+		this.stringFieldName = getUniqueFieldName("string");
+		this.stringVariableName = getUniqueFieldName("s");
+		this.builderVariableName = getUniqueFieldName("builder");
+	}
+
+	/**
+	 * Adds the field memoizing the string after the given field.
+	 */
+	void addStringField(final ListRewrite listRewrite, final ASTNode insertionPoint) {
+		if (strategy != ToStringStrategy.MEMOIZED) {
+			return;
+		}
+
+		final AST ast = listRewrite.getASTRewrite().getAST();
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(stringFieldName));
+
+		final FieldDeclaration stringField = ast.newFieldDeclaration(fragment);
+		stringField.setType(createSimpleType(ast, STRING_TYPE));
+		stringField.modifiers().add(createPrivateModifier(ast));
+
+		listRewrite.insertAfter(stringField, insertionPoint, null);
+	}
+
+	/**
+	 * Adds <code>toString</code> and, if memoized, the method formatting the
+	 * string after the given member.
+	 * 
+	 * @return the last added method or the given insertion point if nothing
+	 *         was added
+	 */
+	ASTNode addMethods(final ListRewrite listRewrite, final ASTNode insertionPoint) {
+		if (strategy == ToStringStrategy.NONE) {
+			return insertionPoint;
+		}
+
+		removeMethod(members.getMethod(TO_STRING), listRewrite);
+		removeMethod(members.getMethod(FORMAT_TO_STRING), listRewrite);
+
+		final AST ast = listRewrite.getASTRewrite().getAST();
+		final Block formatBody = createFormatBody(ast);
+
+		if (strategy == ToStringStrategy.FORMATTED) {
+			final MethodDeclaration toString = createToStringMethod(ast, formatBody);
+			listRewrite.insertAfter(toString, insertionPoint, null);
+			return toString;
+		}
+
+		final MethodDeclaration toString = createToStringMethod(ast, createMemoizedBody(ast));
+		final MethodDeclaration formatToString = createMethod(ast, FORMAT_TO_STRING,
+				createSimpleType(ast, STRING_TYPE), formatBody, createPrivateModifier(ast));
+
+		listRewrite.insertAfter(toString, insertionPoint, null);
+		listRewrite.insertAfter(formatToString, toString, null);
+
+		return formatToString;
+	}
+
+	private MethodDeclaration createToStringMethod(final AST ast, final Block body) {
+		final MethodDeclaration toString = createMethod(ast, TO_STRING, createSimpleType(ast, STRING_TYPE), body,
+				createPublicModifier(ast));
+		toString.modifiers().add(0, createOverrideAnnotation(ast));
+
+		return toString;
+	}
+
+	/**
+	 * Creates the racy single-check memoizing the string. A racing thread at
+	 * most formats an equal string again, as the fields are final.
+	 */
+	private Block createMemoizedBody(final AST ast) {
+		final Block body = ast.newBlock();
+		final List<Statement> statements = body.statements();
+		statements.add(createVariable(ast, createSimpleType(ast, STRING_TYPE), stringVariableName,
+				createFieldAccess(ast, stringFieldName)));
+
+		final Block format = ast.newBlock();
+		format.statements().add(ast.newExpressionStatement(createAssignment(ast,
+				ast.newSimpleName(stringVariableName), createMethodInvocation(ast, null, FORMAT_TO_STRING))));
+		format.statements().add(ast.newExpressionStatement(createAssignment(ast,
+				createFieldAccess(ast, stringFieldName), ast.newSimpleName(stringVariableName))));
+
+		final IfStatement ifStatement = ast.newIfStatement();
+		ifStatement.setExpression(createInfixExpression(ast, ast.newSimpleName(stringVariableName),
+				InfixExpression.Operator.EQUALS, ast.newNullLiteral()));
+		ifStatement.setThenStatement(format);
+		statements.add(ifStatement);
+		statements.add(createReturnStatement(ast, ast.newSimpleName(stringVariableName)));
+
+		return body;
+	}
+
+	/**
+	 * Creates the statements formatting the string, one statement per field so
+	 * that classes with many fields do not produce deeply nested invocations.
+	 */
+	private Block createFormatBody(final AST ast) {
+		final Block body = ast.newBlock();
+		final List<Statement> statements = body.statements();
+
+		final ClassInstanceCreation newBuilder = ast.newClassInstanceCreation();
+		newBuilder.setType(createSimpleType(ast, BUILDER_TYPE));
+		newBuilder.arguments().add(ast.newNumberLiteral(Integer.toString(estimateLength())));
+		statements.add(createVariable(ast, createSimpleType(ast, BUILDER_TYPE), builderVariableName, newBuilder));
+
+		String separator = getTypeName() + " [";
+		for (ConvertedField field : fields) {
+			final Expression label = createAppend(ast, ast.newSimpleName(builderVariableName),
+					createStringLiteral(ast, separator + field.getName() + "="));
+			statements.add(ast.newExpressionStatement(createAppend(ast, label, createFieldValue(ast, field))));
+			separator = ", ";
+		}
+
+		final Expression end;
+		if (fields.isEmpty()) {
+			end = createStringLiteral(ast, separator + "]");
+		} else {
+			end = ast.newCharacterLiteral();
+			((CharacterLiteral) end).setCharValue(']');
+		}
+		statements.add(ast.newExpressionStatement(createAppend(ast, ast.newSimpleName(builderVariableName), end)));
+		statements.add(createReturnStatement(ast,
+				createMethodInvocation(ast, ast.newSimpleName(builderVariableName), TO_STRING)));
+
+		return body;
+	}
+
+	/**
+	 * Arrays are formatted by their elements instead of their identity, absent
+	 * unboxed values as <code>null</code>. Fields with a primitive storage are
+	 * formatted through the view returned by their getter, like the collection
+	 * they were created from.
+	 */
+	private Expression createFieldValue(final AST ast, final ConvertedField field) {
+		final Expression value = createFieldAccess(ast, field);
+		if (isUnboxed(field)) {
+			return createBoxedValue(ast, field);
+		} else if (hasPrimitiveStorage(field)) {
+			return createMethodInvocation(ast, null, field.getGetterName());
+		} else if (field.getDimensions() > 1) {
+			return createStaticInvocation(ast, imports, "java.util.Arrays", "deepToString", value);
+		} else if (field.getDimensions() == 1) {
+			return createStaticInvocation(ast, imports, "java.util.Arrays", TO_STRING, value);
+		}
+
+		return value;
+	}
+
+	/**
+	 * Estimates the length of the string from the names and the types of the
+	 * fields.
+	 */
+	private int estimateLength() {
+		int length = getTypeName().length() + 3;
+		for (ConvertedField field : fields) {
+			length += field.getName().length() + 3 + estimateValueLength(field);
+		}
+
+		return length;
+	}
+
+	/**
+	 * Estimates the length of the formatted value of a field: the maximal
+	 * length for the primitives with short values, a typical length for the
+	 * rest.
+	 */
+	static int estimateValueLength(final ConvertedField field) {
+		final String signature = field.getTypeSignature();
+		if (Signature.getTypeSignatureKind(signature) != Signature.BASE_TYPE_SIGNATURE) {
+			return field.getDimensions() > 0 || Signature.getTypeArguments(signature).length > 0 ? 32 : 16;
+		}
+
+		switch (signature.charAt(0)) {
+		case Signature.C_BOOLEAN:
+			return 5;
+		case Signature.C_CHAR:
+			return 1;
+		case Signature.C_BYTE:
+			return 4;
+		case Signature.C_SHORT:
+			return 6;
+		case Signature.C_INT:
+			return 11;
+		case Signature.C_LONG:
+			return 20;
+		default:
+			return 16;
+		}
+	}
+
+	private Expression createAppend(final AST ast, final Expression target, final Expression value) {
+		return createMethodInvocation(ast, target, "append", value);
+	}
+
+	private StringLiteral createStringLiteral(final AST ast, final String value) {
+		final StringLiteral literal = ast.newStringLiteral();
+		literal.setLiteralValue(value);
+
+		return literal;
+	}
+}
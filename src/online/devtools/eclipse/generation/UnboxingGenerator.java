@@ -0,0 +1,117 @@
+package online.devtools.eclipse.generation;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.UnboxingStrategy;
+
+/**
+ * Stores the fields of the wrapper types as primitives according to the
+ * {@link UnboxingStrategy} of the settings.
+ * 
+ * The constructor and the builder keep taking the wrapper types. Whether a
+ * value was <code>null</code> is recorded in a bit of the presence mask, an
+ * <code>int</code> or for more than 32 unboxed fields a <code>long</code>,
+ * and the absent values are stored as the default value of the primitive
+ * type.
+ */
+class UnboxingGenerator extends MemberGenerator {
+
+	private final Imports imports;
+
+	UnboxingGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+	}
+
+	/**
+	 * Changes the types of the unboxed fields to the primitive types and adds
+	 * the presence mask after the given field.
+	 */
+	void addPresenceMask(final ListRewrite listRewrite, final ASTNode insertionPoint) {
+		if (!hasPresenceMask()) {
+			return;
+		}
+
+		final ASTRewrite astRewrite = listRewrite.getASTRewrite();
+		final AST ast = astRewrite.getAST();
+		for (ConvertedField field : fields) {
+			if (isUnboxed(field)) {
+				astRewrite.set(field.getDeclaration(), FieldDeclaration.TYPE_PROPERTY,
+						ast.newPrimitiveType(field.getWrappedTypeCode()), null);
+			}
+		}
+
+		final VariableDeclarationFragment fragment = ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(getPresenceMaskName()));
+
+		final FieldDeclaration presenceMask = ast.newFieldDeclaration(fragment);
+		presenceMask.setType(ast.newPrimitiveType(isLongPresenceMask() ? PrimitiveType.LONG : PrimitiveType.INT));
+		presenceMask.modifiers().add(createPrivateModifier(ast));
+		presenceMask.modifiers().add(createFinalModifier(ast));
+
+		listRewrite.insertAfter(presenceMask, insertionPoint, null);
+	}
+
+	/**
+	 * Creates the return type of the getter of an unboxed field, the
+	 * primitive optional with {@link UnboxingStrategy#OPTIONAL} or the wrapper
+	 * type of the field.
+	 */
+	Type createGetterType(final AST ast, final ConvertedField field) {
+		final String optionalType = getOptionalType(field);
+		return optionalType == null ? field.createType(ast) : createSimpleType(ast, imports.addImport(optionalType));
+	}
+
+	/**
+	 * Creates the value returned by the getter of an unboxed field.
+	 */
+	Expression createGetterValue(final AST ast, final ConvertedField field) {
+		final String optionalType = getOptionalType(field);
+		if (optionalType == null) {
+			return createBoxedValue(ast, field);
+		}
+
+		final ConditionalExpression value = ast.newConditionalExpression();
+		value.setExpression(createPresenceCheck(ast, field, true));
+		value.setThenExpression(
+				createStaticInvocation(ast, imports, optionalType, "of", createFieldAccess(ast, field)));
+		value.setElseExpression(createStaticInvocation(ast, imports, optionalType, "empty"));
+
+		return value;
+	}
+
+	/**
+	 * @return the qualified name of the primitive optional returned for the
+	 *         field or <code>null</code> if the getter returns the wrapper
+	 *         type
+	 */
+	private String getOptionalType(final ConvertedField field) {
+		if (codeGenerationSettings.unboxingStrategy != UnboxingStrategy.OPTIONAL) {
+			return null;
+		}
+
+		final PrimitiveType.Code primitiveType = field.getWrappedTypeCode();
+		if (primitiveType == PrimitiveType.INT) {
+			return "java.util.OptionalInt";
+		} else if (primitiveType == PrimitiveType.LONG) {
+			return "java.util.OptionalLong";
+		} else if (primitiveType == PrimitiveType.DOUBLE) {
+			return "java.util.OptionalDouble";
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,250 @@
+package online.devtools.eclipse.generation;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+
+/**
+ * Generates the <code>withX</code> methods returning a copy of the instance
+ * with a single field changed.
+ * 
+ * The instance itself is returned when the new value equals the current one.
+ * Otherwise the copy shares the values of the unchanged fields. When the
+ * constructor copies collections or arrays, the copy is created by a private
+ * constructor taking the values as they are, so that only the new value is
+ * copied. The unboxed fields are passed as their wrapper types, like to the
+ * regular constructor, while the primitive arrays of the collections are
+ * shared as well.
+ */
+class WitherGenerator extends MemberGenerator {
+
+	static final String WITHER_PREFIX = "with";
+
+	private final Imports imports;
+
+	private final DefensiveCopyGenerator defensiveCopies;
+
+	private final PrimitiveStorageGenerator primitiveStorage;
+
+	private final HashCodeGenerator hashCodeGenerator;
+
+	private final boolean sharingConstructor;
+
+	private final String sharedParameterName;
+
+	private final String storedVariableName;
+
+	/**
+	 * @param constructorGenerated
+	 *            whether the constructor assigning the fields is generated.
+	 *            Only then the values are known to be copied by it and the
+	 *            sharing constructor is needed
+	 */
+	WitherGenerator(final MemberIndex members, final List<ConvertedField> fields,
+			final CodeSettings codeGenerationSettings, final Imports imports,
+			final DefensiveCopyGenerator defensiveCopies, final PrimitiveStorageGenerator primitiveStorage,
+			final HashCodeGenerator hashCodeGenerator, final boolean constructorGenerated) {
+		super(members, fields, codeGenerationSettings);
+		this.imports = imports;
+		this.defensiveCopies = defensiveCopies;
+		this.primitiveStorage = primitiveStorage;
+		this.hashCodeGenerator = hashCodeGenerator;
+		this.sharingConstructor = constructorGenerated && isAnyFieldCopied()
+				&& (members.getConstructor(getSharingConstructorTypes()) == null
+						|| codeGenerationSettings.replaceExistingDeclarations);
+		this.sharedParameterName = getUniqueFieldName("shared");
+		this.storedVariableName = getUniqueFieldName("stored");
+	}
+
+	/**
+	 * Adds the <code>withX</code> methods after the given member, followed by
+	 * the constructor sharing the values if it is needed.
+	 * 
+	 * @return the last added member or the given insertion point if nothing
+	 *         was added
+	 */
+	ASTNode addMethods(final ListRewrite listRewrite, final ASTNode insertionPoint) {
+		final AST ast = listRewrite.getASTRewrite().getAST();
+		ASTNode lastMember = insertionPoint;
+
+		for (ConvertedField field : fields) {
+			final String methodName = WITHER_PREFIX + capitalize(field.getName());
+			if (replaceExisting(members.getMethod(methodName, field.getErasure()), listRewrite)) {
+				final MethodDeclaration wither = createWither(ast, field, methodName);
+				listRewrite.insertAfter(wither, lastMember, null);
+				lastMember = wither;
+			}
+		}
+
+		if (sharingConstructor && lastMember != insertionPoint) {
+			removeMethod(members.getConstructor(getSharingConstructorTypes()), listRewrite);
+			final MethodDeclaration constructor = createSharingConstructor(ast);
+			listRewrite.insertAfter(constructor, lastMember, null);
+			lastMember = constructor;
+		}
+
+		return lastMember;
+	}
+
+	private MethodDeclaration createWither(final AST ast, final ConvertedField field, final String methodName) {
+		final Block body = ast.newBlock();
+		final boolean stored = hasPrimitiveStorage(field);
+		if (stored) {
+			body.statements().add(createVariable(ast, primitiveStorage.createStorageType(ast, field),
+					storedVariableName, primitiveStorage.createStoredValue(ast, field)));
+		}
+
+		final IfStatement unchanged = ast.newIfStatement();
+		unchanged.setExpression(stored
+				? createValueComparison(ast, imports, field, createThisPrefixedFieldAccess(ast, field),
+						ast.newSimpleName(storedVariableName), true)
+				: createUnchangedCheck(ast, field));
+		unchanged.setThenStatement(createThisReturnStatement(ast));
+		body.statements().add(unchanged);
+
+		final ClassInstanceCreation copy = ast.newClassInstanceCreation();
+		copy.setType(createInstanceType(ast, true));
+		for (ConvertedField argument : fields) {
+			if (!sharingConstructor && argument == field) {
+				copy.arguments().add(createSimpleName(ast, field));
+			} else if (argument == field) {
+				copy.arguments().add(stored ? ast.newSimpleName(storedVariableName) : createChangedValue(ast, field));
+			} else if (!sharingConstructor && hasPrimitiveStorage(argument)) {
+				copy.arguments().add(createMethodInvocation(ast, null, argument.getGetterName()));
+			} else if (isUnboxed(argument)) {
+				copy.arguments().add(createBoxedValue(ast, argument));
+			} else {
+				copy.arguments().add(createFieldAccess(ast, argument));
+			}
+		}
+		if (sharingConstructor) {
+			copy.arguments().add(ast.newBooleanLiteral(true));
+		}
+		body.statements().add(createReturnStatement(ast, copy));
+
+		final MethodDeclaration wither = createMethod(ast, methodName, createInstanceType(ast, false), body,
+				createPublicModifier(ast));
+		wither.parameters().add(createParameter(ast, field));
+
+		return wither;
+	}
+
+	/**
+	 * Creates the check whether the new value equals the current one. An
+	 * unboxed field is unchanged if both values are present and equal or both
+	 * are absent.
+	 */
+	private Expression createUnchangedCheck(final AST ast, final ConvertedField field) {
+		final Expression equal = createValueComparison(ast, imports, field, createThisPrefixedFieldAccess(ast, field),
+				createSimpleName(ast, field), true);
+		if (!isUnboxed(field)) {
+			return equal;
+		}
+
+		final ConditionalExpression unchanged = ast.newConditionalExpression();
+		unchanged.setExpression(createInfixExpression(ast, createSimpleName(ast, field),
+				InfixExpression.Operator.NOT_EQUALS, ast.newNullLiteral()));
+		unchanged.setThenExpression(createInfixExpression(ast, createPresenceCheck(ast, field, true),
+				InfixExpression.Operator.CONDITIONAL_AND, equal));
+		unchanged.setElseExpression(createPresenceCheck(ast, field, false));
+
+		return unchanged;
+	}
+
+	/**
+	 * Creates the value of the changed field passed to the sharing
+	 * constructor, applying the defensive copy and the default value of the
+	 * field as the regular constructor does.
+	 */
+	private Expression createChangedValue(final AST ast, final ConvertedField field) {
+		final Expression initializer = field.getInitializer();
+		if (initializer == null || field.isPrimitive()) {
+			return defensiveCopies.createWitherValue(ast, field);
+		}
+
+		final ConditionalExpression value = ast.newConditionalExpression();
+		value.setExpression(createInfixExpression(ast, createSimpleName(ast, field),
+				InfixExpression.Operator.NOT_EQUALS, ast.newNullLiteral()));
+		value.setThenExpression(defensiveCopies.createWitherValue(ast, field));
+		value.setElseExpression((Expression) ASTNode.copySubtree(ast, initializer));
+
+		return value;
+	}
+
+	/**
+	 * Creates the private constructor assigning the values without copying
+	 * them, taking the fields with a primitive storage as their arrays. The
+	 * trailing flag only distinguishes it from the regular constructor.
+	 */
+	private MethodDeclaration createSharingConstructor(final AST ast) {
+		final Block body = ast.newBlock();
+		final MethodDeclaration constructor = ast.newMethodDeclaration();
+		constructor.setConstructor(true);
+		constructor.setName(ast.newSimpleName(getTypeName()));
+		constructor.modifiers().add(createPrivateModifier(ast));
+
+		for (ConvertedField field : fields) {
+			body.statements().add(ast.newExpressionStatement(isUnboxed(field)
+					? createAssignment(ast, field, createUnboxedValue(ast, field)) : createAssignment(ast, field)));
+			final SingleVariableDeclaration parameter = createParameter(ast, field);
+			if (hasPrimitiveStorage(field)) {
+				parameter.setType(primitiveStorage.createStorageType(ast, field));
+			}
+			constructor.parameters().add(parameter);
+		}
+
+		final SingleVariableDeclaration shared = ast.newSingleVariableDeclaration();
+		shared.setType(ast.newPrimitiveType(PrimitiveType.BOOLEAN));
+		shared.setName(ast.newSimpleName(sharedParameterName));
+		if (codeGenerationSettings.makeParametersFinal) {
+			shared.modifiers().add(createFinalModifier(ast));
+		}
+		constructor.parameters().add(shared);
+
+		if (hasPresenceMask()) {
+			body.statements().add(createPresenceMaskInitialization(ast));
+		}
+		final Statement hashInitialization = hashCodeGenerator.createHashInitialization(ast);
+		if (hashInitialization != null) {
+			body.statements().add(hashInitialization);
+		}
+		constructor.setBody(body);
+
+		return constructor;
+	}
+
+	private boolean isAnyFieldCopied() {
+		for (ConvertedField field : fields) {
+			if (defensiveCopies.isCopied(field) || hasPrimitiveStorage(field)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private String[] getSharingConstructorTypes() {
+		final String[] parameterTypes = new String[fields.size() + 1];
+		for (int i = 0; i < fields.size(); i++) {
+			final PrimitiveStorage storage = getPrimitiveStorage(fields.get(i));
+			parameterTypes[i] = storage == null ? fields.get(i).getErasure() : storage.getArrayType() + "[]";
+		}
+		parameterTypes[fields.size()] = "boolean";
+
+		return parameterTypes;
+	}
+}
@@ -0,0 +1,245 @@
+package online.devtools.eclipse.handlers;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobGroup;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.PlatformUI;
+
+import online.devtools.eclipse.generation.CallSiteChanges;
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.GenerationTools;
+
+/**
+ * Converts the primary type of every compilation unit found in the selected
+ * Java elements.
+ * 
+ * The changes of the compilation units are computed by a job each, so
+ * conversions of different files run in parallel. The jobs share a
+ * {@link JobGroup} bounded by the number of available processors and only
+ * read the compilation units. Once all of them are done the call sites in
+ * the rest of the workspace broken by the conversions are migrated, and all
+ * changes are applied together in one workspace operation, which triggers a
+ * single build and is undone as a single step.
+ */
+class BulkCodeGenerationJob extends Job {
+
+	private static final String TITLE = "Convert to Immutable";
+
+	private final List<IJavaElement> elements;
+
+	private final ConversionOptions options;
+
+	private final AtomicInteger skipped = new AtomicInteger();
+
+	private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+
+	private final Map<IType, CallSiteChanges> callSiteChanges = new ConcurrentHashMap<>();
+
+	private final Queue<ICompilationUnit> convertedCompilationUnits = new ConcurrentLinkedQueue<>();
+
+	private List<String> unmigratedCallSites = Collections.emptyList();
+
+	private final Queue<IStatus> failures = new ConcurrentLinkedQueue<>();
+
+	BulkCodeGenerationJob(final List<IJavaElement> elements, final ConversionOptions options) {
+		super(TITLE);
+		this.elements = elements;
+		this.options = options;
+		setUser(true);
+	}
+
+	@Override
+
+	protected IStatus run(IProgressMonitor monitor) {
+		final SubMonitor progress = SubMonitor.convert(monitor, TITLE, 110);
+		final Collection<ICompilationUnit> compilationUnits;
+
+		try {
+			compilationUnits = collectCompilationUnits(progress.split(10));
+		} catch (JavaModelException e) {
+			return e.getStatus();
+		}
+
+		final JobGroup group = new JobGroup(TITLE, Math.max(1, Runtime.getRuntime().availableProcessors()),
+				compilationUnits.size());
+		final Map<IJavaProject, CodeSettings> settings = new HashMap<>();
+
+		for (ICompilationUnit compilationUnit : compilationUnits) {
+			final CodeSettings codeSettings = settings.computeIfAbsent(compilationUnit.getJavaProject(),
+					options::createCodeSettings);
+			final Job job = new ConversionJob(compilationUnit, codeSettings);
+			job.setJobGroup(group);
+			job.schedule();
+		}
+
+		try {
+			group.join(0, progress.split(70));
+		} catch (OperationCanceledException e) {
+			group.cancel();
+			return Status.CANCEL_STATUS;
+		} catch (InterruptedException e) {
+			group.cancel();
+			Thread.currentThread().interrupt();
+			return Status.CANCEL_STATUS;
+		}
+
+		if (progress.isCanceled()) {
+			return Status.CANCEL_STATUS;
+		}
+
+		int converted = 0;
+		if (!changes.isEmpty()) {
+			final int convertedChanges = changes.size();
+			try {
+				final CallSiteMigration callSiteMigration = new CallSiteMigration(callSiteChanges,
+						convertedCompilationUnits);
+				final Change migration = callSiteMigration.createChange(progress.split(10));
+				unmigratedCallSites = callSiteMigration.getUnmigratedCallSites();
+				if (migration != null) {
+					changes.add(migration);
+				}
+				CodeGenerationOperation.perform(new CompositeChange(TITLE, changes.toArray(new Change[0])),
+						ResourcesPlugin.getWorkspace().getRoot(), progress.split(20));
+				converted = convertedChanges;
+			} catch (CoreException e) {
+				failures.add(e.getStatus());
+			}
+		}
+
+		return report(converted, compilationUnits.size());
+	}
+
+	private IStatus report(int converted, int total) {
+		final String summary = String.format("Converted %d of %d compilation units, skipped %d, failed %d.",
+				converted, total, skipped.get(), failures.size());
+		final String unmigrated = CallSiteMigration.describe(unmigratedCallSites);
+
+		if (!failures.isEmpty()) {
+			return new MultiStatus(GenerationTools.PLUGIN_ID, 0, failures.toArray(new IStatus[0]),
+					summary, null);
+		}
+
+		final Display display = PlatformUI.getWorkbench().getDisplay();
+		if (unmigrated.isEmpty()) {
+			display.asyncExec(() -> MessageDialog.openInformation(display.getActiveShell(), TITLE, summary));
+		} else {
+			display.asyncExec(() -> MessageDialog.openWarning(display.getActiveShell(), TITLE,
+					summary + "\n\n" + unmigrated));
+		}
+
+		return Status.OK_STATUS;
+	}
+
+	private Collection<ICompilationUnit> collectCompilationUnits(IProgressMonitor monitor)
+			throws JavaModelException {
+		final SubMonitor progress = SubMonitor.convert(monitor, elements.size());
+		final Set<ICompilationUnit> compilationUnits = new LinkedHashSet<>();
+
+		for (IJavaElement element : elements) {
+			collectCompilationUnits(element, compilationUnits);
+			progress.split(1);
+		}
+
+		return compilationUnits;
+	}
+
+	private void collectCompilationUnits(final IJavaElement element, final Set<ICompilationUnit> compilationUnits)
+			throws JavaModelException {
+		switch (element.getElementType()) {
+		case IJavaElement.JAVA_PROJECT:
+			for (IPackageFragmentRoot root : ((IJavaProject) element).getPackageFragmentRoots()) {
+				collectCompilationUnits(root, compilationUnits);
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+			final IPackageFragmentRoot root = (IPackageFragmentRoot) element;
+			if (root.getKind() == IPackageFragmentRoot.K_SOURCE) {
+				for (IJavaElement child : root.getChildren()) {
+					collectCompilationUnits(child, compilationUnits);
+				}
+			}
+			break;
+		case IJavaElement.PACKAGE_FRAGMENT:
+			compilationUnits.addAll(Arrays.asList(((IPackageFragment) element).getCompilationUnits()));
+			break;
+		case IJavaElement.COMPILATION_UNIT:
+			compilationUnits.add((ICompilationUnit) element);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private class ConversionJob extends Job {
+
+		private final ICompilationUnit compilationUnit;
+
+		private final CodeSettings codeSettings;
+
+		ConversionJob(final ICompilationUnit compilationUnit, final CodeSettings codeSettings) {
+			super("Converting " + compilationUnit.getElementName());
+			this.compilationUnit = compilationUnit;
+			this.codeSettings = codeSettings;
+			setSystem(true);
+		}
+
+		@Override
+
+		protected IStatus run(IProgressMonitor monitor) {
+			try {
+				final IType type = compilationUnit.findPrimaryType();
+				final IField[] fields = type != null && type.isClass() ? FieldsProvider.getInstanceFields(type)
+						: new IField[0];
+
+				if (fields.length == 0) {
+					skipped.incrementAndGet();
+				} else {
+					final CodeGenerationOperation operation = new CodeGenerationOperation(fields, codeSettings);
+					changes.add(operation.createChange(monitor));
+					convertedCompilationUnits.add(compilationUnit);
+					final CallSiteChanges typeChanges = operation.getCallSiteChanges();
+					if (typeChanges != null && !typeChanges.isEmpty()) {
+						callSiteChanges.put(type, typeChanges);
+					}
+				}
+			} catch (CoreException e) {
+				failures.add(new Status(IStatus.ERROR, GenerationTools.PLUGIN_ID,
+						compilationUnit.getElementName() + ": " + e.getMessage(), e));
+			}
+
+			return Status.OK_STATUS;
+		}
+	}
+}
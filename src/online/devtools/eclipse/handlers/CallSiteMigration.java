@@ -0,0 +1,373 @@
+package online.devtools.eclipse.handlers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.NodeFinder;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SimpleType;
+import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.refactoring.CompilationUnitChange;
+import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.jdt.core.search.SearchEngine;
+import org.eclipse.jdt.core.search.SearchMatch;
+import org.eclipse.jdt.core.search.SearchParticipant;
+import org.eclipse.jdt.core.search.SearchPattern;
+import org.eclipse.jdt.core.search.SearchRequestor;
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
+import org.eclipse.ltk.core.refactoring.TextFileChange;
+
+import online.devtools.eclipse.generation.CallSiteChanges;
+import online.devtools.eclipse.generation.CallSiteRewriter;
+import online.devtools.eclipse.generation.ImmutableClassGenerator;
+import online.devtools.eclipse.handlers.tools.GenerationTools;
+
+/**
+ * Computes the change migrating the call sites in the workspace which are
+ * broken by the conversion of one or more types, see
+ * {@link CallSiteRewriter}.
+ * 
+ * The references to all constructors and setters are found by a single
+ * query of the search index, so the workspace is not scanned once per type
+ * or method. Only the compilation units containing a match are parsed, without
+ * bindings, and they are rewritten in parallel.
+ * 
+ * The compilation units changed by the conversion can not be changed by a
+ * second edit. Their calls of their own types are changed by the conversion,
+ * their calls of other converted types are listed as not migrated.
+ */
+class CallSiteMigration {
+
+	private static final String TITLE = "Migrate call sites";
+
+	private static final int MAX_LISTED_CALL_SITES = 20;
+
+	private final Map<IType, CallSiteChanges> changes;
+
+	private final Set<ICompilationUnit> convertedCompilationUnits;
+
+	private final Queue<String> unmigratedCallSites = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * @param convertedCompilationUnits
+	 *            the compilation units changed by the conversion, whose call
+	 *            sites of other converted types are listed as not migrated,
+	 *            as they can not be changed by a second edit
+	 */
+	CallSiteMigration(final Map<IType, CallSiteChanges> changes,
+			final Collection<ICompilationUnit> convertedCompilationUnits) {
+		this.changes = changes;
+		this.convertedCompilationUnits = new HashSet<>(convertedCompilationUnits);
+	}
+
+	/**
+	 * Computes the change without applying it. The search has to run before
+	 * the conversion is applied, as it looks for the removed declarations.
+	 * 
+	 * @return the change or <code>null</code> if no call site is migrated
+	 */
+	Change createChange(final IProgressMonitor monitor) throws CoreException {
+		final SubMonitor progress = SubMonitor.convert(monitor, TITLE, 100);
+		final SearchPattern pattern = createPattern();
+		if (pattern == null) {
+			return null;
+		}
+
+		progress.subTask("Searching call sites");
+		final Map<ICompilationUnit, List<SearchMatch>> convertedMatches = new LinkedHashMap<>();
+		final Map<ICompilationUnit, List<SearchMatch>> matches = search(pattern, convertedMatches,
+				progress.split(40));
+		for (Map.Entry<ICompilationUnit, List<SearchMatch>> entry : convertedMatches.entrySet()) {
+			addCallSitesOfOtherTypes(entry.getKey(), entry.getValue());
+		}
+		if (matches.isEmpty()) {
+			return null;
+		}
+
+		progress.subTask("Rewriting call sites in " + matches.size() + " compilation units");
+		final CallSiteRewriter rewriter = new CallSiteRewriter(changes.values());
+		final Queue<Change> unitChanges = new ConcurrentLinkedQueue<>();
+		final Queue<IStatus> failures = new ConcurrentLinkedQueue<>();
+		matches.entrySet().parallelStream().forEach(entry -> {
+			if (progress.isCanceled()) {
+				return;
+			}
+
+			try {
+				final Change change = rewrite(rewriter, entry.getKey(), entry.getValue());
+				if (change != null) {
+					unitChanges.add(change);
+				}
+			} catch (CoreException e) {
+				failures.add(new Status(IStatus.ERROR, GenerationTools.PLUGIN_ID,
+						entry.getKey().getElementName() + ": " + e.getMessage(), e));
+			}
+		});
+		// throws the cancellation, which the rewrite checks between the compilation units
+		progress.split(60);
+
+		if (!failures.isEmpty()) {
+			throw new CoreException(new MultiStatus(GenerationTools.PLUGIN_ID, 0, failures.toArray(new IStatus[0]),
+					"Failed to migrate the call sites of the converted types.", null));
+		}
+
+		return unitChanges.isEmpty() ? null : new CompositeChange(TITLE, unitChanges.toArray(new Change[0]));
+	}
+
+	/**
+	 * @return the pattern matching the references to the constructors which
+	 *         become private and to the removed setters, or <code>null</code>
+	 *         if there are none
+	 */
+	private SearchPattern createPattern() throws JavaModelException {
+		SearchPattern pattern = null;
+		for (Map.Entry<IType, CallSiteChanges> entry : changes.entrySet()) {
+			for (IMethod method : getChangedMethods(entry.getKey(), entry.getValue())) {
+				final SearchPattern methodPattern = SearchPattern.createPattern(method,
+						IJavaSearchConstants.REFERENCES);
+				pattern = pattern == null ? methodPattern : SearchPattern.createOrPattern(pattern, methodPattern);
+			}
+		}
+
+		return pattern;
+	}
+
+	private static List<IMethod> getChangedMethods(final IType type, final CallSiteChanges typeChanges)
+			throws JavaModelException {
+		final List<IMethod> methods = new ArrayList<>();
+		if (typeChanges.getCreation() != CallSiteChanges.Creation.UNCHANGED) {
+			final List<String> fieldNames = typeChanges.getFieldNames();
+			final String[] parameterTypes = new String[fieldNames.size()];
+			for (int i = 0; i < parameterTypes.length; i++) {
+				parameterTypes[i] = type.getField(fieldNames.get(i)).getTypeSignature();
+			}
+			addDeclared(type, type.getMethod(type.getElementName(), parameterTypes), methods);
+		}
+
+		for (Map.Entry<String, String> setter : typeChanges.getRemovedSetters().entrySet()) {
+			addDeclared(type, type.getMethod(setter.getKey(),
+					new String[] { type.getField(setter.getValue()).getTypeSignature() }), methods);
+		}
+
+		return methods;
+	}
+
+	/**
+	 * Adds the declared method matching the given handle, whose parameter
+	 * types may be written differently.
+	 */
+	private static void addDeclared(final IType type, final IMethod method, final List<IMethod> methods) {
+		final IMethod[] declared = type.findMethods(method);
+		if (declared != null) {
+			for (IMethod declaredMethod : declared) {
+				methods.add(declaredMethod);
+			}
+		}
+	}
+
+	/**
+	 * @param convertedMatches
+	 *            filled with the matches in the converted compilation units
+	 * @return the matches in the other compilation units
+	 */
+	private Map<ICompilationUnit, List<SearchMatch>> search(final SearchPattern pattern,
+			final Map<ICompilationUnit, List<SearchMatch>> convertedMatches, final IProgressMonitor monitor)
+			throws CoreException {
+		final Map<ICompilationUnit, List<SearchMatch>> matches = new LinkedHashMap<>();
+		final SearchRequestor requestor = new SearchRequestor() {
+			@Override
+			public void acceptSearchMatch(final SearchMatch match) {
+				if (match.getAccuracy() != SearchMatch.A_ACCURATE || match.isInsideDocComment()
+						|| !(match.getElement() instanceof IJavaElement)) {
+					return;
+				}
+
+				final ICompilationUnit compilationUnit = (ICompilationUnit) ((IJavaElement) match.getElement())
+						.getAncestor(IJavaElement.COMPILATION_UNIT);
+				if (compilationUnit != null) {
+					(convertedCompilationUnits.contains(compilationUnit) ? convertedMatches : matches)
+							.computeIfAbsent(compilationUnit, unit -> new ArrayList<>()).add(match);
+				}
+			}
+		};
+
+		new SearchEngine().search(pattern, new SearchParticipant[] { SearchEngine.getDefaultSearchParticipant() },
+				SearchEngine.createWorkspaceScope(), requestor, monitor);
+
+		return matches;
+	}
+
+	/**
+	 * @return the change of the compilation unit or <code>null</code> if none
+	 *         of its call sites can be migrated
+	 */
+	private Change rewrite(final CallSiteRewriter rewriter, final ICompilationUnit compilationUnit,
+			final List<SearchMatch> matches) throws CoreException {
+		final ASTParser parser = ASTParser.newParser(ImmutableClassGenerator.AST_LEVEL);
+		parser.setSource(compilationUnit);
+		final CompilationUnit ast = (CompilationUnit) parser.createAST(null);
+		final ASTRewrite astRewrite = ASTRewrite.create(ast.getAST());
+
+		final Set<Integer> offsets = new HashSet<>();
+		boolean rewritten = false;
+		for (SearchMatch match : matches) {
+			if (offsets.add(match.getOffset())) {
+				if (rewriter.rewrite(astRewrite, NodeFinder.perform(ast, match.getOffset(), match.getLength()))) {
+					rewritten = true;
+				} else {
+					unmigratedCallSites
+							.add(compilationUnit.getElementName() + ":" + ast.getLineNumber(match.getOffset()));
+				}
+			}
+		}
+
+		if (!rewritten) {
+			return null;
+		}
+
+		final CompilationUnitChange change = new CompilationUnitChange(
+				"Migrate call sites in " + compilationUnit.getElementName(), compilationUnit);
+		change.setEdit(astRewrite.rewriteAST());
+		change.setSaveMode(TextFileChange.FORCE_SAVE);
+		change.initializeValidationData(new NullProgressMonitor());
+
+		return change;
+	}
+
+	/**
+	 * Adds the call sites of a converted compilation unit to the ones which
+	 * could not be migrated, unless they only concern the types declared in
+	 * it. Without bindings, a setter is taken for one of these types if no
+	 * other converted type removes a setter of the same name.
+	 */
+	private void addCallSitesOfOtherTypes(final ICompilationUnit compilationUnit, final List<SearchMatch> matches) {
+		final Set<String> ownTypeNames = new HashSet<>();
+		final Set<String> otherTypeNames = new HashSet<>();
+		final Set<String> otherSetterNames = new HashSet<>();
+		for (Map.Entry<IType, CallSiteChanges> entry : changes.entrySet()) {
+			if (compilationUnit.equals(entry.getKey().getCompilationUnit())) {
+				ownTypeNames.add(entry.getValue().getTypeName());
+			} else {
+				otherTypeNames.add(entry.getValue().getTypeName());
+				otherSetterNames.addAll(entry.getValue().getRemovedSetters().keySet());
+			}
+		}
+
+		final ASTParser parser = ASTParser.newParser(ImmutableClassGenerator.AST_LEVEL);
+		parser.setSource(compilationUnit);
+		final CompilationUnit ast = (CompilationUnit) parser.createAST(null);
+		for (SearchMatch match : matches) {
+			final ASTNode node = NodeFinder.perform(ast, match.getOffset(), match.getLength());
+			if (isCallOfOtherType(node, ownTypeNames, otherTypeNames, otherSetterNames)) {
+				unmigratedCallSites.add(compilationUnit.getElementName() + ":" + ast.getLineNumber(match.getOffset()));
+			}
+		}
+	}
+
+	/**
+	 * @return whether the call site at the node creates or extends a type
+	 *         which is not declared in its compilation unit, or invokes a
+	 *         setter removed from such a type
+	 */
+	private static boolean isCallOfOtherType(final ASTNode node, final Set<String> ownTypeNames,
+			final Set<String> otherTypeNames, final Set<String> otherSetterNames) {
+		for (ASTNode current = node; current != null; current = current.getParent()) {
+			if (current instanceof ClassInstanceCreation) {
+				return isOtherType(((ClassInstanceCreation) current).getType(), ownTypeNames, otherTypeNames);
+			} else if (current instanceof MethodInvocation) {
+				return otherSetterNames.contains(((MethodInvocation) current).getName().getIdentifier());
+			} else if (current instanceof ConstructorInvocation) {
+				return false;
+			} else if (current instanceof SuperConstructorInvocation) {
+				ASTNode declaringType = current.getParent();
+				while (declaringType != null && !(declaringType instanceof TypeDeclaration)) {
+					declaringType = declaringType.getParent();
+				}
+				final Type superclass = declaringType == null ? null
+						: ((TypeDeclaration) declaringType).getSuperclassType();
+				return superclass == null || isOtherType(superclass, ownTypeNames, otherTypeNames);
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean isOtherType(final Type type, final Set<String> ownTypeNames,
+			final Set<String> otherTypeNames) {
+		final Type rawType = type.isParameterizedType() ? ((ParameterizedType) type).getType() : type;
+		if (!rawType.isSimpleType()) {
+			return true;
+		}
+
+		final Name name = ((SimpleType) rawType).getName();
+		final String typeName = name.isSimpleName() ? ((SimpleName) name).getIdentifier()
+				: ((QualifiedName) name).getName().getIdentifier();
+		return !ownTypeNames.contains(typeName) || otherTypeNames.contains(typeName);
+	}
+
+	/**
+	 * @return the call sites which could not be migrated, as the name of the
+	 *         compilation unit and the line, which are left as compile errors
+	 */
+	List<String> getUnmigratedCallSites() {
+		return new ArrayList<>(unmigratedCallSites);
+	}
+
+	/**
+	 * Describes the call sites left to be migrated by hand for the summary of
+	 * the conversion.
+	 * 
+	 * @return the description or an empty string if there are none
+	 */
+	static String describe(final List<String> unmigratedCallSites) {
+		if (unmigratedCallSites.isEmpty()) {
+			return "";
+		}
+
+		final List<String> sorted = new ArrayList<>(unmigratedCallSites);
+		Collections.sort(sorted);
+		final StringBuilder description = new StringBuilder();
+		description.append(sorted.size()).append(" call sites could not be migrated and have to be changed by hand:");
+		for (String callSite : sorted.subList(0, Math.min(sorted.size(), MAX_LISTED_CALL_SITES))) {
+			description.append("\n  ").append(callSite);
+		}
+		if (sorted.size() > MAX_LISTED_CALL_SITES) {
+			description.append("\n  and ").append(sorted.size() - MAX_LISTED_CALL_SITES).append(" more");
+		}
+
+		return description.toString();
+	}
+}
@@ -0,0 +1,119 @@
+package online.devtools.eclipse.handlers;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.text.edits.CopySourceEdit;
+import org.eclipse.text.edits.MoveSourceEdit;
+import org.eclipse.text.edits.TextEdit;
+
+/**
+ * Describes the changes of a text edit as the changed lines before and after
+ * the edit, like a unified diff without context lines.
+ * 
+ * The edits are grouped into hunks of adjacent lines. Hunks which only change
+ * the whitespace within their lines are left out, as the rewrite reformats
+ * the code around the declarations it changes.
+ */
+final class ChangePreview {
+
+	private static final String NO_CHANGES = "No changes";
+
+	private ChangePreview() {
+	}
+
+	/**
+	 * Describes the given edit, which is applied on a copy of the source.
+	 */
+	static String describe(final String source, final TextEdit edit) throws BadLocationException {
+		final IDocument original = new Document(source);
+		final List<TextEdit> leaves = new ArrayList<>();
+		collectLeaves(edit, leaves);
+		leaves.sort(Comparator.comparingInt(TextEdit::getOffset));
+
+		final int[] firstLines = new int[leaves.size()];
+		final int[] lastLines = new int[leaves.size()];
+		for (int i = 0; i < leaves.size(); i++) {
+			firstLines[i] = original.getLineOfOffset(leaves.get(i).getOffset());
+			lastLines[i] = original.getLineOfOffset(leaves.get(i).getExclusiveEnd());
+		}
+
+		final IDocument converted = new Document(source);
+		edit.apply(converted, TextEdit.UPDATE_REGIONS);
+
+		final StringBuilder preview = new StringBuilder();
+		int i = 0;
+		while (i < leaves.size()) {
+			final int firstLine = firstLines[i];
+			int lastLine = lastLines[i];
+			int firstConvertedLine = Integer.MAX_VALUE;
+			int lastConvertedLine = -1;
+			do {
+				lastLine = Math.max(lastLine, lastLines[i]);
+				final TextEdit leaf = leaves.get(i);
+				if (!leaf.isDeleted()) {
+					firstConvertedLine = Math.min(firstConvertedLine, converted.getLineOfOffset(leaf.getOffset()));
+					lastConvertedLine = Math.max(lastConvertedLine,
+							converted.getLineOfOffset(leaf.getExclusiveEnd()));
+				}
+				i++;
+			} while (i < leaves.size() && firstLines[i] <= lastLine + 1);
+
+			appendHunk(preview, original, firstLine, lastLine, converted, firstConvertedLine, lastConvertedLine);
+		}
+
+		return preview.length() == 0 ? NO_CHANGES : preview.toString();
+	}
+
+	/**
+	 * Collects the edits changing the text. A moved range is a single change,
+	 * the edits within it are applied at its target.
+	 */
+	private static void collectLeaves(final TextEdit edit, final List<TextEdit> leaves) {
+		if (edit instanceof MoveSourceEdit || (!edit.hasChildren() && !(edit instanceof CopySourceEdit))) {
+			leaves.add(edit);
+			return;
+		}
+
+		for (TextEdit child : edit.getChildren()) {
+			collectLeaves(child, leaves);
+		}
+	}
+
+	private static void appendHunk(final StringBuilder preview, final IDocument original, final int firstLine,
+			final int lastLine, final IDocument converted, final int firstConvertedLine,
+			final int lastConvertedLine) throws BadLocationException {
+		final List<String> removed = getLines(original, firstLine, lastLine);
+		final List<String> added = getLines(converted, firstConvertedLine, lastConvertedLine);
+		if (strip(removed).equals(strip(added))) {
+			return;
+		}
+
+		preview.append("@@ line ").append(firstLine + 1).append(" @@\n");
+		for (String line : removed) {
+			preview.append("- ").append(line).append('\n');
+		}
+		for (String line : added) {
+			preview.append("+ ").append(line).append('\n');
+		}
+	}
+
+	private static List<String> getLines(final IDocument document, final int firstLine, final int lastLine)
+			throws BadLocationException {
+		final List<String> lines = new ArrayList<>();
+		for (int line = firstLine; line <= lastLine; line++) {
+			lines.add(document.get(document.getLineOffset(line), document.getLineLength(line))
+					.replaceAll("[\\r\\n]+$", ""));
+		}
+
+		return lines;
+	}
+
+	private static String strip(final List<String> lines) {
+		return String.join("", lines).replaceAll("\\s+", "");
+	}
+}
@@ -0,0 +1,43 @@
+package online.devtools.eclipse.handlers;
+
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.PlatformUI;
+
+/**
+ * Runs a {@link CodeGenerationOperation} in the background so the workbench
+ * stays responsive while large compilation units are converted.
+ * 
+ * The job holds no scheduling rule, the operation locks the resources it
+ * changes only while the changes are applied, so searching the call sites in
+ * the workspace does not block other jobs.
+ */
+class CodeGenerationJob extends WorkspaceJob {
+
+	private final CodeGenerationOperation operation;
+
+	CodeGenerationJob(final ICompilationUnit compilationUnit, final CodeGenerationOperation operation) {
+		super("Converting " + compilationUnit.getElementName() + " to immutable");
+		this.operation = operation;
+	}
+
+	@Override
+
+	public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
+		operation.run(monitor);
+
+		final String unmigrated = CallSiteMigration.describe(operation.getUnmigratedCallSites());
+		if (!unmigrated.isEmpty()) {
+			final Display display = PlatformUI.getWorkbench().getDisplay();
+			display.asyncExec(() -> MessageDialog.openWarning(display.getActiveShell(), getName(), unmigrated));
+		}
+
+		return Status.OK_STATUS;
+	}
+}
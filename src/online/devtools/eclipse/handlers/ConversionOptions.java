@@ -0,0 +1,256 @@
+package online.devtools.eclipse.handlers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.events.SelectionListener;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.DefensiveCopyStrategy;
+import online.devtools.eclipse.handlers.tools.FactoryStrategy;
+import online.devtools.eclipse.handlers.tools.GenerationTools;
+import online.devtools.eclipse.handlers.tools.HashCodeStrategy;
+import online.devtools.eclipse.handlers.tools.LazyDerivedStrategy;
+import online.devtools.eclipse.handlers.tools.ToStringStrategy;
+import online.devtools.eclipse.handlers.tools.UnboxingStrategy;
+
+/**
+ * The conversion options shared by the single type and the bulk conversion
+ * dialogs.
+ */
+class ConversionOptions {
+
+	private final SelectedListener finalFieldsSelectedListener = new SelectedListener();
+	private final SelectedListener recordSelectedListener = new SelectedListener();
+	private final SelectedListener builderSelectedListener = new SelectedListener();
+	private final SelectedListener replaceExistingDeclarations = new SelectedListener();
+	private final SelectedListener makeParametersFinal = new SelectedListener();
+	private final SelectedListener addComments = new SelectedListener();
+	private final SelectedListener freezeBuilder = new SelectedListener();
+	private final SelectedListener reusableBuilder = new SelectedListener();
+	private final SelectedListener generateWithers = new SelectedListener();
+	private final SelectedListener primitiveCollections = new SelectedListener();
+	private final SelectedListener generateEquals = new SelectedListener();
+	private final SelectedListener generateCodec = new SelectedListener();
+	private final SelectedListener generateColumns = new SelectedListener();
+	private HashCodeStrategy hashCodeStrategy = HashCodeStrategy.NONE;
+	private ToStringStrategy toStringStrategy = ToStringStrategy.NONE;
+	private DefensiveCopyStrategy defensiveCopyStrategy = DefensiveCopyStrategy.NONE;
+	private FactoryStrategy factoryStrategy = FactoryStrategy.NONE;
+	private UnboxingStrategy unboxingStrategy = UnboxingStrategy.NONE;
+	private LazyDerivedStrategy lazyDerivedStrategy = LazyDerivedStrategy.DOUBLE_CHECKED;
+	private final List<Runnable> changeListeners = new ArrayList<>();
+
+	void createControls(Composite parent) {
+		// TODO: Add link to the preference page for the comments contents
+
+		addButton(parent, "Generate method comments", addComments);
+		addSeparator(parent);
+		addButton(parent, "Do not replace existing declarations", replaceExistingDeclarations);
+		addButton(parent, "Add final modifier for parameters", makeParametersFinal);
+		addSeparator(parent);
+		addButton(parent, "Generate public final fields instead of getters", finalFieldsSelectedListener);
+		addButton(parent, "Convert to a record where the Java version supports it", recordSelectedListener);
+		addButton(parent, "Generate builder instead of public constructor", builderSelectedListener);
+		addCombo(parent, "Instances:", FactoryStrategy.values(), factoryStrategy, FactoryStrategy::getLabel,
+				strategy -> factoryStrategy = strategy);
+		addButton(parent, "Accumulate collections in the builder and freeze them on build", freezeBuilder);
+		addButton(parent, "Make the builder reusable with reset() and from(instance)", reusableBuilder);
+		addButton(parent, "Generate withX methods returning modified copies", generateWithers);
+		addCombo(parent, "Collections and arrays:", DefensiveCopyStrategy.values(), defensiveCopyStrategy,
+				DefensiveCopyStrategy::getLabel, strategy -> defensiveCopyStrategy = strategy);
+		addCombo(parent, "Wrapper fields:", UnboxingStrategy.values(), unboxingStrategy, UnboxingStrategy::getLabel,
+				strategy -> unboxingStrategy = strategy);
+		addButton(parent, "Store collections of Integer, Long and Double in primitive arrays, rejecting null elements",
+				primitiveCollections);
+		addSeparator(parent);
+		addButton(parent, "Generate equals", generateEquals);
+		addCombo(parent, "hashCode:", HashCodeStrategy.values(), hashCodeStrategy, HashCodeStrategy::getLabel,
+				strategy -> hashCodeStrategy = strategy);
+		addCombo(parent, "toString:", ToStringStrategy.values(), toStringStrategy, ToStringStrategy::getLabel,
+				strategy -> toStringStrategy = strategy);
+		addCombo(parent, "Lazy derived members:", LazyDerivedStrategy.values(), lazyDerivedStrategy,
+				LazyDerivedStrategy::getLabel, strategy -> lazyDerivedStrategy = strategy);
+		addSeparator(parent);
+		addButton(parent, "Generate writeTo(ByteBuffer), readFrom(ByteBuffer) and serializedSize()", generateCodec);
+		addButton(parent, "Generate a Columns collection keeping each primitive field in an array", generateColumns);
+	}
+
+	CodeSettings createCodeSettings(IJavaProject javaProject) {
+		return CodeSettings.builder().withCodeSettings(GenerationTools.getCodeGenerationSettings(javaProject))
+				.withReplaceExistingDeclarations(shouldReplaceExistingDeclarations())
+				.withMakeParametersFinal(shouldMakeParametersFinal()).withGenerateBuilder(shouldGenerateBuilder())
+				.withFreezeBuilder(shouldFreezeBuilder()).withReusableBuilder(shouldMakeBuilderReusable())
+				.withGenerateWithers(shouldGenerateWithers())
+				.withGenerateFinalFields(shouldGenerateFinalFields()).withGenerateRecord(shouldGenerateRecord())
+				.withAddComments(shouldAddComments())
+				.withGenerateEquals(shouldGenerateEquals()).withHashCodeStrategy(getHashCodeStrategy())
+				.withToStringStrategy(getToStringStrategy()).withDefensiveCopyStrategy(getDefensiveCopyStrategy())
+				.withFactoryStrategy(getFactoryStrategy()).withUnboxingStrategy(getUnboxingStrategy())
+				.withPrimitiveCollections(shouldUsePrimitiveCollections()).withGenerateCodec(shouldGenerateCodec())
+				.withGenerateColumns(shouldGenerateColumns()).withLazyDerivedStrategy(getLazyDerivedStrategy())
+				.build();
+	}
+
+	/**
+	 * Registers a listener notified after any of the options is changed.
+	 */
+	void addChangeListener(Runnable listener) {
+		changeListeners.add(listener);
+	}
+
+	private void fireChanged() {
+		for (Runnable listener : changeListeners) {
+			listener.run();
+		}
+	}
+
+	private void addButton(Composite parent, String text, SelectedListener listener) {
+		Button selectedButton = new Button(parent, SWT.CHECK);
+		selectedButton.setText(text);
+		selectedButton.addSelectionListener(listener);
+		selectedButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				fireChanged();
+			}
+		});
+	}
+
+	private <T> void addCombo(Composite parent, String text, T[] values, T selected, Function<T, String> labels,
+			Consumer<T> listener) {
+		Composite composite = new Composite(parent, SWT.NONE);
+		GridLayout layout = new GridLayout(2, false);
+		layout.marginWidth = 0;
+		composite.setLayout(layout);
+
+		Label label = new Label(composite, SWT.NONE);
+		label.setText(text);
+
+		Combo combo = new Combo(composite, SWT.READ_ONLY);
+		for (T value : values) {
+			combo.add(labels.apply(value));
+		}
+		combo.select(Arrays.asList(values).indexOf(selected));
+		combo.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				listener.accept(values[combo.getSelectionIndex()]);
+				fireChanged();
+			}
+		});
+	}
+
+	private void addSeparator(Composite parent) {
+		Label separator = new Label(parent, SWT.HORIZONTAL | SWT.SEPARATOR);
+		separator.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+	}
+
+	boolean shouldGenerateFinalFields() {
+		return finalFieldsSelectedListener.isSelected();
+	}
+
+	boolean shouldGenerateRecord() {
+		return recordSelectedListener.isSelected();
+	}
+
+	boolean shouldGenerateBuilder() {
+		return builderSelectedListener.isSelected();
+	}
+
+	boolean shouldFreezeBuilder() {
+		return freezeBuilder.isSelected();
+	}
+
+	boolean shouldMakeBuilderReusable() {
+		return reusableBuilder.isSelected();
+	}
+
+	boolean shouldGenerateWithers() {
+		return generateWithers.isSelected();
+	}
+
+	boolean shouldUsePrimitiveCollections() {
+		return primitiveCollections.isSelected();
+	}
+
+	boolean shouldReplaceExistingDeclarations() {
+		return !replaceExistingDeclarations.isSelected();
+	}
+
+	boolean shouldMakeParametersFinal() {
+		return makeParametersFinal.isSelected();
+	}
+
+	boolean shouldAddComments() {
+		return addComments.isSelected();
+	}
+
+	boolean shouldGenerateEquals() {
+		return generateEquals.isSelected();
+	}
+
+	boolean shouldGenerateCodec() {
+		return generateCodec.isSelected();
+	}
+
+	boolean shouldGenerateColumns() {
+		return generateColumns.isSelected();
+	}
+
+	HashCodeStrategy getHashCodeStrategy() {
+		return hashCodeStrategy;
+	}
+
+	ToStringStrategy getToStringStrategy() {
+		return toStringStrategy;
+	}
+
+	DefensiveCopyStrategy getDefensiveCopyStrategy() {
+		return defensiveCopyStrategy;
+	}
+
+	FactoryStrategy getFactoryStrategy() {
+		return factoryStrategy;
+	}
+
+	UnboxingStrategy getUnboxingStrategy() {
+		return unboxingStrategy;
+	}
+
+	LazyDerivedStrategy getLazyDerivedStrategy() {
+		return lazyDerivedStrategy;
+	}
+
+	static class SelectedListener implements SelectionListener {
+		private boolean selected = false;
+
+		@Override
+		public void widgetSelected(SelectionEvent e) {
+			selected = Boolean.valueOf((((Button) e.widget).getSelection()));
+		}
+
+		@Override
+
+		public void widgetDefaultSelected(SelectionEvent e) {
+			widgetSelected(e);
+		}
+
+		boolean isSelected() {
+			return selected;
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package online.devtools.eclipse.handlers;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Shell;
+
+/**
+ * Dialog for the conversion options used when several compilation units are
+ * converted at once and there is no single type to select fields from.
+ */
+class ConversionOptionsDialog extends Dialog {
+
+	private final ConversionOptions options = new ConversionOptions();
+
+	ConversionOptionsDialog(Shell parent) {
+		super(parent);
+	}
+
+	@Override
+
+	protected void configureShell(Shell shell) {
+		super.configureShell(shell);
+		shell.setText("Make Immutable");
+	}
+
+	@Override
+
+	protected Control createDialogArea(Composite parent) {
+		Composite composite = (Composite) super.createDialogArea(parent);
+		options.createControls(composite);
+
+		return composite;
+	}
+
+	ConversionOptions getOptions() {
+		return options;
+	}
+}
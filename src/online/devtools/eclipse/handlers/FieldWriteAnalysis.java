@@ -0,0 +1,297 @@
+package online.devtools.eclipse.handlers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.Initializer;
+import org.eclipse.jdt.core.dom.LambdaExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.jdt.core.search.IJavaSearchScope;
+import org.eclipse.jdt.core.search.SearchEngine;
+import org.eclipse.jdt.core.search.SearchMatch;
+import org.eclipse.jdt.core.search.SearchParticipant;
+import org.eclipse.jdt.core.search.SearchPattern;
+import org.eclipse.jdt.core.search.SearchRequestor;
+
+import online.devtools.eclipse.generation.ImmutableClassGenerator;
+
+/**
+ * Finds the fields which are written after the construction of the
+ * instances and can not simply be made final.
+ * 
+ * A field may be assigned by the constructors and the instance initializers
+ * of its type, through <code>this</code>, and by its setter, which the
+ * conversion removes. Every other write keeps the field from becoming final,
+ * including writes in lambdas and anonymous classes within a constructor.
+ * 
+ * The compilation units writing the fields are found by a query of the
+ * search index, which only looks at the declaring compilation unit if all
+ * fields are private. Only those compilation units are parsed, together by
+ * one call of {@link ASTParser#createASTs} per project, so that the bindings
+ * of the types they share are resolved once. The cost grows with the number
+ * of compilation units writing the fields, not with the size of the
+ * workspace.
+ */
+final class FieldWriteAnalysis {
+
+	private FieldWriteAnalysis() {
+	}
+
+	/**
+	 * @return the fields written after the construction mapped to the
+	 *         location of the first such write
+	 */
+	static Map<IField, String> findWritesAfterConstruction(final IType type, final IField[] fields,
+			final IProgressMonitor monitor) throws CoreException {
+		final SubMonitor progress = SubMonitor.convert(monitor, "Analyzing the writes of the fields", 100);
+		final Set<IField> candidates = new HashSet<>();
+		SearchPattern pattern = null;
+		boolean privateFields = true;
+		for (IField field : fields) {
+			if (!Flags.isFinal(field.getFlags()) && !Flags.isStatic(field.getFlags())) {
+				candidates.add(field);
+				final SearchPattern fieldPattern = SearchPattern.createPattern(field,
+						IJavaSearchConstants.WRITE_ACCESSES);
+				pattern = pattern == null ? fieldPattern : SearchPattern.createOrPattern(pattern, fieldPattern);
+				privateFields &= Flags.isPrivate(field.getFlags());
+			}
+		}
+
+		final Map<IField, String> writes = new LinkedHashMap<>();
+		if (pattern == null) {
+			return writes;
+		}
+
+		final IJavaSearchScope scope = privateFields
+				? SearchEngine.createJavaSearchScope(new IJavaElement[] { type.getCompilationUnit() })
+				: SearchEngine.createWorkspaceScope();
+		final Map<IJavaProject, List<ICompilationUnit>> compilationUnits = search(pattern, scope,
+				progress.split(30));
+
+		final SubMonitor parseProgress = progress.split(70).setWorkRemaining(compilationUnits.size());
+		for (Map.Entry<IJavaProject, List<ICompilationUnit>> entry : compilationUnits.entrySet()) {
+			final ASTParser parser = ASTParser.newParser(ImmutableClassGenerator.AST_LEVEL);
+			parser.setProject(entry.getKey());
+			parser.setResolveBindings(true);
+			parser.createASTs(entry.getValue().toArray(new ICompilationUnit[0]), new String[0],
+					new ASTRequestor() {
+						@Override
+						public void acceptAST(final ICompilationUnit source, final CompilationUnit ast) {
+							ast.accept(new WriteVisitor(type, candidates, source, writes));
+						}
+					}, parseProgress.split(entry.getValue().size()));
+		}
+
+		return writes;
+	}
+
+	/**
+	 * @return the compilation units which may write the fields grouped by
+	 *         their projects
+	 */
+	private static Map<IJavaProject, List<ICompilationUnit>> search(final SearchPattern pattern,
+			final IJavaSearchScope scope, final IProgressMonitor monitor) throws CoreException {
+		final Set<ICompilationUnit> found = new HashSet<>();
+		final Map<IJavaProject, List<ICompilationUnit>> compilationUnits = new LinkedHashMap<>();
+		final SearchRequestor requestor = new SearchRequestor() {
+			@Override
+			public void acceptSearchMatch(final SearchMatch match) {
+				if (!(match.getElement() instanceof IJavaElement)) {
+					return;
+				}
+
+				final ICompilationUnit compilationUnit = (ICompilationUnit) ((IJavaElement) match.getElement())
+						.getAncestor(IJavaElement.COMPILATION_UNIT);
+				if (compilationUnit != null && found.add(compilationUnit)) {
+					compilationUnits.computeIfAbsent(compilationUnit.getJavaProject(), project -> new ArrayList<>())
+							.add(compilationUnit);
+				}
+			}
+		};
+
+		new SearchEngine().search(pattern, new SearchParticipant[] { SearchEngine.getDefaultSearchParticipant() },
+				scope, requestor, monitor);
+
+		return compilationUnits;
+	}
+
+	private static class WriteVisitor extends ASTVisitor {
+
+		private final IType type;
+
+		private final Set<IField> candidates;
+
+		private final ICompilationUnit source;
+
+		private final Map<IField, String> writes;
+
+		WriteVisitor(final IType type, final Set<IField> candidates, final ICompilationUnit source,
+				final Map<IField, String> writes) {
+			this.type = type;
+			this.candidates = candidates;
+			this.source = source;
+			this.writes = writes;
+		}
+
+		@Override
+
+		public boolean visit(final Assignment node) {
+			checkWrite(node.getLeftHandSide());
+			return true;
+		}
+
+		@Override
+
+		public boolean visit(final PrefixExpression node) {
+			if (node.getOperator() == PrefixExpression.Operator.INCREMENT
+					|| node.getOperator() == PrefixExpression.Operator.DECREMENT) {
+				checkWrite(node.getOperand());
+			}
+			return true;
+		}
+
+		@Override
+
+		public boolean visit(final PostfixExpression node) {
+			checkWrite(node.getOperand());
+			return true;
+		}
+
+		private void checkWrite(Expression target) {
+			while (target instanceof ParenthesizedExpression) {
+				target = ((ParenthesizedExpression) target).getExpression();
+			}
+
+			final IVariableBinding binding = getFieldBinding(target);
+			if (binding == null) {
+				return;
+			}
+
+			final IJavaElement field = binding.getVariableDeclaration().getJavaElement();
+			if (field instanceof IField && candidates.contains(field) && !writes.containsKey(field)
+					&& !isConstructionOrSetter(target, (IField) field)) {
+				writes.put((IField) field, describeLocation(target));
+			}
+		}
+
+		private static IVariableBinding getFieldBinding(final Expression target) {
+			final IBinding binding;
+			if (target instanceof Name) {
+				binding = ((Name) target).resolveBinding();
+			} else if (target instanceof FieldAccess) {
+				binding = ((FieldAccess) target).resolveFieldBinding();
+			} else if (target instanceof SuperFieldAccess) {
+				binding = ((SuperFieldAccess) target).resolveFieldBinding();
+			} else {
+				binding = null;
+			}
+
+			return binding instanceof IVariableBinding && ((IVariableBinding) binding).isField()
+					? (IVariableBinding) binding
+					: null;
+		}
+
+		/**
+		 * @return whether the write assigns the field of the instance under
+		 *         construction or is in the setter of the field
+		 */
+		private boolean isConstructionOrSetter(final Expression target, final IField field) {
+			final BodyDeclaration member = getEnclosingMember(target);
+			if (member == null || !isDeclaredBy(member, type)) {
+				return false;
+			}
+
+			if (member instanceof MethodDeclaration && !((MethodDeclaration) member).isConstructor()) {
+				return isSetter((MethodDeclaration) member, field);
+			}
+
+			final boolean instanceMember = member instanceof MethodDeclaration
+					|| (member instanceof Initializer && !Modifier.isStatic(member.getModifiers()));
+			return instanceMember && (target instanceof SimpleName || (target instanceof FieldAccess
+					&& ((FieldAccess) target).getExpression() instanceof ThisExpression));
+		}
+
+		/**
+		 * @return the member of a type containing the node, or
+		 *         <code>null</code> if the node is in a lambda or an anonymous
+		 *         class, which may run after the construction
+		 */
+		private static BodyDeclaration getEnclosingMember(final ASTNode node) {
+			for (ASTNode parent = node.getParent(); parent != null; parent = parent.getParent()) {
+				if (parent instanceof LambdaExpression || parent instanceof AnonymousClassDeclaration) {
+					return null;
+				} else if (parent instanceof BodyDeclaration) {
+					return (BodyDeclaration) parent;
+				}
+			}
+
+			return null;
+		}
+
+		private static boolean isDeclaredBy(final BodyDeclaration member, final IType type) {
+			if (!(member.getParent() instanceof AbstractTypeDeclaration)) {
+				return false;
+			}
+
+			final ITypeBinding binding = ((AbstractTypeDeclaration) member.getParent()).resolveBinding();
+			return binding != null && type.equals(binding.getJavaElement());
+		}
+
+		/**
+		 * The setter is recognized like the conversion does, by its name and
+		 * its single parameter.
+		 */
+		private static boolean isSetter(final MethodDeclaration method, final IField field) {
+			final String name = field.getElementName();
+			return method.parameters().size() == 1 && !Modifier.isStatic(method.getModifiers())
+					&& method.getName().getIdentifier()
+							.equals("set" + Character.toUpperCase(name.charAt(0)) + name.substring(1));
+		}
+
+		private String describeLocation(final Expression target) {
+			final BodyDeclaration member = getEnclosingMember(target);
+			final String location = member instanceof MethodDeclaration
+					? ((MethodDeclaration) member).getName().getIdentifier() + "()"
+					: "a lambda, a nested class or an initializer";
+
+			return source.equals(type.getCompilationUnit()) ? location
+					: location + " of " + source.getElementName();
+		}
+	}
+}
@@ -1,11 +1,22 @@
 package online.devtools.eclipse.handlers;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.jdt.core.Flags;
 import org.eclipse.jdt.core.IField;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IMethod;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.Signature;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 
+import online.devtools.eclipse.handlers.tools.GenerationTools;
+
 class FieldsProvider implements ITreeContentProvider {
 
 	private static final Object[] EMPTY = new Object[0];
@@ -40,7 +51,11 @@ class FieldsProvider implements ITreeContentProvider {
 
 		if (inputElement instanceof IType) {
 
-			return getFields((IType) inputElement);
+			final List<Object> elements = new ArrayList<>(Arrays.asList(getFields((IType) inputElement)));
+
+			elements.addAll(Arrays.asList(getDerivedMethodCandidates((IType) inputElement)));
+
+			return elements.toArray();
 
 		}
 
@@ -72,4 +87,68 @@ class FieldsProvider implements ITreeContentProvider {
 
 	}
 
+	public static IField[] getInstanceFields(IType type) throws JavaModelException {
+
+		final List<IField> instanceFields = new ArrayList<>();
+
+		for (IField field : type.getFields()) {
+
+			if (!Flags.isStatic(field.getFlags())) {
+
+				instanceFields.add(field);
+
+			}
+
+		}
+
+		return instanceFields.toArray(new IField[instanceFields.size()]);
+
+	}
+
+	/**
+	 * Returns the methods which can be marked as lazy derived: instance
+	 * methods without parameters returning a value, other than the getters
+	 * of the fields, <code>hashCode</code> and <code>toString</code>.
+	 */
+	public static IMethod[] getDerivedMethodCandidates(IType type) {
+
+		final List<IMethod> candidates = new ArrayList<>();
+
+		try {
+
+			final Set<String> excludedNames = new HashSet<>(Arrays.asList("hashCode", "toString"));
+
+			for (IField field : getInstanceFields(type)) {
+
+				excludedNames.add(GenerationTools.getGetterName(field, true));
+
+				excludedNames.add(GenerationTools.getGetterName(field, false));
+
+			}
+
+			for (IMethod method : type.getMethods()) {
+
+				final int flags = method.getFlags();
+
+				if (!method.isConstructor() && !Flags.isStatic(flags) && !Flags.isAbstract(flags)
+						&& method.getNumberOfParameters() == 0 && method.getTypeParameters().length == 0
+						&& !Signature.SIG_VOID.equals(method.getReturnType())
+						&& !excludedNames.contains(method.getElementName())) {
+
+					candidates.add(method);
+
+				}
+
+			}
+
+		} catch (JavaModelException e) {
+
+			e.printStackTrace();
+
+		}
+
+		return candidates.toArray(new IMethod[candidates.size()]);
+
+	}
+
 }
@@ -1,23 +1,26 @@
 package online.devtools.eclipse.handlers;
 
-import java.util.Arrays;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.core.commands.AbstractHandler;
 import org.eclipse.core.commands.ExecutionEvent;
 import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.IField;
-import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.ITypeRoot;
 import org.eclipse.jdt.ui.JavaUI;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.dialogs.CheckedTreeSelectionDialog;
 import org.eclipse.ui.handlers.HandlerUtil;
 
-import online.devtools.eclipse.handlers.tools.CodeSettings;
-import online.devtools.eclipse.handlers.tools.GenerationTools;
-
 public class GenerateImmutablePojoHandler extends AbstractHandler {
 
 	@Override
@@ -29,30 +32,31 @@ public class GenerateImmutablePojoHandler extends AbstractHandler {
 		ImmutablePojoDialog dialog = openDialog(window.getShell(), primaryType);
 
 		if (dialog != null) {
-			Object[] result = dialog.getResult();
-			if (result != null && result.length > 0 && result[0] instanceof IField) {
-				new CodeGenerationOperation(Arrays.copyOf(result, result.length, IField[].class),
-						createCodeGenerationSettings(dialog, primaryType.getJavaProject())).run();
+			CodeGenerationOperation operation = dialog.createOperation(dialog.getResult());
+			if (operation != null) {
+				new CodeGenerationJob(primaryType.getCompilationUnit(), operation).schedule();
 			}
 		}
 		return null;
 	}
 
-	private CodeSettings createCodeGenerationSettings(ImmutablePojoDialog dialog, IJavaProject javaProject) {
-		return CodeSettings.builder().withCodeSettings(GenerationTools.getCodeGenerationSettings(javaProject))
-				.withReplaceExistingDeclarations(dialog.shouldReplaceExistingDeclarations())
-				.withMakeParametersFinal(dialog.shouldMakeParametersFinal())
-				.withGenerateBuilder(dialog.shouldGenerateBuilder())
-				.withGenerateFinalFields(dialog.shouldGenerateFinalFields()).withAddComments(dialog.shouldAddComments())
-				.build();
-	}
-
 	private ImmutablePojoDialog openDialog(Shell shell, IType type) {
-		ImmutablePojoDialog dialog = new ImmutablePojoDialog(shell);
+		IField[] fields = FieldsProvider.getFields(type);
+		Map<IField, String> writtenFields = findWritesAfterConstruction(type, fields);
+		List<IField> initialSelection = new ArrayList<>();
+		for (IField field : fields) {
+			if (!writtenFields.containsKey(field)) {
+				initialSelection.add(field);
+			}
+		}
+
+		ImmutablePojoDialog dialog = new ImmutablePojoDialog(shell, type, writtenFields);
 		dialog.setTitle("Make Immutable");
-		dialog.setMessage("Select fields:");
+		dialog.setMessage(writtenFields.isEmpty() ? "Select fields and the derived members to compute lazily:"
+				: "Select fields and the derived members to compute lazily. Fields written after the construction"
+						+ " are not selected:");
 		dialog.setHelpAvailable(false);
-		dialog.setInitialSelections(FieldsProvider.getFields(type));
+		dialog.setInitialSelections(initialSelection.toArray());
 		dialog.setInput(type);
 		dialog.setBlockOnOpen(true);
 
@@ -62,4 +66,31 @@ public class GenerateImmutablePojoHandler extends AbstractHandler {
 
 		return null;
 	}
+
+	/**
+	 * Finds the fields written after the construction with a busy cursor, as
+	 * the analysis searches and parses the compilation units writing them.
+	 * 
+	 * @return the fields mapped to the location of the write, or no fields if
+	 *         the analysis fails or is cancelled
+	 */
+	private Map<IField, String> findWritesAfterConstruction(IType type, IField[] fields) {
+		final AtomicReference<Map<IField, String>> writtenFields = new AtomicReference<>(Collections.emptyMap());
+		try {
+			PlatformUI.getWorkbench().getProgressService().busyCursorWhile(monitor -> {
+				try {
+					writtenFields.set(FieldWriteAnalysis.findWritesAfterConstruction(type, fields, monitor));
+				} catch (CoreException e) {
+					throw new InvocationTargetException(e);
+				}
+			});
+		} catch (InvocationTargetException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			// the user cancelled the analysis, the dialog opens without it
+			return Collections.emptyMap();
+		}
+
+		return writtenFields.get();
+	}
 }
\ No newline at end of file
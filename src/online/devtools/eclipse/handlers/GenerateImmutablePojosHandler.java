@@ -0,0 +1,68 @@
+package online.devtools.eclipse.handlers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.jface.window.Window;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+/**
+ * Converts all classes in the selected projects, source folders, packages and
+ * compilation units.
+ */
+public class GenerateImmutablePojosHandler extends AbstractHandler {
+
+	@Override
+
+	public Object execute(ExecutionEvent event) throws ExecutionException {
+		final List<IJavaElement> elements = getSelectedElements(HandlerUtil.getCurrentSelectionChecked(event));
+
+		if (!elements.isEmpty()) {
+			final ConversionOptionsDialog dialog = new ConversionOptionsDialog(HandlerUtil.getActiveShellChecked(event));
+			if (dialog.open() == Window.OK) {
+				new BulkCodeGenerationJob(elements, dialog.getOptions()).schedule();
+			}
+		}
+		return null;
+	}
+
+	private List<IJavaElement> getSelectedElements(ISelection selection) {
+		final List<IJavaElement> elements = new ArrayList<>();
+
+		if (selection instanceof IStructuredSelection) {
+			for (Object selected : ((IStructuredSelection) selection).toList()) {
+				final IJavaElement element = toJavaElement(selected);
+				if (element != null) {
+					elements.add(element);
+				}
+			}
+		}
+
+		return elements;
+	}
+
+	private IJavaElement toJavaElement(Object selected) {
+		if (selected instanceof IJavaElement) {
+			return (IJavaElement) selected;
+		}
+
+		if (selected instanceof IResource) {
+			return JavaCore.create((IResource) selected);
+		}
+
+		if (selected instanceof IAdaptable) {
+			return ((IAdaptable) selected).getAdapter(IJavaElement.class);
+		}
+
+		return null;
+	}
+}
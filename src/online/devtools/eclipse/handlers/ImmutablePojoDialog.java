@@ -1,94 +1,383 @@
 package online.devtools.eclipse.handlers;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.Signature;
+import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.ui.JavaElementLabelProvider;
+import org.eclipse.jface.resource.JFaceResources;
+import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.viewers.CheckboxTreeViewer;
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.events.SelectionEvent;
-import org.eclipse.swt.events.SelectionListener;
 import org.eclipse.swt.layout.GridData;
-import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Text;
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.dialogs.CheckedTreeSelectionDialog;
 
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.HashCodeStrategy;
+import online.devtools.eclipse.handlers.tools.ObjectLayout;
+import online.devtools.eclipse.handlers.tools.ToStringStrategy;
+import online.devtools.eclipse.handlers.tools.UnboxingStrategy;
+
 class ImmutablePojoDialog extends CheckedTreeSelectionDialog {
 
-	private final SelectedListener finalFieldsSelectedListener = new SelectedListener();
-	private final SelectedListener builderSelectedListener = new SelectedListener();
-	private final SelectedListener replaceExistingDeclarations = new SelectedListener();
-	private final SelectedListener makeParametersFinal = new SelectedListener();
-	private final SelectedListener addComments = new SelectedListener();
+	private static final String STRING_SIGNATURE = Signature.createTypeSignature("String", false);
+
+	private static final long PREVIEW_DELAY = 300;
+
+	private static final int PREVIEW_CACHE_SIZE = 16;
+
+	private final ConversionOptions options = new ConversionOptions();
+
+	private final IType type;
+
+	private Label layoutReport;
+
+	private final PreviewJob previewJob = new PreviewJob();
 
-	ImmutablePojoDialog(Shell parent) {
-		super(parent, new JavaElementLabelProvider(), new FieldsProvider());
+	private Label previewLabel;
+
+	private Text preview;
+
+	/**
+	 * @param writtenFields
+	 *            the fields written after the construction mapped to the
+	 *            location of the write, which are flagged in the list
+	 */
+	ImmutablePojoDialog(Shell parent, IType type, Map<IField, String> writtenFields) {
+		super(parent, createLabelProvider(writtenFields), new FieldsProvider());
+		this.type = type;
+	}
+
+	private static JavaElementLabelProvider createLabelProvider(Map<IField, String> writtenFields) {
+		return new JavaElementLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				final String location = writtenFields.get(element);
+				return location == null ? super.getText(element)
+						: super.getText(element) + " - written in " + location + ", can not be final";
+			}
+		};
 	}
 
 	@Override
 
 	protected CheckboxTreeViewer createTreeViewer(Composite parent) {
 		CheckboxTreeViewer treeViewer = super.createTreeViewer(parent);
-		// TODO: Add link to the preference page for the comments contents
+		options.createControls(parent);
+		createLayoutReport(parent);
+		createPreview(parent);
 
-		addButton(parent, "Generate method comments", addComments);
-		addSeparator(parent);
-		addButton(parent, "Do not replace existing declarations", replaceExistingDeclarations);
-		addButton(parent, "Add final modifier for parameters", makeParametersFinal);
-		addSeparator(parent);
-		addButton(parent, "Generate public final fields instead of getters", finalFieldsSelectedListener);
-		addButton(parent, "Generate builder instead of public constructor", builderSelectedListener);
-
-		// TODO: Add message what will be changed/removed from the existing code
 		return treeViewer;
 	}
 
-	private void addButton(Composite parent, String text, SelectedListener listener) {
-		Button selectedButton = new Button(parent, SWT.CHECK);
-		selectedButton.setText(text);
-		selectedButton.addSelectionListener(listener);
+	@Override
+
+	protected void updateOKStatus() {
+		super.updateOKStatus();
+		updatePreview();
+	}
+
+	@Override
+
+	public boolean close() {
+		previewJob.cancel();
+		return super.close();
+	}
+
+	/**
+	 * Adds the estimated size of the instances before and after the
+	 * conversion, updated whenever the options change, including the options
+	 * storing wrappers and collections as primitives.
+	 */
+	private void createLayoutReport(Composite parent) {
+		final List<String> fieldSignatures = new ArrayList<>();
+		try {
+			for (IField field : FieldsProvider.getInstanceFields(type)) {
+				fieldSignatures.add(field.getTypeSignature());
+			}
+		} catch (JavaModelException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		layoutReport = new Label(parent, SWT.WRAP);
+		layoutReport.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		options.addChangeListener(() -> updateLayoutReport(fieldSignatures));
+		updateLayoutReport(fieldSignatures);
+	}
+
+	/**
+	 * Estimates the fields after the conversion like the conversion changes
+	 * them, without the restrictions it finds in the source, such as
+	 * initializers or members it keeps.
+	 */
+	private void updateLayoutReport(List<String> fieldSignatures) {
+		final boolean unboxing = options.getUnboxingStrategy() != UnboxingStrategy.NONE
+				&& !options.shouldGenerateFinalFields();
+		final boolean primitiveCollections = options.shouldUsePrimitiveCollections()
+				&& !options.shouldGenerateFinalFields();
+		final List<String> convertedSignatures = new ArrayList<>();
+		int unboxed = 0;
+		int primitiveArrays = 0;
+		for (String signature : fieldSignatures) {
+			final String primitiveSignature = unboxing && unboxed < Long.SIZE ? getUnboxedSignature(signature) : null;
+			final String storageSignature = primitiveCollections ? getPrimitiveStorageSignature(signature) : null;
+			if (primitiveSignature != null) {
+				convertedSignatures.add(primitiveSignature);
+				unboxed++;
+			} else if (storageSignature != null) {
+				convertedSignatures.add(storageSignature);
+				primitiveArrays++;
+			} else {
+				convertedSignatures.add(signature);
+			}
+		}
+		if (unboxed > 0) {
+			convertedSignatures.add(unboxed > Integer.SIZE ? Signature.SIG_LONG : Signature.SIG_INT);
+		}
+		if (options.getHashCodeStrategy() != HashCodeStrategy.NONE) {
+			convertedSignatures.add(Signature.SIG_INT);
+		}
+		if (options.getToStringStrategy() == ToStringStrategy.MEMOIZED) {
+			convertedSignatures.add(STRING_SIGNATURE);
+		}
+
+		layoutReport.setText("Estimated instance size on a 64-bit JVM with compressed oops: "
+				+ format(ObjectLayout.of(fieldSignatures)) + " now, "
+				+ format(ObjectLayout.of(convertedSignatures)) + " after the conversion"
+				+ (primitiveArrays > 0 ? ", " + primitiveArrays
+						+ " collections in primitive arrays without a boxed object per element" : ""));
+	}
+
+	/**
+	 * @return the primitive signature of a wrapper type or <code>null</code>
+	 */
+	private static String getUnboxedSignature(String signature) {
+		if (Signature.getArrayCount(signature) > 0 || Signature.getTypeArguments(signature).length > 0) {
+			return null;
+		}
+
+		switch (Signature.getSimpleName(Signature.toString(signature))) {
+		case "Boolean":
+			return Signature.SIG_BOOLEAN;
+		case "Byte":
+			return Signature.SIG_BYTE;
+		case "Character":
+			return Signature.SIG_CHAR;
+		case "Short":
+			return Signature.SIG_SHORT;
+		case "Integer":
+			return Signature.SIG_INT;
+		case "Long":
+			return Signature.SIG_LONG;
+		case "Float":
+			return Signature.SIG_FLOAT;
+		case "Double":
+			return Signature.SIG_DOUBLE;
+		default:
+			return null;
+		}
 	}
 
-	private void addSeparator(Composite parent) {
-		Label separator = new Label(parent, SWT.HORIZONTAL | SWT.SEPARATOR);
-		separator.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+	/**
+	 * @return the signature of the primitive array storing a list or set of
+	 *         <code>Integer</code>, <code>Long</code> or <code>Double</code>,
+	 *         or a map of them with keys other than <code>Double</code>, or
+	 *         <code>null</code>
+	 */
+	private static String getPrimitiveStorageSignature(String signature) {
+		final String[] typeArguments = Signature.getTypeArguments(signature);
+		final String[] elements = new String[typeArguments.length];
+		for (int i = 0; i < typeArguments.length; i++) {
+			elements[i] = getUnboxedSignature(typeArguments[i]);
+			if (!Signature.SIG_INT.equals(elements[i]) && !Signature.SIG_LONG.equals(elements[i])
+					&& !Signature.SIG_DOUBLE.equals(elements[i])) {
+				return null;
+			}
+		}
+
+		final String collectionType = Signature.getSimpleName(Signature.toString(Signature.getTypeErasure(signature)));
+		if (elements.length == 1 && ("List".equals(collectionType) || "Set".equals(collectionType))) {
+			return Signature.createArraySignature(elements[0], 1);
+		} else if (elements.length == 2 && "Map".equals(collectionType) && !Signature.SIG_DOUBLE.equals(elements[0])) {
+			return Signature.createArraySignature(Signature.SIG_INT.equals(elements[0])
+					&& Signature.SIG_INT.equals(elements[1]) ? Signature.SIG_INT : Signature.SIG_LONG, 1);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Adds the preview of the changes, computed in the background whenever
+	 * the selection or the options change.
+	 */
+	private void createPreview(Composite parent) {
+		previewLabel = new Label(parent, SWT.NONE);
+		previewLabel.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+
+		preview = new Text(parent, SWT.MULTI | SWT.READ_ONLY | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL);
+		preview.setFont(JFaceResources.getTextFont());
+		GridData layoutData = new GridData(GridData.FILL_BOTH);
+		layoutData.heightHint = convertHeightInCharsToPixels(12);
+		layoutData.widthHint = convertWidthInCharsToPixels(80);
+		preview.setLayoutData(layoutData);
+		options.addChangeListener(this::updatePreview);
 	}
 
-	boolean shouldGenerateFinalFields() {
-		return finalFieldsSelectedListener.isSelected();
+	private void updatePreview() {
+		if (preview == null || preview.isDisposed()) {
+			return;
+		}
+
+		Object[] elements = getTreeViewer().getCheckedElements();
+		CodeSettings codeSettings = options.createCodeSettings(type.getJavaProject());
+		CodeGenerationOperation operation = createOperation(elements, codeSettings);
+		if (operation == null) {
+			previewJob.cancel();
+			showPreview(null, "No fields selected");
+		} else {
+			previewJob.update(Arrays.asList(Arrays.asList(elements), codeSettings), operation);
+		}
 	}
 
-	boolean shouldGenerateBuilder() {
-		return builderSelectedListener.isSelected();
+	private void showPreview(List<Object> key, String text) {
+		previewJob.key = key;
+		previewLabel.setText("Changes:");
+		preview.setText(text);
 	}
 
-	boolean shouldReplaceExistingDeclarations() {
-		return !replaceExistingDeclarations.isSelected();
+	/**
+	 * Creates the conversion of the selected fields, memoizing the selected
+	 * derived methods.
+	 * 
+	 * @return the operation or <code>null</code> if no field is selected
+	 */
+	CodeGenerationOperation createOperation(Object[] elements) {
+		return createOperation(elements, options.createCodeSettings(type.getJavaProject()));
 	}
 
-	boolean shouldMakeParametersFinal() {
-		return makeParametersFinal.isSelected();
+	private static CodeGenerationOperation createOperation(Object[] elements, CodeSettings codeSettings) {
+		List<IField> fields = new ArrayList<>();
+		List<IMethod> derivedMethods = new ArrayList<>();
+		for (Object element : elements == null ? new Object[0] : elements) {
+			if (element instanceof IField) {
+				fields.add((IField) element);
+			} else if (element instanceof IMethod) {
+				derivedMethods.add((IMethod) element);
+			}
+		}
+
+		if (fields.isEmpty()) {
+			return null;
+		}
+
+		return new CodeGenerationOperation(fields.toArray(new IField[fields.size()]),
+				derivedMethods.toArray(new IMethod[derivedMethods.size()]), codeSettings);
 	}
 
-	boolean shouldAddComments() {
-		return addComments.isSelected();
+	private static String format(ObjectLayout layout) {
+		return layout.getInstanceSize() + " bytes (" + ObjectLayout.HEADER_SIZE + " header, "
+				+ layout.getFieldsSize() + " fields, " + layout.getPaddingSize() + " padding)";
 	}
 
-	static class SelectedListener implements SelectionListener {
-		private boolean selected = false;
+	/**
+	 * Computes the preview without blocking the dialog.
+	 * 
+	 * A change cancels the running computation and schedules the job again
+	 * after a short delay, so a series of changes computes only the preview
+	 * of the last one. The job does not run concurrently with itself, and a
+	 * result is shown only if it is still the one requested last. The AST is
+	 * parsed once, as the conversion does not change it, and the previews of
+	 * the recent selections are cached.
+	 */
+	private class PreviewJob extends Job {
 
-		@Override
-		public void widgetSelected(SelectionEvent e) {
-			selected = Boolean.valueOf((((Button) e.widget).getSelection()));
+		private final Map<List<Object>, String> previews = Collections
+				.synchronizedMap(new LinkedHashMap<List<Object>, String>(PREVIEW_CACHE_SIZE, 0.75f, true) {
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<List<Object>, String> eldest) {
+						return size() > PREVIEW_CACHE_SIZE;
+					}
+				});
+
+		private volatile List<Object> key;
+
+		private volatile CodeGenerationOperation operation;
+
+		private CompilationUnit compilationUnit;
+
+		PreviewJob() {
+			super("Previewing the conversion to immutable");
+			setSystem(true);
 		}
 
-		@Override
+		void update(List<Object> key, CodeGenerationOperation operation) {
+			cancel();
+			String cached = previews.get(key);
+			if (cached != null) {
+				showPreview(key, cached);
+				return;
+			}
 
-		public void widgetDefaultSelected(SelectionEvent e) {
-			widgetSelected(e);
+			this.key = key;
+			this.operation = operation;
+			previewLabel.setText("Changes (updating...):");
+			schedule(PREVIEW_DELAY);
 		}
 
-		boolean isSelected() {
-			return selected;
+		@Override
+
+		protected IStatus run(IProgressMonitor monitor) {
+			final List<Object> requestedKey = key;
+			final CodeGenerationOperation requestedOperation = operation;
+			String text;
+			try {
+				if (compilationUnit == null) {
+					compilationUnit = requestedOperation.getAST(monitor);
+				}
+				final TextEdit edit = requestedOperation.computeEdit(compilationUnit, monitor);
+				text = ChangePreview.describe(requestedOperation.getCompilationUnit().getSource(), edit);
+				previews.put(requestedKey, text);
+			} catch (OperationCanceledException e) {
+				return Status.CANCEL_STATUS;
+			} catch (CoreException | BadLocationException | MalformedTreeException e) {
+				text = "The changes can not be previewed: " + e.getMessage();
+			}
+
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+
+			final String result = text;
+			PlatformUI.getWorkbench().getDisplay().asyncExec(() -> {
+				if (!preview.isDisposed() && key == requestedKey) {
+					showPreview(requestedKey, result);
+				}
+			});
+
+			return Status.OK_STATUS;
 		}
 	}
-}
\ No newline at end of file
+}
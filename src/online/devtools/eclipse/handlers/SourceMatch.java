@@ -0,0 +1,188 @@
+package online.devtools.eclipse.handlers;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.BooleanLiteral;
+import org.eclipse.jdt.core.dom.CharacterLiteral;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.NullLiteral;
+import org.eclipse.jdt.core.dom.NumberLiteral;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.TextBlock;
+import org.eclipse.jdt.core.dom.ThisExpression;
+
+/**
+ * Tells whether an AST created earlier, such as the one reconciled by the
+ * editor, still matches the source of its compilation unit.
+ * 
+ * An edit which keeps the length of the source, such as a renamed identifier
+ * or a changed literal, keeps the positions of the nodes, so the length alone
+ * does not tell. Every node holding text, the names, literals, modifiers,
+ * primitive types and operators, is compared with the source at its
+ * position instead. This reads each token once without allocating, which is
+ * much cheaper than parsing. Text the comparison can not place, such as a
+ * comment between the operands of an operator, is taken for a mismatch, so
+ * the compilation unit is parsed again.
+ */
+final class SourceMatch {
+
+	private SourceMatch() {
+	}
+
+	static boolean matches(final CompilationUnit ast, final String source) {
+		if (ast.getStartPosition() != 0 || ast.getLength() != source.length()) {
+			return false;
+		}
+
+		final TokenVisitor visitor = new TokenVisitor(source);
+		ast.accept(visitor);
+
+		return visitor.matches;
+	}
+
+	private static class TokenVisitor extends ASTVisitor {
+
+		private final String source;
+
+		private boolean matches = true;
+
+		TokenVisitor(final String source) {
+			this.source = source;
+		}
+
+		@Override
+
+		public boolean preVisit2(final ASTNode node) {
+			return matches;
+		}
+
+		@Override
+
+		public boolean visit(final SimpleName node) {
+			checkAt(node.getStartPosition(), node.getIdentifier());
+			return false;
+		}
+
+		@Override
+
+		public boolean visit(final NumberLiteral node) {
+			checkAt(node.getStartPosition(), node.getToken());
+			return false;
+		}
+
+		@Override
+
+		public boolean visit(final StringLiteral node) {
+			checkAt(node.getStartPosition(), node.getEscapedValue());
+			return false;
+		}
+
+		@Override
+
+		public boolean visit(final CharacterLiteral node) {
+			checkAt(node.getStartPosition(), node.getEscapedValue());
+			return false;
+		}
+
+		@Override
+
+		public boolean visit(final TextBlock node) {
+			checkAt(node.getStartPosition(), node.getEscapedValue());
+			return false;
+		}
+
+		@Override
+
+		public boolean visit(final BooleanLiteral node) {
+			checkAt(node.getStartPosition(), Boolean.toString(node.booleanValue()));
+			return false;
+		}
+
+		@Override
+
+		public boolean visit(final NullLiteral node) {
+			checkAt(node.getStartPosition(), "null");
+			return false;
+		}
+
+		@Override
+
+		public boolean visit(final ThisExpression node) {
+			checkAt(node.getStartPosition() + node.getLength() - 4, "this");
+			return true;
+		}
+
+		@Override
+
+		public boolean visit(final Modifier node) {
+			checkAt(node.getStartPosition(), node.getKeyword().toString());
+			return false;
+		}
+
+		@Override
+
+		public boolean visit(final PrimitiveType node) {
+			checkAt(node.getStartPosition(), node.getPrimitiveTypeCode().toString());
+			return false;
+		}
+
+		@Override
+
+		public boolean visit(final PrefixExpression node) {
+			checkAt(node.getStartPosition(), node.getOperator().toString());
+			return true;
+		}
+
+		@Override
+
+		public boolean visit(final PostfixExpression node) {
+			final String operator = node.getOperator().toString();
+			checkAt(node.getStartPosition() + node.getLength() - operator.length(), operator);
+			return true;
+		}
+
+		@Override
+
+		public boolean visit(final Assignment node) {
+			checkBetween(node.getLeftHandSide(), node.getRightHandSide(), node.getOperator().toString());
+			return true;
+		}
+
+		@Override
+
+		public boolean visit(final InfixExpression node) {
+			final String operator = node.getOperator().toString();
+			checkBetween(node.getLeftOperand(), node.getRightOperand(), operator);
+			Expression previous = node.getRightOperand();
+			for (Expression operand : (List<Expression>) node.extendedOperands()) {
+				checkBetween(previous, operand, operator);
+				previous = operand;
+			}
+			return true;
+		}
+
+		private void checkAt(final int position, final String token) {
+			matches &= position >= 0 && source.startsWith(token, position);
+		}
+
+		/**
+		 * Checks that only the operator and white space are between the
+		 * nodes.
+		 */
+		private void checkBetween(final ASTNode left, final ASTNode right, final String operator) {
+			final int start = left.getStartPosition() + left.getLength();
+			final int end = right.getStartPosition();
+			matches &= start <= end && source.substring(start, end).trim().equals(operator);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package online.devtools.eclipse.handlers;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.ui.CodeGeneration;
+
+import online.devtools.eclipse.generation.CommentProvider;
+
+/**
+ * Creates the comments from the code templates of the project.
+ */
+class TemplateCommentProvider implements CommentProvider {
+
+	private final ICompilationUnit compilationUnit;
+
+	TemplateCommentProvider(final ICompilationUnit compilationUnit) {
+		this.compilationUnit = compilationUnit;
+	}
+
+	@Override
+
+	public String getMethodComment(String typeName, MethodDeclaration method) throws CoreException {
+		return CodeGeneration.getMethodComment(compilationUnit, typeName, method, null, getLineDelimiter());
+	}
+
+	@Override
+
+	public String getGetterComment(String typeName, String getterName, String fieldName, String fieldType)
+			throws CoreException {
+		return CodeGeneration.getGetterComment(compilationUnit, typeName, getterName, fieldName, fieldType,
+				fieldName, getLineDelimiter());
+	}
+
+	private String getLineDelimiter() {
+		return System.getProperty("line.separator", "\n");
+	}
+}
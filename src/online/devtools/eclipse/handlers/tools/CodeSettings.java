@@ -1,5 +1,10 @@
 package online.devtools.eclipse.handlers.tools;
 
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.core.JavaCore;
+
 public class CodeSettings {
 
 	public final boolean useIsForBooleanGetters;
@@ -8,24 +13,95 @@ public class CodeSettings {
 	public final boolean replaceExistingDeclarations;
 	public final boolean makeParametersFinal;
 	public final boolean generateFinalFields;
+	public final boolean generateRecord;
 	public final boolean generateBuilder;
+	public final boolean freezeBuilder;
+	public final boolean reusableBuilder;
+	public final boolean generateWithers;
+	public final boolean generateEquals;
+	public final HashCodeStrategy hashCodeStrategy;
+	public final ToStringStrategy toStringStrategy;
+	public final DefensiveCopyStrategy defensiveCopyStrategy;
+	public final FactoryStrategy factoryStrategy;
+	public final UnboxingStrategy unboxingStrategy;
+	public final boolean primitiveCollections;
+	public final boolean generateCodec;
+	public final boolean generateColumns;
+	public final LazyDerivedStrategy lazyDerivedStrategy;
 
 	private CodeSettings(final boolean useIsForBooleanGetters, final boolean qualifyFieldAccessWithThis,
 			final boolean addComments, final boolean replaceExistingDeclarations, final boolean makeParametersFinal,
-			boolean generateFinalFields, boolean generateBuilder) {
+			boolean generateFinalFields, boolean generateRecord, boolean generateBuilder, boolean freezeBuilder,
+			boolean reusableBuilder, boolean generateWithers,
+			boolean generateEquals, HashCodeStrategy hashCodeStrategy, ToStringStrategy toStringStrategy,
+			DefensiveCopyStrategy defensiveCopyStrategy, FactoryStrategy factoryStrategy,
+			UnboxingStrategy unboxingStrategy, boolean primitiveCollections, boolean generateCodec,
+			boolean generateColumns, LazyDerivedStrategy lazyDerivedStrategy) {
 		this.useIsForBooleanGetters = useIsForBooleanGetters;
 		this.qualifyFieldAccessWithThis = qualifyFieldAccessWithThis;
 		this.addComments = addComments;
 		this.replaceExistingDeclarations = replaceExistingDeclarations;
 		this.makeParametersFinal = makeParametersFinal;
 		this.generateFinalFields = generateFinalFields;
+		this.generateRecord = generateRecord;
 		this.generateBuilder = generateBuilder;
+		this.freezeBuilder = freezeBuilder;
+		this.reusableBuilder = reusableBuilder;
+		this.generateWithers = generateWithers;
+		this.generateEquals = generateEquals;
+		this.hashCodeStrategy = hashCodeStrategy;
+		this.toStringStrategy = toStringStrategy;
+		this.defensiveCopyStrategy = defensiveCopyStrategy;
+		this.factoryStrategy = factoryStrategy;
+		this.unboxingStrategy = unboxingStrategy;
+		this.primitiveCollections = primitiveCollections;
+		this.generateCodec = generateCodec;
+		this.generateColumns = generateColumns;
+		this.lazyDerivedStrategy = lazyDerivedStrategy;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof CodeSettings && getValues().equals(((CodeSettings) obj).getValues());
+	}
+
+	@Override
+	public int hashCode() {
+		return getValues().hashCode();
+	}
+
+	private List<Object> getValues() {
+		return Arrays.asList(useIsForBooleanGetters, qualifyFieldAccessWithThis, addComments,
+				replaceExistingDeclarations, makeParametersFinal, generateFinalFields, generateRecord, generateBuilder,
+				freezeBuilder, reusableBuilder, generateWithers, generateEquals, hashCodeStrategy, toStringStrategy,
+				defensiveCopyStrategy, factoryStrategy, unboxingStrategy, primitiveCollections, generateCodec,
+				generateColumns, lazyDerivedStrategy);
 	}
 
 	public static Builder builder() {
 		return new Builder();
 	}
 
+	/**
+	 * @return these settings or, if the given Java source level does not
+	 *         support records, a copy converting to classes instead, and if it
+	 *         does not have the immutable collections of <code>List.of</code>,
+	 *         a copy always copying the collections instead of unless they
+	 *         are unmodifiable
+	 */
+	public CodeSettings forSourceLevel(final String sourceLevel) {
+		final boolean records = !generateRecord || JavaCore.compareJavaVersions(sourceLevel, JavaCore.VERSION_16) >= 0;
+		final boolean immutableCollections = defensiveCopyStrategy != DefensiveCopyStrategy.COPY_IF_MUTABLE
+				|| JavaCore.compareJavaVersions(sourceLevel, JavaCore.VERSION_9) >= 0;
+		if (records && immutableCollections) {
+			return this;
+		}
+
+		return builder().withCodeSettings(this).withGenerateRecord(generateRecord && records)
+				.withDefensiveCopyStrategy(immutableCollections ? defensiveCopyStrategy : DefensiveCopyStrategy.COPY)
+				.build();
+	}
+
 	public static class Builder {
 		private boolean useIsForBooleanGetters;
 		private boolean qualifyFieldAccessWithThis;
@@ -33,7 +109,21 @@ public class CodeSettings {
 		private boolean replaceExistingDeclarations;
 		private boolean makeParametersFinal;
 		private boolean generateFinalFields;
+		private boolean generateRecord;
 		private boolean generateBuilder;
+		private boolean freezeBuilder;
+		private boolean reusableBuilder;
+		private boolean generateWithers;
+		private boolean generateEquals;
+		private HashCodeStrategy hashCodeStrategy = HashCodeStrategy.NONE;
+		private ToStringStrategy toStringStrategy = ToStringStrategy.NONE;
+		private DefensiveCopyStrategy defensiveCopyStrategy = DefensiveCopyStrategy.NONE;
+		private FactoryStrategy factoryStrategy = FactoryStrategy.NONE;
+		private UnboxingStrategy unboxingStrategy = UnboxingStrategy.NONE;
+		private boolean primitiveCollections;
+		private boolean generateCodec;
+		private boolean generateColumns;
+		private LazyDerivedStrategy lazyDerivedStrategy = LazyDerivedStrategy.DOUBLE_CHECKED;
 
 		private Builder() {
 
@@ -69,11 +159,81 @@ public class CodeSettings {
 			return this;
 		}
 
+		public Builder withGenerateRecord(boolean enabled) {
+			this.generateRecord = enabled;
+			return this;
+		}
+
 		public Builder withGenerateBuilder(boolean enabled) {
 			this.generateBuilder = enabled;
 			return this;
 		}
 
+		public Builder withFreezeBuilder(boolean enabled) {
+			this.freezeBuilder = enabled;
+			return this;
+		}
+
+		public Builder withReusableBuilder(boolean enabled) {
+			this.reusableBuilder = enabled;
+			return this;
+		}
+
+		public Builder withGenerateWithers(boolean enabled) {
+			this.generateWithers = enabled;
+			return this;
+		}
+
+		public Builder withGenerateEquals(boolean enabled) {
+			this.generateEquals = enabled;
+			return this;
+		}
+
+		public Builder withHashCodeStrategy(HashCodeStrategy strategy) {
+			this.hashCodeStrategy = strategy;
+			return this;
+		}
+
+		public Builder withToStringStrategy(ToStringStrategy strategy) {
+			this.toStringStrategy = strategy;
+			return this;
+		}
+
+		public Builder withDefensiveCopyStrategy(DefensiveCopyStrategy strategy) {
+			this.defensiveCopyStrategy = strategy;
+			return this;
+		}
+
+		public Builder withFactoryStrategy(FactoryStrategy strategy) {
+			this.factoryStrategy = strategy;
+			return this;
+		}
+
+		public Builder withUnboxingStrategy(UnboxingStrategy strategy) {
+			this.unboxingStrategy = strategy;
+			return this;
+		}
+
+		public Builder withPrimitiveCollections(boolean enabled) {
+			this.primitiveCollections = enabled;
+			return this;
+		}
+
+		public Builder withGenerateCodec(boolean enabled) {
+			this.generateCodec = enabled;
+			return this;
+		}
+
+		public Builder withGenerateColumns(boolean enabled) {
+			this.generateColumns = enabled;
+			return this;
+		}
+
+		public Builder withLazyDerivedStrategy(LazyDerivedStrategy strategy) {
+			this.lazyDerivedStrategy = strategy;
+			return this;
+		}
+
 		public Builder withCodeSettings(CodeSettings codeSettings) {
 			this.useIsForBooleanGetters = codeSettings.useIsForBooleanGetters;
 			this.qualifyFieldAccessWithThis = codeSettings.qualifyFieldAccessWithThis;
@@ -81,14 +241,31 @@ public class CodeSettings {
 			this.replaceExistingDeclarations = codeSettings.replaceExistingDeclarations;
 			this.makeParametersFinal = codeSettings.makeParametersFinal;
 			this.generateFinalFields = codeSettings.generateFinalFields;
+			this.generateRecord = codeSettings.generateRecord;
 			this.generateBuilder = codeSettings.generateBuilder;
+			this.freezeBuilder = codeSettings.freezeBuilder;
+			this.reusableBuilder = codeSettings.reusableBuilder;
+			this.generateWithers = codeSettings.generateWithers;
+			this.generateEquals = codeSettings.generateEquals;
+			this.hashCodeStrategy = codeSettings.hashCodeStrategy;
+			this.toStringStrategy = codeSettings.toStringStrategy;
+			this.defensiveCopyStrategy = codeSettings.defensiveCopyStrategy;
+			this.factoryStrategy = codeSettings.factoryStrategy;
+			this.unboxingStrategy = codeSettings.unboxingStrategy;
+			this.primitiveCollections = codeSettings.primitiveCollections;
+			this.generateCodec = codeSettings.generateCodec;
+			this.generateColumns = codeSettings.generateColumns;
+			this.lazyDerivedStrategy = codeSettings.lazyDerivedStrategy;
 
 			return this;
 		}
 
 		public CodeSettings build() {
 			return new CodeSettings(useIsForBooleanGetters, qualifyFieldAccessWithThis, addComments,
-					replaceExistingDeclarations, makeParametersFinal, generateFinalFields, generateBuilder);
+					replaceExistingDeclarations, makeParametersFinal, generateFinalFields, generateRecord,
+					generateBuilder, freezeBuilder, reusableBuilder, generateWithers, generateEquals, hashCodeStrategy,
+					toStringStrategy, defensiveCopyStrategy, factoryStrategy, unboxingStrategy, primitiveCollections,
+					generateCodec, generateColumns, lazyDerivedStrategy);
 		}
 	}
 }
\ No newline at end of file
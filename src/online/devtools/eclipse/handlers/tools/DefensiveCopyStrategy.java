@@ -0,0 +1,46 @@
+package online.devtools.eclipse.handlers.tools;
+
+/**
+ * How the generated code keeps the collection and array fields from being
+ * modified through references held by the callers.
+ */
+public enum DefensiveCopyStrategy {
+
+	/**
+	 * The arguments are assigned as they are.
+	 */
+	NONE("Assign the arguments"),
+
+	/**
+	 * Collections are copied into unmodifiable collections and arrays are
+	 * cloned in the constructor and in the getters.
+	 */
+	COPY("Always copy"),
+
+	/**
+	 * Like {@link #COPY}, but the immutable collections created by
+	 * <code>List.of</code>, <code>Set.of</code>, <code>Map.of</code> and
+	 * their <code>copyOf</code> methods are not copied again. Unmodifiable
+	 * views are still copied, as the caller may modify the collection behind
+	 * them. Below Java 9 this is the same as {@link #COPY}.
+	 */
+	COPY_IF_MUTABLE("Copy unless immutable"),
+
+	/**
+	 * Like {@link #COPY}, but with the builder the values are copied when they
+	 * are set on the builder and the constructor takes them over without
+	 * another copy. As the builder never modifies the copies it owns, several
+	 * instances built by the same builder may share them.
+	 */
+	TRANSFER("Copy in the builder and take over");
+
+	private final String label;
+
+	private DefensiveCopyStrategy(final String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+}
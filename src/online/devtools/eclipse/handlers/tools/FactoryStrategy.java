@@ -0,0 +1,41 @@
+package online.devtools.eclipse.handlers.tools;
+
+/**
+ * How instances of the converted type are created by the callers.
+ */
+public enum FactoryStrategy {
+
+	/**
+	 * The instances are created by the constructor or the builder.
+	 */
+	NONE("Public constructor"),
+
+	/**
+	 * The constructor is private and a static <code>of</code> method creates
+	 * the instances.
+	 */
+	PLAIN("Static factory"),
+
+	/**
+	 * Like {@link #PLAIN}, but the factory returns an existing equal instance
+	 * if there is one. The instances are kept by weak references, so they are
+	 * shared as long as they are in use.
+	 */
+	WEAK("Static factory sharing equal instances, weak cache"),
+
+	/**
+	 * Like {@link #WEAK}, but the cache keeps the most recently used instances
+	 * up to a fixed number.
+	 */
+	LRU("Static factory sharing equal instances, LRU cache");
+
+	private final String label;
+
+	private FactoryStrategy(final String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+}
@@ -9,6 +9,8 @@ import org.eclipse.jdt.ui.PreferenceConstants;
 
 public final class GenerationTools {
 
+	public static final String PLUGIN_ID = "dev-tools";
+
 	private GenerationTools() {
 	}
 
@@ -0,0 +1,68 @@
+package online.devtools.eclipse.handlers.tools;
+
+/**
+ * How the generated <code>hashCode</code> caches the hash of an instance.
+ */
+public enum HashCodeStrategy {
+
+	/**
+	 * No <code>hashCode</code> is generated.
+	 */
+	NONE("Do not generate"),
+
+	/**
+	 * The hash is computed in the constructor and stored in a final field. Best
+	 * for types used as hash keys, as every instance is hashed at least once.
+	 */
+	PRECOMPUTED("Precompute in the constructor"),
+
+	/**
+	 * The hash is computed on the first call and cached in a non-volatile field
+	 * without synchronization, like <code>String.hashCode()</code>. As all the
+	 * fields are final, a racing thread at most computes the same hash again.
+	 */
+	LAZY("Compute lazily on first use"),
+
+	/**
+	 * Chooses between {@link #PRECOMPUTED} and {@link #LAZY} for each type.
+	 * 
+	 * @see #resolve(int, boolean)
+	 */
+	AUTO("Choose per class");
+
+	/**
+	 * The number of fields up to which the hash is cheap enough to be
+	 * precomputed even if the instance is never hashed.
+	 */
+	public static final int PRECOMPUTED_FIELDS_LIMIT = 4;
+
+	private final String label;
+
+	private HashCodeStrategy(final String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	/**
+	 * Resolves {@link #AUTO} for a type. The hash is precomputed when the type
+	 * already declares <code>hashCode</code>, which means it is used as a hash
+	 * key, or when it has only a few fields. Otherwise it is computed lazily,
+	 * so instances which are never hashed do not pay for it.
+	 * 
+	 * @param fieldCount
+	 *            the number of the converted fields
+	 * @param declaresHashCode
+	 *            whether the type declares <code>hashCode</code>
+	 * @return the strategy to be used for the type
+	 */
+	public HashCodeStrategy resolve(final int fieldCount, final boolean declaresHashCode) {
+		if (this != AUTO) {
+			return this;
+		}
+
+		return declaresHashCode || fieldCount <= PRECOMPUTED_FIELDS_LIMIT ? PRECOMPUTED : LAZY;
+	}
+}
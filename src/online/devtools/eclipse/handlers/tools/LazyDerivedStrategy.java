@@ -0,0 +1,30 @@
+package online.devtools.eclipse.handlers.tools;
+
+/**
+ * How the values of the members marked as lazy derived are memoized.
+ */
+public enum LazyDerivedStrategy {
+
+	/**
+	 * The value is checked on a volatile field before and after taking the
+	 * lock of the instance, so that it is computed at most once.
+	 */
+	DOUBLE_CHECKED("Double-checked locking, compute at most once"),
+
+	/**
+	 * The value is checked on a volatile field without a lock, so that
+	 * threads racing on the first call may each compute it. Suitable for
+	 * idempotent computations only.
+	 */
+	SINGLE_CHECK("Racy single-check, for idempotent computations");
+
+	private final String label;
+
+	private LazyDerivedStrategy(final String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+}
@@ -0,0 +1,138 @@
+package online.devtools.eclipse.handlers.tools;
+
+import java.util.Collection;
+
+import org.eclipse.jdt.core.Signature;
+
+/**
+ * Estimated shallow size of the instances of a class on a 64-bit HotSpot JVM
+ * with compressed oops and compressed class pointers: a 12 byte header, 4
+ * byte references and instances aligned to 8 bytes.
+ * 
+ * The fields are placed the way HotSpot places them, independently of their
+ * declaration order: the first 8 byte field is aligned to 8 bytes and the gap
+ * after the header is filled with smaller fields, then the fields follow
+ * ordered by size, largest first, and the references come last.
+ */
+public final class ObjectLayout {
+
+	public static final int HEADER_SIZE = 12;
+
+	private static final int REFERENCE_SIZE = 4;
+
+	private static final int OBJECT_ALIGNMENT = 8;
+
+	private final int fieldsSize;
+
+	private final int instanceSize;
+
+	private ObjectLayout(final int fieldsSize, final int instanceSize) {
+		this.fieldsSize = fieldsSize;
+		this.instanceSize = instanceSize;
+	}
+
+	/**
+	 * @param typeSignatures
+	 *            the type signatures of the instance fields
+	 */
+	public static ObjectLayout of(final Collection<String> typeSignatures) {
+		// Number of primitive fields per size, indexed by the size in bytes
+		final int[] counts = new int[9];
+		int references = 0;
+		int fieldsSize = 0;
+		for (String typeSignature : typeSignatures) {
+			final int size = getFieldSize(typeSignature);
+			if (isPrimitive(typeSignature)) {
+				counts[size]++;
+			} else {
+				references++;
+			}
+			fieldsSize += size;
+		}
+
+		int offset = HEADER_SIZE;
+		if (counts[8] > 0 && offset % 8 != 0) {
+			final int gap = 8 - offset % 8;
+			final int filled = fillGap(counts, gap);
+			if (filled == 0 && references > 0) {
+				references--;
+				offset += REFERENCE_SIZE;
+			}
+			offset = align(offset + filled, 8);
+		}
+
+		offset += 8 * counts[8] + 4 * counts[4] + 2 * counts[2] + counts[1];
+		offset = align(offset, REFERENCE_SIZE) + REFERENCE_SIZE * references;
+
+		return new ObjectLayout(fieldsSize, align(offset, OBJECT_ALIGNMENT));
+	}
+
+	/**
+	 * @return the size in bytes of a field with the given type signature
+	 */
+	public static int getFieldSize(final String typeSignature) {
+		switch (typeSignature) {
+		case Signature.SIG_LONG:
+		case Signature.SIG_DOUBLE:
+			return 8;
+		case Signature.SIG_INT:
+		case Signature.SIG_FLOAT:
+			return 4;
+		case Signature.SIG_SHORT:
+		case Signature.SIG_CHAR:
+			return 2;
+		case Signature.SIG_BYTE:
+		case Signature.SIG_BOOLEAN:
+			return 1;
+		default:
+			return REFERENCE_SIZE;
+		}
+	}
+
+	/**
+	 * Places the fields fitting in the gap of the given size, largest first,
+	 * removing them from the counts.
+	 * 
+	 * @return the number of bytes filled
+	 */
+	private static int fillGap(final int[] counts, final int gap) {
+		int filled = 0;
+		for (int size = 4; size > 0; size /= 2) {
+			while (counts[size] > 0 && filled + size <= gap) {
+				counts[size]--;
+				filled += size;
+			}
+		}
+
+		return filled;
+	}
+
+	private static boolean isPrimitive(final String typeSignature) {
+		return Signature.getTypeSignatureKind(typeSignature) == Signature.BASE_TYPE_SIGNATURE;
+	}
+
+	private static int align(final int offset, final int alignment) {
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+
+	/**
+	 * @return the sum of the sizes of the fields
+	 */
+	public int getFieldsSize() {
+		return fieldsSize;
+	}
+
+	/**
+	 * @return the bytes lost to the alignment of the fields and the instance
+	 */
+	public int getPaddingSize() {
+		return instanceSize - HEADER_SIZE - fieldsSize;
+	}
+
+	/**
+	 * @return the size in bytes of an instance
+	 */
+	public int getInstanceSize() {
+		return instanceSize;
+	}
+}
@@ -0,0 +1,33 @@
+package online.devtools.eclipse.handlers.tools;
+
+/**
+ * Whether the generated <code>toString</code> memoizes its result.
+ */
+public enum ToStringStrategy {
+
+	/**
+	 * No <code>toString</code> is generated.
+	 */
+	NONE("Do not generate"),
+
+	/**
+	 * The string is formatted on every call.
+	 */
+	FORMATTED("Format on every call"),
+
+	/**
+	 * The string is formatted on the first call and kept in a field, which
+	 * costs a reference per instance and the string itself.
+	 */
+	MEMOIZED("Memoize the result");
+
+	private final String label;
+
+	private ToStringStrategy(final String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+}
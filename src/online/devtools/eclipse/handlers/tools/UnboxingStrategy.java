@@ -0,0 +1,38 @@
+package online.devtools.eclipse.handlers.tools;
+
+/**
+ * How the fields of the wrapper types, like <code>Integer</code> or
+ * <code>Long</code>, are stored.
+ */
+public enum UnboxingStrategy {
+
+	/**
+	 * The fields keep their wrapper types.
+	 */
+	NONE("Keep wrapper types"),
+
+	/**
+	 * The fields are stored as primitives and a bit mask records which of
+	 * them were not <code>null</code>. The getters keep returning the wrapper
+	 * types and return <code>null</code> for the absent values.
+	 */
+	PRESENCE_MASK("Store as primitives, track null in a bit mask"),
+
+	/**
+	 * Like {@link #PRESENCE_MASK}, but the getters of the <code>Integer</code>,
+	 * <code>Long</code> and <code>Double</code> fields return
+	 * <code>OptionalInt</code>, <code>OptionalLong</code> and
+	 * <code>OptionalDouble</code>.
+	 */
+	OPTIONAL("Store as primitives, return OptionalInt, OptionalLong, OptionalDouble");
+
+	private final String label;
+
+	private UnboxingStrategy(final String label) {
+		this.label = label;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+}
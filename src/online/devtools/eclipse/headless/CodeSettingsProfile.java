@@ -0,0 +1,103 @@
+package online.devtools.eclipse.headless;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+import online.devtools.eclipse.handlers.tools.DefensiveCopyStrategy;
+import online.devtools.eclipse.handlers.tools.FactoryStrategy;
+import online.devtools.eclipse.handlers.tools.HashCodeStrategy;
+import online.devtools.eclipse.handlers.tools.LazyDerivedStrategy;
+import online.devtools.eclipse.handlers.tools.ToStringStrategy;
+import online.devtools.eclipse.handlers.tools.UnboxingStrategy;
+
+/**
+ * A code settings profile read from a properties file.
+ * 
+ * Besides the conversion options the profile may contain Java core options
+ * (keys starting with <code>org.eclipse.jdt.core.</code>), for example the
+ * formatter settings exported from a project, which are used when the changes
+ * are written.
+ */
+final class CodeSettingsProfile {
+
+	private static final String JAVA_CORE_OPTION_PREFIX = "org.eclipse.jdt.core.";
+
+	private final Properties properties;
+
+	private CodeSettingsProfile(final Properties properties) {
+		this.properties = properties;
+	}
+
+	static CodeSettingsProfile empty() {
+		return new CodeSettingsProfile(new Properties());
+	}
+
+	static CodeSettingsProfile load(final Path file) throws IOException {
+		final Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		}
+
+		return new CodeSettingsProfile(properties);
+	}
+
+	CodeSettings getCodeSettings() {
+		return CodeSettings.builder().withIsForBooleanGetters(getBoolean("useIsForBooleanGetters", true))
+				.withQualifyFieldAccessWithThis(getBoolean("qualifyFieldAccessWithThis", false))
+				.withAddComments(getBoolean("addComments", false))
+				.withReplaceExistingDeclarations(getBoolean("replaceExistingDeclarations", true))
+				.withMakeParametersFinal(getBoolean("makeParametersFinal", false))
+				.withGenerateFinalFields(getBoolean("generateFinalFields", false))
+				.withGenerateRecord(getBoolean("generateRecord", false))
+				.withGenerateBuilder(getBoolean("generateBuilder", false))
+				.withFreezeBuilder(getBoolean("freezeBuilder", false))
+				.withReusableBuilder(getBoolean("reusableBuilder", false))
+				.withGenerateWithers(getBoolean("generateWithers", false))
+				.withGenerateEquals(getBoolean("generateEquals", false))
+				.withHashCodeStrategy(getEnum("hashCode", HashCodeStrategy.NONE))
+				.withToStringStrategy(getEnum("toString", ToStringStrategy.NONE))
+				.withDefensiveCopyStrategy(getEnum("defensiveCopies", DefensiveCopyStrategy.NONE))
+				.withFactoryStrategy(getEnum("factory", FactoryStrategy.NONE))
+				.withUnboxingStrategy(getEnum("unboxing", UnboxingStrategy.NONE))
+				.withPrimitiveCollections(getBoolean("primitiveCollections", false))
+				.withGenerateCodec(getBoolean("generateCodec", false))
+				.withGenerateColumns(getBoolean("generateColumns", false))
+				.withLazyDerivedStrategy(getEnum("lazyDerived", LazyDerivedStrategy.DOUBLE_CHECKED)).build();
+	}
+
+	Map<String, String> getJavaCoreOptions() {
+		final Map<String, String> options = new HashMap<>();
+		for (String key : properties.stringPropertyNames()) {
+			if (key.startsWith(JAVA_CORE_OPTION_PREFIX)) {
+				options.put(key, properties.getProperty(key));
+			}
+		}
+
+		return options;
+	}
+
+	private boolean getBoolean(final String key, final boolean defaultValue) {
+		final String value = properties.getProperty(key);
+		return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+
+	private <E extends Enum<E>> E getEnum(final String key, final E defaultValue) {
+		final String value = properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+
+		try {
+			return Enum.valueOf(defaultValue.getDeclaringClass(), value.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid value of " + key + ": " + value, e);
+		}
+	}
+}
@@ -0,0 +1,296 @@
+package online.devtools.eclipse.headless;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.formatter.DefaultCodeFormatterConstants;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+
+import online.devtools.eclipse.generation.CommentProvider;
+import online.devtools.eclipse.generation.ConvertedField;
+import online.devtools.eclipse.generation.ImmutableClassGenerator;
+import online.devtools.eclipse.generation.MemberIndex;
+import online.devtools.eclipse.handlers.tools.CodeSettings;
+
+/**
+ * Converts classes to immutable ones directly on the file system, without a
+ * workbench.
+ * 
+ * The primary class of every selected compilation unit below the source folder
+ * is converted using all of its non-static fields. Files are parsed without
+ * bindings and converted in parallel, one task per file. Comments are not
+ * generated as the code templates are only available in the workbench.
+ * 
+ * Run with the plug-in and the JDT core bundles with their dependencies on the
+ * class path:
+ * 
+ * <pre>
+ * java online.devtools.eclipse.headless.ImmutableConverter [options] &lt;source folder&gt;
+ * </pre>
+ */
+public final class ImmutableConverter {
+
+	private static final String USAGE = "Usage: ImmutableConverter [options] <source folder>\n"
+			+ "  --profile <file>     code settings profile (properties file)\n"
+			+ "  --include <glob>     convert only files matching the pattern, relative to the source folder\n"
+			+ "  --exclude <glob>     do not convert files matching the pattern\n"
+			+ "  --threads <count>    number of files converted in parallel\n"
+			+ "  --encoding <name>    encoding of the source files, UTF-8 by default\n"
+			+ "  --source <version>   Java source level, 1.8 by default";
+
+	private enum Result {
+		CONVERTED, SKIPPED
+	}
+
+	private final Path sourceFolder;
+
+	private final CodeSettings codeSettings;
+
+	private final Map<String, String> options;
+
+	private final Charset encoding;
+
+	private final List<PathMatcher> includes = new ArrayList<>();
+
+	private final List<PathMatcher> excludes = new ArrayList<>();
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private ImmutableConverter(final Path sourceFolder, final CodeSettingsProfile profile, final String sourceLevel,
+			final Charset encoding) {
+		this.sourceFolder = sourceFolder;
+		this.codeSettings = profile.getCodeSettings().forSourceLevel(sourceLevel);
+		this.encoding = encoding;
+		this.options = new HashMap<>(DefaultCodeFormatterConstants.getEclipseDefaultSettings());
+		JavaCore.setComplianceOptions(sourceLevel, options);
+		options.putAll(profile.getJavaCoreOptions());
+	}
+
+	public static void main(String[] args) {
+		try {
+			System.exit(createConverter(args).run());
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	private static ImmutableConverter createConverter(String[] args) throws IOException {
+		CodeSettingsProfile profile = CodeSettingsProfile.empty();
+		String sourceLevel = JavaCore.VERSION_1_8;
+		Charset encoding = StandardCharsets.UTF_8;
+		Path sourceFolder = null;
+		final List<String> includes = new ArrayList<>();
+		final List<String> excludes = new ArrayList<>();
+		Integer threads = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--profile":
+				profile = CodeSettingsProfile.load(Paths.get(getValue(args, ++i)));
+				break;
+			case "--include":
+				includes.add(getValue(args, ++i));
+				break;
+			case "--exclude":
+				excludes.add(getValue(args, ++i));
+				break;
+			case "--threads":
+				threads = Integer.valueOf(getValue(args, ++i));
+				break;
+			case "--encoding":
+				encoding = Charset.forName(getValue(args, ++i));
+				break;
+			case "--source":
+				sourceLevel = getValue(args, ++i);
+				break;
+			default:
+				if (args[i].startsWith("--") || sourceFolder != null) {
+					throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+				}
+				sourceFolder = Paths.get(args[i]);
+			}
+		}
+
+		if (sourceFolder == null || !Files.isDirectory(sourceFolder)) {
+			throw new IllegalArgumentException("The source folder is missing or is not a directory");
+		}
+
+		final ImmutableConverter converter = new ImmutableConverter(sourceFolder, profile, sourceLevel, encoding);
+		for (String include : includes) {
+			converter.includes.add(FileSystems.getDefault().getPathMatcher("glob:" + include));
+		}
+		for (String exclude : excludes) {
+			converter.excludes.add(FileSystems.getDefault().getPathMatcher("glob:" + exclude));
+		}
+		if (threads != null) {
+			converter.threads = Math.max(1, threads.intValue());
+		}
+
+		return converter;
+	}
+
+	private static String getValue(String[] args, int index) {
+		if (index >= args.length) {
+			throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+		}
+		return args[index];
+	}
+
+	private int run() throws IOException {
+		final long start = System.nanoTime();
+		final List<Path> files = collectFiles();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+		final List<Future<Result>> results = new ArrayList<>(files.size());
+
+		try {
+			for (Path file : files) {
+				results.add(executor.submit(() -> convert(file)));
+			}
+
+			int converted = 0;
+			int skipped = 0;
+			int failed = 0;
+
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					if (results.get(i).get() == Result.CONVERTED) {
+						converted++;
+					} else {
+						skipped++;
+					}
+				} catch (ExecutionException e) {
+					failed++;
+					System.err.println(sourceFolder.relativize(files.get(i)) + ": " + e.getCause());
+				}
+			}
+
+			System.out.println(String.format("Converted %d of %d files, skipped %d, failed %d in %d ms.", converted,
+					files.size(), skipped, failed, (System.nanoTime() - start) / 1000000));
+
+			return failed == 0 ? 0 : 1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 1;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private List<Path> collectFiles() throws IOException {
+		try (Stream<Path> paths = Files.walk(sourceFolder)) {
+			return paths.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".java"))
+					.filter(path -> isSelected(sourceFolder.relativize(path))).collect(Collectors.toList());
+		}
+	}
+
+	private boolean isSelected(final Path relativePath) {
+		return (includes.isEmpty() || matches(includes, relativePath)) && !matches(excludes, relativePath);
+	}
+
+	private boolean matches(final List<PathMatcher> matchers, final Path path) {
+		for (PathMatcher matcher : matchers) {
+			if (matcher.matches(path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Result convert(final Path file) throws IOException, CoreException, BadLocationException {
+		final String source = new String(Files.readAllBytes(file), encoding);
+		final ASTParser parser = ASTParser.newParser(ImmutableClassGenerator.AST_LEVEL);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setCompilerOptions(options);
+		parser.setSource(source.toCharArray());
+
+		final CompilationUnit compilationUnit = (CompilationUnit) parser.createAST(null);
+		final TypeDeclaration type = findPrimaryType(compilationUnit, file);
+
+		if (type == null) {
+			return Result.SKIPPED;
+		}
+
+		final List<ConvertedField> fields = getInstanceFields(type);
+
+		if (fields.isEmpty()) {
+			return Result.SKIPPED;
+		}
+
+		final IDocument document = new Document(source);
+		new ImmutableClassGenerator(compilationUnit, new MemberIndex(type), fields, codeSettings, CommentProvider.NONE)
+				.generate(document, options, null).apply(document);
+		Files.write(file, document.get().getBytes(encoding));
+
+		return Result.CONVERTED;
+	}
+
+	private TypeDeclaration findPrimaryType(final CompilationUnit compilationUnit, final Path file) {
+		final String fileName = file.getFileName().toString();
+		final String typeName = fileName.substring(0, fileName.length() - ".java".length());
+
+		for (AbstractTypeDeclaration type : (List<AbstractTypeDeclaration>) compilationUnit.types()) {
+			if (type instanceof TypeDeclaration && !((TypeDeclaration) type).isInterface()
+					&& typeName.equals(type.getName().getIdentifier())) {
+				return (TypeDeclaration) type;
+			}
+		}
+
+		return null;
+	}
+
+	private List<ConvertedField> getInstanceFields(final TypeDeclaration type) {
+		final List<ConvertedField> fields = new ArrayList<>();
+		for (FieldDeclaration declaration : type.getFields()) {
+			if (!Modifier.isStatic(declaration.getModifiers())) {
+				for (VariableDeclarationFragment fragment : (List<VariableDeclarationFragment>) declaration
+						.fragments()) {
+					fields.add(new ConvertedField(fragment, getGetterName(declaration, fragment)));
+				}
+			}
+		}
+
+		return fields;
+	}
+
+	private String getGetterName(final FieldDeclaration declaration, final VariableDeclarationFragment fragment) {
+		final String name = fragment.getName().getIdentifier();
+		final boolean isBoolean = fragment.getExtraDimensions() == 0 && declaration.getType().isPrimitiveType()
+				&& ((PrimitiveType) declaration.getType()).getPrimitiveTypeCode() == PrimitiveType.BOOLEAN;
+		final String prefix = codeSettings.useIsForBooleanGetters && isBoolean ? "is" : "get";
+
+		return prefix + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+}